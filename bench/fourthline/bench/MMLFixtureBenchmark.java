@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.parser.MMLParseException;
+
+/**
+ * テスト用の既存スコアファイル (format*.mmi) の読み込み.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MMLFixtureBenchmark {
+
+	@Param({ "format0.mmi", "format1.mmi", "format_r0.mmi", "format_r1.mmi" })
+	public String fixture;
+
+	private byte mmiData[];
+
+	@Setup
+	public void setup() throws IOException {
+		mmiData = SyntheticScore.readFixture(fixture);
+	}
+
+	@Benchmark
+	public MMLScore parse() throws MMLParseException {
+		return new MMLScore().parse(new ByteArrayInputStream(mmiData));
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fourthline.mmlTools.MMLEvent;
+import fourthline.mmlTools.MMLEventList;
+import fourthline.mmlTools.UndefinedTickException;
+import fourthline.mmlTools.optimizer.MMLStringOptimizer;
+import fourthline.mmlTools.parser.MMLEventParser;
+
+/**
+ * 1パート分のMMLの解析と出力.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MMLParserBenchmark {
+
+	@Param({ "300", "10000", "100000" })
+	public int notes;
+
+	private String mml;
+	private MMLEventList eventList;
+	private String outputMML;
+
+	@Setup
+	public void setup() throws UndefinedTickException {
+		mml = SyntheticScore.createPartMML(notes, 1, true);
+		eventList = new MMLEventList(mml);
+		outputMML = eventList.toMMLString();
+
+		// 最適化の方法ごとの出力サイズ
+		for (MMLStringOptimizer.Mode mode : MMLStringOptimizer.Mode.values()) {
+			int size = new MMLStringOptimizer(outputMML).optimize(mode).length();
+			System.out.println("optimizer " + mode + ": " + outputMML.length() + " -> " + size);
+		}
+	}
+
+	@Benchmark
+	public int eventParser() {
+		MMLEventParser parser = new MMLEventParser(mml);
+		int tick = 0;
+		while (parser.hasNext()) {
+			MMLEvent event = parser.next();
+			tick += event.getTickOffset();
+		}
+		return tick;
+	}
+
+	@Benchmark
+	public MMLEventList parseEventList() {
+		return new MMLEventList(mml);
+	}
+
+	@Benchmark
+	public String toMMLString() throws UndefinedTickException {
+		return eventList.toMMLString();
+	}
+
+	@Benchmark
+	public String stringOptimizer() {
+		return new MMLStringOptimizer(outputMML).toString();
+	}
+
+	@Benchmark
+	public String stringOptimizerOptimal() {
+		return new MMLStringOptimizer(outputMML).optimize(MMLStringOptimizer.Mode.OPTIMAL);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.UndefinedTickException;
+import fourthline.mmlTools.parser.MMLBinaryFile;
+import fourthline.mmlTools.parser.MMLParseException;
+
+/**
+ * スコア単位の生成, 保存, 読み込み.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MMLScoreBenchmark {
+
+	@Param({ "1", "12" })
+	public int tracks;
+
+	@Param({ "300", "10000", "100000" })
+	public int notes;
+
+	private MMLScore score;
+	private byte mmiData[];
+	private byte mmbData[];
+
+	@Setup
+	public void setup() throws UndefinedTickException, IOException {
+		score = SyntheticScore.createScore(tracks, notes).generateAll();
+		ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+		score.writeToOutputStream(ostream);
+		mmiData = ostream.toByteArray();
+		ostream = new ByteArrayOutputStream();
+		MMLBinaryFile.write(score, ostream);
+		mmbData = ostream.toByteArray();
+		System.out.println("mmi: "+mmiData.length+" bytes, mmb: "+mmbData.length+" bytes");
+	}
+
+	/**
+	 * 1トラックのみ再生成 (編集1回分).
+	 */
+	@Benchmark
+	public MMLTrack generateTrack() throws UndefinedTickException {
+		MMLTrack track = score.getTrack(0);
+		track.markDirty();
+		return track.generate();
+	}
+
+	/**
+	 * 全トラックの再生成.
+	 */
+	@Benchmark
+	public MMLScore generateAll() throws UndefinedTickException {
+		for (MMLTrack track : score.getTrackList()) {
+			track.markDirty();
+		}
+		return score.generateAll();
+	}
+
+	@Benchmark
+	public int writeToOutputStream() {
+		ByteArrayOutputStream ostream = new ByteArrayOutputStream(mmiData.length);
+		score.writeToOutputStream(ostream);
+		return ostream.size();
+	}
+
+	@Benchmark
+	public MMLScore parse() throws MMLParseException {
+		return new MMLScore().parse(new ByteArrayInputStream(mmiData));
+	}
+
+	@Benchmark
+	public int writeBinary() throws IOException {
+		ByteArrayOutputStream ostream = new ByteArrayOutputStream(mmbData.length);
+		MMLBinaryFile.write(score, ostream);
+		return ostream.size();
+	}
+
+	/**
+	 * バイナリ形式の読み込み (パース, 生成なし).
+	 */
+	@Benchmark
+	public MMLScore parseBinary() throws MMLParseException {
+		return new MMLBinaryFile().parse(new ByteArrayInputStream(mmbData));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.bench;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fourthline.mabiicco.midi.InstTypeTable;
+import fourthline.mabiicco.midi.MidiSequenceBuilder;
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLScoreSnapshot;
+import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.core.ResourceLoader;
+
+/**
+ * MIDIシーケンスの作成.
+ * 楽器の種類は instrument.properties から読み込むため, DLSファイルは不要です.
+ * createSequence はすべてのトラックを変換し, editOneTrack は1トラックだけ変更したスナップショットを交互に変換します.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SequenceBenchmark {
+
+	@Param({ "1", "12" })
+	public int tracks;
+
+	@Param({ "300", "10000", "100000" })
+	public int notes;
+
+	private InstTypeTable instTypeTable;
+	private MMLScoreSnapshot snapshot;
+	private MMLScoreSnapshot editedSnapshot;
+	private MidiSequenceBuilder cachedBuilder;
+	private boolean edited;
+
+	@Setup
+	public void setup() throws InvalidMidiDataException {
+		instTypeTable = InstTypeTable.load(ResourceBundle.getBundle("instrument", new ResourceLoader()));
+		MMLScore score = SyntheticScore.createScore(tracks, notes);
+		snapshot = score.snapshot();
+
+		MMLTrack track = new MMLTrack().setMML(SyntheticScore.createTrackMML(notes, 1000));
+		track.setProgram(score.getTrack(0).getProgram());
+		score.setTrack(0, track);
+		editedSnapshot = score.snapshot();
+
+		cachedBuilder = new MidiSequenceBuilder(instTypeTable);
+		cachedBuilder.createSequence(snapshot);
+	}
+
+	@Benchmark
+	public Sequence createSequence() throws InvalidMidiDataException {
+		return new MidiSequenceBuilder(instTypeTable).createSequence(snapshot);
+	}
+
+	@Benchmark
+	public Sequence editOneTrack() throws InvalidMidiDataException {
+		edited = !edited;
+		return cachedBuilder.createSequence(edited ? editedSnapshot : snapshot);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLTrack;
+
+/**
+ * ベンチマーク用の合成スコアを作成します.
+ * 同じパラメータからは常に同じMMLを作成します.
+ */
+public final class SyntheticScore {
+	private static final String NOTE[] = { "c", "d", "e", "f", "g", "a", "b", "c+", "f+", "b-" };
+	private static final String LENGTH[] = { "", "", "4", "8", "8", "16", "8.", "2", "1", "32" };
+
+	/** テンポを変更する間隔 (ノート数) */
+	private static final int TEMPO_INTERVAL = 200;
+
+	private SyntheticScore() {}
+
+	/**
+	 * 1パート分のMMLを作成します.
+	 * @param noteCount ノート数
+	 * @param seed
+	 * @param withTempo テンポ指定を含めるかどうか
+	 * @return
+	 */
+	public static String createPartMML(int noteCount, long seed, boolean withTempo) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder(noteCount * 4);
+		int octave = 4;
+		for (int i = 0; i < noteCount; i++) {
+			if ( withTempo && (i % TEMPO_INTERVAL == 0) ) {
+				sb.append('t').append(80 + random.nextInt(120));
+			}
+			int k = random.nextInt(20);
+			if ( (k == 0) && (octave < 6) ) {
+				sb.append('>');
+				octave++;
+			} else if ( (k == 1) && (octave > 2) ) {
+				sb.append('<');
+				octave--;
+			} else if (k == 2) {
+				sb.append('v').append(8 + random.nextInt(8));
+			} else if (k == 3) {
+				sb.append('l').append(LENGTH[2 + random.nextInt(6)]);
+			}
+
+			if (random.nextInt(12) == 0) {
+				sb.append('r');
+			} else {
+				sb.append(NOTE[random.nextInt(NOTE.length)]);
+			}
+			sb.append(LENGTH[random.nextInt(LENGTH.length)]);
+			if ( (random.nextInt(16) == 0) && (i+1 < noteCount) ) {
+				sb.append('&');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 1トラック分のMMLを作成します. メロディパートにのみテンポ指定を含めます.
+	 */
+	public static String createTrackMML(int noteCount, long seed) {
+		return "MML@" + createPartMML(noteCount, seed, true)
+				+ "," + createPartMML(noteCount, seed+1, false)
+				+ "," + createPartMML(noteCount, seed+2, false) + ";";
+	}
+
+	/**
+	 * 指定したトラック数のスコアを作成します.
+	 * @param trackCount
+	 * @param noteCount パートごとのノート数
+	 * @return
+	 */
+	public static MMLScore createScore(int trackCount, int noteCount) {
+		MMLScore score = new MMLScore();
+		for (int i = 0; i < trackCount; i++) {
+			MMLTrack track = new MMLTrack().setMML(createTrackMML(noteCount, i * 3));
+			track.setTrackName("Track" + (i+1));
+			track.setProgram(i % 10);
+			score.addTrack(track);
+		}
+		return score;
+	}
+
+	/**
+	 * テスト用の既存スコアファイルを読み込みます.
+	 * 読み込み元は システムプロパティ bench.fixtures で指定します.
+	 */
+	public static byte[] readFixture(String name) throws IOException {
+		File dir = new File(System.getProperty("bench.fixtures", "test/fourthline/mmlTools"));
+		return Files.readAllBytes(new File(dir, name).toPath());
+	}
+}
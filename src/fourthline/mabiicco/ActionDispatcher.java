@@ -31,6 +31,7 @@ import fourthline.mabiicco.ui.editor.MMLTranspose;
 import fourthline.mmlTools.MMLScore;
 import fourthline.mmlTools.UndefinedTickException;
 import fourthline.mmlTools.parser.IMMLFileParser;
+import fourthline.mmlTools.parser.MMLBinaryFile;
 import fourthline.mmlTools.parser.MMLFile;
 import fourthline.mmlTools.parser.MMLParseException;
 import fourthline.mmlTools.parser.MMSFile;
@@ -90,7 +91,7 @@ public final class ActionDispatcher implements ActionListener, IFileStateObserve
 	private final FileFilter mmsFilter = new FileNameExtensionFilter(AppResource.appText("file.mms"), "mms");
 	private final FileFilter mmiFilter = new FileNameExtensionFilter(AppResource.appText("file.mmi"), "mmi");
 	private final FileFilter mmlFilter = new FileNameExtensionFilter(AppResource.appText("file.mml"), "mml");
-	private final FileFilter allFilter = new FileNameExtensionFilter(AppResource.appText("file.all"), "mmi", "mms", "mml");
+	private final FileFilter allFilter = new FileNameExtensionFilter(AppResource.appText("file.all"), "mmi", "mms", "mml", "mmb");
 	private final FileFilter midFilter = new FileNameExtensionFilter(AppResource.appText("file.mid"), "mid");
 
 	private final JFileChooser openFileChooser = new JFileChooser();
@@ -143,7 +144,7 @@ public final class ActionDispatcher implements ActionListener, IFileStateObserve
 			mmlSeqView.repaint();
 		});
 		actionMap.put(STOP, () -> {
-			MabiDLS.getInstance().getSequencer().stop();
+			MabiDLS.getInstance().getPlaybackSession().stop();
 			mainFrame.enableNoplayItems();
 		});
 		actionMap.put(PAUSE, this::pauseAction);
@@ -220,16 +221,23 @@ public final class ActionDispatcher implements ActionListener, IFileStateObserve
 				fileParser = new MMSFile();
 			} else if (file.toString().endsWith(".mml")) {
 				fileParser = new MMLFile();
+			} else if (file.toString().endsWith(".mmb")) {
+				fileParser = new MMLBinaryFile();
 			} else {
 				fileParser = new MMLScore();
 			}
 			score = fileParser.parse(new FileInputStream(file));
+			if (fileParser instanceof MMLBinaryFile) {
+				// バイナリ形式はMMLを持たないので, 表示用に生成する.
+				score.generateAll();
+			}
 		} catch (FileNotFoundException e) {
 			JOptionPane.showMessageDialog(mainFrame, 
 					AppResource.appText("error.read"), 
 					AppResource.appText("error.nofile"), 
 					JOptionPane.WARNING_MESSAGE);
-		} catch (MMLParseException e) {
+		} catch (MMLParseException | UndefinedTickException e) {
+			score = null;
 			JOptionPane.showMessageDialog(mainFrame, 
 					AppResource.appText("error.read"), 
 					AppResource.appText("error.invalid_file"), JOptionPane.WARNING_MESSAGE);
@@ -250,7 +258,7 @@ public final class ActionDispatcher implements ActionListener, IFileStateObserve
 	}
 
 	public void reloadMMLFileAction() {
-		if (MabiDLS.getInstance().getSequencer().isRunning()) {
+		if (MabiDLS.getInstance().getPlaybackSession().isRunning()) {
 			return;
 		}
 
@@ -297,7 +305,7 @@ public final class ActionDispatcher implements ActionListener, IFileStateObserve
 	}
 
 	private void openMMLFileAction() {
-		if (MabiDLS.getInstance().getSequencer().isRunning()) {
+		if (MabiDLS.getInstance().getPlaybackSession().isRunning()) {
 			return;
 		}
 
@@ -465,13 +473,13 @@ public final class ActionDispatcher implements ActionListener, IFileStateObserve
 	}
 
 	private void pauseAction() {
-		MabiDLS.getInstance().getSequencer().stop();
+		MabiDLS.getInstance().getPlaybackSession().stop();
 		mmlSeqView.pauseTickPosition();
 		mainFrame.enableNoplayItems();
 	}
 
 	private void playAction() {
-		if (MabiDLS.getInstance().getSequencer().isRunning()) {
+		if (MabiDLS.getInstance().getPlaybackSession().isRunning()) {
 			pauseAction();
 		} else {
 			mmlSeqView.startSequence();
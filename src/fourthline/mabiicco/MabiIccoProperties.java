@@ -53,6 +53,9 @@ public final class MabiIccoProperties {
 	/** マーカー表示の有効/無効 */
 	private static final String ENABLE_VIEW_MARKER = "function.enable_view_marker";
 
+	/** MML生成の並列化の有効/無効 */
+	private static final String ENABLE_PARALLEL_GENERATE = "function.enable_parallel_generate";
+
 	public static MabiIccoProperties getInstance() {
 		return instance;
 	}
@@ -176,4 +179,14 @@ public final class MabiIccoProperties {
 		properties.setProperty(ENABLE_VIEW_MARKER, Boolean.toString(b));
 		save();
 	}
+
+	public boolean getEnableParallelGenerate() {
+		String str = properties.getProperty(ENABLE_PARALLEL_GENERATE, "true");
+		return Boolean.parseBoolean(str);
+	}
+
+	public void setEnableParallelGenerate(boolean b) {
+		properties.setProperty(ENABLE_PARALLEL_GENERATE, Boolean.toString(b));
+		save();
+	}
 }
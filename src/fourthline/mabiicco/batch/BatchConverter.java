@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+
+import fourthline.mabiicco.midi.AudioRenderer;
+import fourthline.mabiicco.midi.InstClass;
+import fourthline.mabiicco.midi.InstRegistry;
+import fourthline.mabiicco.midi.InstTypeTable;
+import fourthline.mabiicco.midi.MabiDLS;
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.UndefinedTickException;
+import fourthline.mmlTools.core.ResourceLoader;
+import fourthline.mmlTools.parser.IMMLFileParser;
+import fourthline.mmlTools.parser.MMLBinaryFile;
+import fourthline.mmlTools.parser.MMLFile;
+import fourthline.mmlTools.parser.MMLParseException;
+import fourthline.mmlTools.parser.MMSFile;
+
+/**
+ * GUIを使わずに, スコアファイルをまとめて変換, 検証します.
+ * <pre>
+ * BatchConverter [options] file|directory...
+ *   -o dir         出力先. 指定しない場合は読み込みと生成の検証のみを行います.
+ *   -f mmi|mid|mml|wav 出力形式 (default: mmi). mml は1行1トラックの "MML@" テキスト.
+ *                  wav はソフトウェアシンセサイザで録音します (Java 9 以降は --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED が必要).
+ *   -stems         wav をトラックごとのファイルに分けて出力します.
+ *   -dls file      wav の録音に使うDLSファイル. 複数指定できます. 指定しない場合は標準の音色で録音します.
+ *   -j n           同時に処理するファイル数 (default: CPU数)
+ *   -r             ディレクトリを再帰的に検索します.
+ *   -inst file     楽器定義ファイル (default: properties/instrument.properties)
+ *   -v             パーサのログを出力します.
+ * </pre>
+ * -dls を指定しない場合はDLSは読み込まず, 楽器の種類は楽器定義から判定します.
+ * エラーのファイルがあった場合は終了コード 1 を返します.
+ */
+public final class BatchConverter {
+	private static final String INPUT_EXTENSIONS[] = { ".mmi", ".mms", ".mml", ".mmb" };
+
+	public enum Format {
+		MMI("mmi"), MID("mid"), MML("mml"), WAV("wav");
+
+		private final String extension;
+		private Format(String extension) {
+			this.extension = extension;
+		}
+	}
+
+	private final InstTypeTable instTypeTable;
+	private final Format format;
+	private final File outputDir;
+	private final AudioRenderer audioRenderer;
+	private final boolean stems;
+
+	/**
+	 * @param instTypeTable
+	 * @param format
+	 * @param outputDir null の場合は出力しません.
+	 */
+	public BatchConverter(InstTypeTable instTypeTable, Format format, File outputDir) {
+		this(instTypeTable, format, outputDir, new AudioRenderer(instTypeTable, InstRegistry.EMPTY), false);
+	}
+
+	/**
+	 * @param instTypeTable
+	 * @param format
+	 * @param outputDir null の場合は出力しません.
+	 * @param audioRenderer wav の録音に使用します.
+	 * @param stems wav をトラックごとのファイルに分ける場合は true
+	 */
+	public BatchConverter(InstTypeTable instTypeTable, Format format, File outputDir, AudioRenderer audioRenderer, boolean stems) {
+		this.instTypeTable = instTypeTable;
+		this.format = format;
+		this.outputDir = outputDir;
+		this.audioRenderer = audioRenderer;
+		this.stems = stems;
+	}
+
+	/**
+	 * 1ファイル分の処理結果.
+	 */
+	public static final class Result {
+		private final File file;
+		private final String message;
+		private final boolean error;
+		private final long time;
+
+		private Result(File file, String message, boolean error, long time) {
+			this.file = file;
+			this.message = message;
+			this.error = error;
+			this.time = time;
+		}
+
+		public boolean isError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return (error ? "ERROR " : "OK    ") + file.getPath() + " (" + time + "ms) " + message;
+		}
+	}
+
+	/**
+	 * ファイルを読み込み, 全トラックを生成して出力します. 例外は結果として返します.
+	 * @param file
+	 * @param outputFile 出力先. null の場合は出力しません.
+	 * @return
+	 */
+	public Result convert(File file, File outputFile) {
+		long startTime = System.currentTimeMillis();
+		try {
+			MMLScore score = parse(file).generateAll();
+			StringBuilder sb = new StringBuilder();
+			sb.append(score.getTrackCount()).append(" tracks");
+			for (MMLTrack track : score.getTrackList()) {
+				sb.append(" [").append(track.mmlRankFormat()).append("]");
+			}
+			if (outputFile != null) {
+				String info = write(score, outputFile);
+				sb.append(" -> ").append(outputFile.getPath());
+				if (info != null) {
+					sb.append(" ").append(info);
+				}
+			}
+			return new Result(file, sb.toString(), false, System.currentTimeMillis() - startTime);
+		} catch (MMLParseException | UndefinedTickException | InvalidMidiDataException | MidiUnavailableException | IOException | RuntimeException e) {
+			return new Result(file, e.getClass().getSimpleName() + ": " + e.getMessage(), true, System.currentTimeMillis() - startTime);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Result(file, "interrupted", true, System.currentTimeMillis() - startTime);
+		}
+	}
+
+	private MMLScore parse(File file) throws IOException, MMLParseException {
+		IMMLFileParser fileParser;
+		String name = file.getName();
+		if (name.endsWith(".mms")) {
+			fileParser = new MMSFile();
+		} else if (name.endsWith(".mml")) {
+			fileParser = new MMLFile(instTypeTable);
+		} else if (name.endsWith(".mmb")) {
+			fileParser = new MMLBinaryFile();
+		} else {
+			fileParser = new MMLScore();
+		}
+		try (InputStream istream = new FileInputStream(file)) {
+			return fileParser.parse(istream);
+		}
+	}
+
+	/**
+	 * 出力先のファイルを決めます. 入力のディレクトリ構成は出力先でも維持します.
+	 * 拡張子だけが異なる入力が重なる場合は, 入力の拡張子を残します (sample.mms.mmi).
+	 * @param files 入力ファイル
+	 * @param baseDirs 入力ファイルごとの, 相対パスの基準となるディレクトリ (null はファイル名のみ)
+	 * @return 出力しない場合は null の要素
+	 */
+	public File[] outputFiles(List<File> files, List<File> baseDirs) {
+		File outputFiles[] = new File[files.size()];
+		if (outputDir == null) {
+			return outputFiles;
+		}
+		Set<File> used = new HashSet<>();
+		for (int i = 0; i < outputFiles.length; i++) {
+			File file = files.get(i);
+			File baseDir = baseDirs.get(i);
+			String path = file.getName();
+			if (baseDir != null) {
+				path = baseDir.toPath().relativize(file.toPath()).toString();
+			}
+			int index = path.lastIndexOf('.');
+			File outputFile = new File(outputDir, ((index > 0) ? path.substring(0, index) : path) + "." + format.extension);
+			if (!used.add(outputFile)) {
+				outputFile = new File(outputDir, path + "." + format.extension);
+				used.add(outputFile);
+			}
+			outputFiles[i] = outputFile;
+		}
+		return outputFiles;
+	}
+
+	/**
+	 * @return wav の場合は録音の速さ. それ以外は null
+	 */
+	private String write(MMLScore score, File outputFile) throws IOException, InvalidMidiDataException, MidiUnavailableException, InterruptedException {
+		File parent = outputFile.getParentFile();
+		// 他のスレッドが同時に作成する場合があるため, 失敗しても存在すればよい.
+		if ( (parent != null) && !parent.mkdirs() && !parent.isDirectory() ) {
+			throw new IOException("can not create " + parent);
+		}
+		switch (format) {
+		case MMI:
+			try (OutputStream ostream = new FileOutputStream(outputFile)) {
+				score.writeToOutputStream(ostream);
+			}
+			break;
+		case MID:
+			MidiSystem.write(MabiDLS.createSequence(score.snapshot(), instTypeTable), 1, outputFile);
+			break;
+		case MML:
+			try (PrintStream stream = new PrintStream(outputFile, "UTF-8")) {
+				for (MMLTrack track : score.getTrackList()) {
+					stream.println(track.getMabiMML());
+				}
+			}
+			break;
+		case WAV:
+			if (stems) {
+				// 出力ファイル名を先頭にして, トラックごとに出力する.
+				String name = outputFile.getName();
+				List<AudioRenderer.Result> results = audioRenderer.renderStems(score.snapshot(), parent, name.substring(0, name.length() - 4), Runtime.getRuntime().availableProcessors());
+				double audioSeconds = 0.0;
+				double renderSeconds = 0.0;
+				for (AudioRenderer.Result result : results) {
+					audioSeconds += result.getAudioSeconds();
+					renderSeconds += result.getRenderSeconds();
+				}
+				return String.format("(%d stems, x%.1f realtime)", results.size(), (renderSeconds > 0) ? (audioSeconds / renderSeconds) : 0.0);
+			} else {
+				AudioRenderer.Result result = audioRenderer.render(score.snapshot(), outputFile);
+				return String.format("(%.1fs audio, x%.1f realtime)", result.getAudioSeconds(), result.getSpeed());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 入力ファイルを列挙します.
+	 * @param file ファイルまたはディレクトリ
+	 * @param recursive
+	 * @param list 見つかったファイルを追加するリスト
+	 */
+	public static void listFiles(File file, boolean recursive, List<File> list) {
+		if (!file.isDirectory()) {
+			list.add(file);
+			return;
+		}
+		File children[] = file.listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				if (recursive) {
+					listFiles(child, true, list);
+				}
+			} else if (isInputFile(child)) {
+				list.add(child);
+			}
+		}
+	}
+
+	private static boolean isInputFile(File file) {
+		for (String extension : INPUT_EXTENSIONS) {
+			if (file.getName().endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static InstTypeTable loadInstTypeTable(String path) throws IOException {
+		if (path == null) {
+			return InstTypeTable.load(ResourceBundle.getBundle("instrument", new ResourceLoader()));
+		}
+		try (InputStream istream = new FileInputStream(path)) {
+			return InstTypeTable.load(new PropertyResourceBundle(istream));
+		}
+	}
+
+	private static InstRegistry loadInstRegistry(List<String> dlsPaths) throws IOException {
+		List<InstClass> instList = new ArrayList<>();
+		for (String path : dlsPaths) {
+			try {
+				instList.addAll(InstClass.loadDLS(new File(path)));
+			} catch (InvalidMidiDataException e) {
+				throw new IOException(e);
+			}
+		}
+		return InstRegistry.of(instList);
+	}
+
+	private static void usage(PrintStream out) {
+		out.println("usage: BatchConverter [-o dir] [-f mmi|mid|mml|wav] [-stems] [-dls file] [-j threads] [-r] [-inst file] [-v] file|directory...");
+	}
+
+	public static void main(String args[]) throws IOException, InterruptedException {
+		PrintStream out = System.out;
+		File outputDir = null;
+		Format format = Format.MMI;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean recursive = false;
+		boolean verbose = false;
+		String instPath = null;
+		boolean stems = false;
+		List<String> dlsPaths = new ArrayList<>();
+		List<String> inputs = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-o":
+					outputDir = new File(args[++i]);
+					break;
+				case "-f":
+					format = Format.valueOf(args[++i].toUpperCase());
+					break;
+				case "-j":
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+					break;
+				case "-r":
+					recursive = true;
+					break;
+				case "-inst":
+					instPath = args[++i];
+					break;
+				case "-stems":
+					stems = true;
+					break;
+				case "-dls":
+					dlsPaths.add(args[++i]);
+					break;
+				case "-v":
+					verbose = true;
+					break;
+				default:
+					inputs.add(args[i]);
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+			usage(out);
+			System.exit(2);
+		}
+		if (inputs.isEmpty()) {
+			usage(out);
+			System.exit(2);
+		}
+
+		InstTypeTable instTypeTable = loadInstTypeTable(instPath);
+		AudioRenderer audioRenderer = new AudioRenderer(instTypeTable, loadInstRegistry(dlsPaths));
+		BatchConverter converter = new BatchConverter(instTypeTable, format, outputDir, audioRenderer, stems);
+		List<File> baseDirs = new ArrayList<>();
+		List<File> files = new ArrayList<>();
+		for (String input : inputs) {
+			File file = new File(input);
+			int size = files.size();
+			listFiles(file, recursive, files);
+			for (int i = size; i < files.size(); i++) {
+				baseDirs.add(file.isDirectory() ? file : null);
+			}
+		}
+
+		if (!verbose) {
+			// パーサのデバッグ出力を抑制する.
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {}
+			}));
+		}
+		if (threads > 1) {
+			// ファイル単位で並列に処理するので, トラックの並列生成は行わない.
+			MMLScore.setParallelGenerate(false);
+		}
+
+		long startTime = System.currentTimeMillis();
+		int errorCount = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			File outputFiles[] = converter.outputFiles(files, baseDirs);
+			for (int i = 0; i < files.size(); i++) {
+				File file = files.get(i);
+				File outputFile = outputFiles[i];
+				futures.add(executor.submit(() -> converter.convert(file, outputFile)));
+			}
+			for (Future<Result> future : futures) {
+				Result result = future.get();
+				if (result.isError()) {
+					errorCount++;
+				}
+				out.println(result);
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+			System.setOut(out);
+		}
+
+		out.printf("%d files, %d errors, %dms\n", files.size(), errorCount, System.currentTimeMillis() - startTime);
+		if (errorCount > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import fourthline.mmlTools.MMLScoreSnapshot;
+import fourthline.mmlTools.MMLScoreSnapshot.TrackSnapshot;
+import fourthline.mmlTools.TempoMap;
+
+/**
+ * スコアをソフトウェアシンセサイザで録音し, WAVファイルに出力します.
+ * <p>
+ * シンセサイザを出力ラインに接続せずに開き (AudioSynthesizer.openStream), 読み出したサンプル数で時間を進めるため,
+ * 実時間より速く録音できます. MIDIイベントはすべて, 先頭からの時間をタイムスタンプにして先に送信します.
+ * </p>
+ * <p>
+ * openStream は com.sun.media.sound の公開されていないAPIのため, リフレクションで呼び出します.
+ * Java 9 以降では --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED の指定が必要です.
+ * </p>
+ * トラックごとのファイル (ステム) は, トラックごとに別のシンセサイザで並列に録音します.
+ */
+public final class AudioRenderer {
+	/** 44.1kHz 16bit ステレオ */
+	public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+	/** 最後のイベントの後に録音する時間 (マイクロ秒). 残響の分. */
+	private static final long TAIL_US = 2000000;
+
+	private final InstTypeTable instTypeTable;
+	private final InstRegistry instRegistry;
+
+	/**
+	 * 録音の結果.
+	 */
+	public static final class Result {
+		private final File file;
+		private final long frameLength;
+		private final long renderTime;
+
+		private Result(File file, long frameLength, long renderTime) {
+			this.file = file;
+			this.frameLength = frameLength;
+			this.renderTime = renderTime;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return 録音した時間 (秒)
+		 */
+		public double getAudioSeconds() {
+			return frameLength / FORMAT.getFrameRate();
+		}
+
+		/**
+		 * @return 録音にかかった時間 (秒)
+		 */
+		public double getRenderSeconds() {
+			return renderTime / 1000000000.0;
+		}
+
+		/**
+		 * @return 実時間に対する録音の速さ (2.0 なら実時間の2倍速)
+		 */
+		public double getSpeed() {
+			return (renderTime <= 0) ? 0.0 : (getAudioSeconds() / getRenderSeconds());
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %.1fs audio in %.2fs (x%.1f)", file.getName(), getAudioSeconds(), getRenderSeconds(), getSpeed());
+		}
+	}
+
+	/**
+	 * @param instTypeTable パートの構成と音量の変換に使う, 楽器の種類のテーブル
+	 * @param instRegistry シンセサイザに読み込む楽器. 楽器のないプログラムはシンセサイザの標準の音色になります.
+	 */
+	public AudioRenderer(InstTypeTable instTypeTable, InstRegistry instRegistry) {
+		this.instTypeTable = instTypeTable;
+		this.instRegistry = instRegistry;
+	}
+
+	/**
+	 * 全トラックとコーラスパートを1つのWAVファイルに録音します.
+	 * @param score
+	 * @param file
+	 * @return
+	 * @throws InvalidMidiDataException
+	 * @throws MidiUnavailableException オフライン録音に対応していないシンセサイザの場合
+	 * @throws IOException
+	 */
+	public Result render(MMLScoreSnapshot score, File file) throws InvalidMidiDataException, MidiUnavailableException, IOException {
+		MidiEvent trackEvents[][] = new MidiSequenceBuilder(instTypeTable).createTrackEvents(score);
+		TempoMap tempoMap = new TempoMap(score.getTempoEventList());
+		return renderEvents(score, trackEvents, tempoMap, endTime(trackEvents, tempoMap), file);
+	}
+
+	/**
+	 * トラックごとに, 別のWAVファイルに録音します. コーラスパートは, ノートがある場合だけ出力します.
+	 * すべてのファイルはスコア全体と同じ長さになります.
+	 * @param score
+	 * @param directory 出力先のディレクトリ
+	 * @param baseName ファイル名の先頭 ("baseName_01.wav" ...)
+	 * @param threads 同時に録音するトラック数
+	 * @return トラック順の結果
+	 * @throws InvalidMidiDataException
+	 * @throws MidiUnavailableException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public List<Result> renderStems(MMLScoreSnapshot score, File directory, String baseName, int threads)
+			throws InvalidMidiDataException, MidiUnavailableException, IOException, InterruptedException {
+		MidiEvent trackEvents[][] = new MidiSequenceBuilder(instTypeTable).createTrackEvents(score);
+		TempoMap tempoMap = new TempoMap(score.getTempoEventList());
+		long endTime = endTime(trackEvents, tempoMap);
+
+		int trackCount = trackEvents.length - 2;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (int i = 0; i < trackEvents.length; i++) {
+				String name;
+				if (i < trackCount) {
+					name = String.format("%s_%02d.wav", baseName, i+1);
+				} else if (trackEvents[i].length > 1) {
+					// プログラムチェンジだけのコーラスパートは出力しない.
+					name = baseName + ((i == trackCount) ? "_chorus_m.wav" : "_chorus_f.wav");
+				} else {
+					continue;
+				}
+				MidiEvent stemEvents[][] = new MidiEvent[trackEvents.length][];
+				for (int j = 0; j < stemEvents.length; j++) {
+					stemEvents[j] = (i == j) ? trackEvents[j] : new MidiEvent[0];
+				}
+				File file = new File(directory, name);
+				futures.add(executor.submit(() -> renderEvents(score, stemEvents, tempoMap, endTime, file)));
+			}
+
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InvalidMidiDataException) {
+				throw (InvalidMidiDataException) cause;
+			} else if (cause instanceof MidiUnavailableException) {
+				throw (MidiUnavailableException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return 最後のイベントの時間 (マイクロ秒)
+	 */
+	private static long endTime(MidiEvent trackEvents[][], TempoMap tempoMap) {
+		long endTick = 0;
+		for (MidiEvent events[] : trackEvents) {
+			if (events.length > 0) {
+				endTick = Math.max(endTick, events[events.length-1].getTick());
+			}
+		}
+		return tempoMap.getMicrosecondOnTickOffset(endTick);
+	}
+
+	private Result renderEvents(MMLScoreSnapshot score, MidiEvent trackEvents[][], TempoMap tempoMap, long endTime, File file)
+			throws InvalidMidiDataException, MidiUnavailableException, IOException {
+		long startTime = System.nanoTime();
+		Synthesizer synthesizer = MidiSystem.getSynthesizer();
+		AudioInputStream stream = openStream(synthesizer);
+		try {
+			loadInstruments(synthesizer, score);
+			Receiver receiver = synthesizer.getReceiver();
+
+			// 再生時と同じチャンネルの設定.
+			for (int channel = 0; channel < 16; channel++) {
+				/* ctrl 91 汎用エフェクト 1(リバーブ) */
+				receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, 91, 0), -1);
+			}
+			List<TrackSnapshot> trackList = score.getTrackList();
+			for (int i = 0; (i < trackList.size()) && (i < MabiDLS.MAX_MIDI_PART); i++) {
+				/* ctrl 10 パンポット */
+				receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, MabiDLS.convertMidiChannel(i), 10, trackList.get(i).getPanpot()), -1);
+			}
+
+			// 同じタイムスタンプのイベントは, 送信した順に処理される.
+			for (MidiEvent events[] : trackEvents) {
+				for (MidiEvent event : events) {
+					receiver.send(event.getMessage(), tempoMap.getMicrosecondOnTickOffset(event.getTick()));
+				}
+			}
+
+			long frameLength = (long) ((endTime + TAIL_US) * (double) FORMAT.getFrameRate() / 1000000);
+			AudioSystem.write(new AudioInputStream(stream, FORMAT, frameLength), AudioFileFormat.Type.WAVE, file);
+			return new Result(file, frameLength, System.nanoTime() - startTime);
+		} finally {
+			synthesizer.close();
+		}
+	}
+
+	private void loadInstruments(Synthesizer synthesizer, MMLScoreSnapshot score) {
+		List<InstClass> requiredInsts = new ArrayList<>();
+		for (TrackSnapshot track : score.getTrackList()) {
+			for (int program : new int[] { track.getProgram(), track.getSongProgram() }) {
+				InstClass inst = instRegistry.getInstByProgram(program);
+				if ( (inst != null) && (inst.getInstrument() != null) && !requiredInsts.contains(inst) ) {
+					requiredInsts.add(inst);
+				}
+			}
+		}
+		for (InstClass inst : requiredInsts) {
+			synthesizer.loadInstrument(inst.getInstrument());
+		}
+	}
+
+	/**
+	 * 出力ラインを使わずにシンセサイザを開き, 出力を読み出すストリームを返します.
+	 */
+	private static AudioInputStream openStream(Synthesizer synthesizer) throws MidiUnavailableException {
+		try {
+			Method method = synthesizer.getClass().getMethod("openStream", AudioFormat.class, Map.class);
+			return (AudioInputStream) method.invoke(synthesizer, FORMAT, Collections.emptyMap());
+		} catch (NoSuchMethodException e) {
+			throw new MidiUnavailableException("offline rendering is not supported: " + synthesizer.getClass().getName());
+		} catch (IllegalAccessException | RuntimeException e) {
+			// Java 9 以降のモジュールのアクセス制限 (InaccessibleObjectException) を含む.
+			throw new MidiUnavailableException("offline rendering requires --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED");
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof MidiUnavailableException) {
+				throw (MidiUnavailableException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
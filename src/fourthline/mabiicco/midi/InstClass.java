@@ -101,11 +101,7 @@ public final class InstClass {
 	 * @return
 	 */
 	public static boolean[] getEnablePartByProgram(int program) {
-		InstClass inst = MabiDLS.getInstance().getInstByProgram(program);
-		if (inst != null) {
-			return inst.getType().getEnablePart();
-		}
-		return InstType.NONE.getEnablePart();
+		return MabiDLS.getInstance().getInstType(program).getEnablePart();
 	}
 
 	/**
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.ResourceBundle;
+
+/**
+ * プログラム番号で引く, 変更できない楽器のテーブル.
+ * <p>
+ * 楽器と種類をプログラム番号を添字にした配列で保持します.
+ * 作成後は変更されないので, 複数のスレッドからロックなしで参照できます.
+ * 楽器を追加する場合は, 新しいテーブルを作成して差し替えてください.
+ * </p>
+ */
+public final class InstRegistry implements InstTypeTable {
+	/** 楽器のない空のテーブル */
+	public static final InstRegistry EMPTY = new InstRegistry(new InstClass[0], new InstType[0], Collections.emptyList());
+
+	private final InstClass insts[];
+	private final InstType types[];
+	private final List<InstClass> instList;
+
+	private InstRegistry(InstClass insts[], InstType types[], List<InstClass> instList) {
+		this.insts = insts;
+		this.types = types;
+		this.instList = instList;
+	}
+
+	/**
+	 * 楽器のリストからテーブルを作成します. 同じプログラム番号の楽器は, 先にあるものを使用します.
+	 * @param instList
+	 * @return
+	 */
+	public static InstRegistry of(Collection<InstClass> instList) {
+		int size = 0;
+		for (InstClass inst : instList) {
+			size = Math.max(size, inst.getProgram() + 1);
+		}
+		InstClass insts[] = new InstClass[size];
+		InstType types[] = new InstType[size];
+		for (InstClass inst : instList) {
+			int program = inst.getProgram();
+			if ( (program >= 0) && (insts[program] == null) ) {
+				insts[program] = inst;
+				types[program] = inst.getType();
+			}
+		}
+		return new InstRegistry(insts, types, Collections.unmodifiableList(new ArrayList<>(instList)));
+	}
+
+	/**
+	 * 楽器定義 ("program=name,type,low,up") から, 種類だけのテーブルを作成します.
+	 * typeのない定義は InstType.NORMAL になります. DLSを読み込まずにパースする場合に使用します.
+	 * @param resource
+	 * @return
+	 */
+	public static InstRegistry load(ResourceBundle resource) {
+		List<Integer> programList = new ArrayList<>();
+		List<InstType> typeList = new ArrayList<>();
+		int size = 0;
+		for (String key : resource.keySet()) {
+			int program;
+			try {
+				program = Integer.parseInt(key.trim());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			String str[] = resource.getString(key).split(",");
+			InstType type = (str.length > 1) ? InstType.getInstType(str[1].trim()) : InstType.NORMAL;
+			if ( (program >= 0) && (type != null) ) {
+				programList.add(program);
+				typeList.add(type);
+				size = Math.max(size, program + 1);
+			}
+		}
+
+		InstType types[] = new InstType[size];
+		for (int i = 0; i < programList.size(); i++) {
+			types[programList.get(i)] = typeList.get(i);
+		}
+		return new InstRegistry(new InstClass[size], types, Collections.emptyList());
+	}
+
+	/**
+	 * @param program
+	 * @return 楽器がない場合は null
+	 */
+	public InstClass getInstByProgram(int program) {
+		if ( (program < 0) || (program >= insts.length) ) {
+			return null;
+		}
+		return insts[program];
+	}
+
+	/**
+	 * @param program
+	 * @return 楽器の種類. 定義のないプログラムは InstType.NONE
+	 */
+	@Override
+	public InstType getInstType(int program) {
+		if ( (program < 0) || (program >= types.length) || (types[program] == null) ) {
+			return InstType.NONE;
+		}
+		return types[program];
+	}
+
+	/**
+	 * @return 登録順の楽器のリスト (変更不可)
+	 */
+	public List<InstClass> getInstList() {
+		return instList;
+	}
+}
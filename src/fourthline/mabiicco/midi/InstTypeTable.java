@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.util.ResourceBundle;
+
+/**
+ * プログラム番号から楽器の種類を取得するテーブル.
+ * <p>
+ * MabiDLS は読み込んだDLSの楽器 (InstRegistry) から種類を返します.
+ * DLSを使わない場合は, 楽器定義 (instrument.properties) から作成したテーブルを使用します.
+ * </p>
+ */
+@FunctionalInterface
+public interface InstTypeTable {
+	/**
+	 * @param program
+	 * @return 楽器の種類. 定義のないプログラムは InstType.NONE
+	 */
+	InstType getInstType(int program);
+
+	/**
+	 * 楽器定義 ("program=name,type,low,up") からテーブルを作成します. typeのない定義は InstType.NORMAL になります.
+	 * @param resource
+	 * @return
+	 */
+	static InstTypeTable load(ResourceBundle resource) {
+		return InstRegistry.load(resource);
+	}
+}
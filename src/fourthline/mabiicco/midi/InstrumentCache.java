@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sound.midi.Instrument;
+import javax.sound.midi.Synthesizer;
+
+/**
+ * シンセサイザに読み込む楽器を, 使用メモリの上限つきで管理します.
+ * <p>
+ * DLSファイルから読み込んだ楽器は, 波形データをファイル上に残したままです (起動時は楽器の一覧だけを読み込みます).
+ * 波形データは初めて使うときに loadInstrument で読み込み, 読み込んだ楽器は最近使った順に保持します.
+ * 読み込んだ波形データの合計が上限を超えた場合は, 最も長く使っていない楽器を unloadInstrument で外して波形データを解放します.
+ * 複数の楽器で共有される波形データは, 使っている楽器がなくなったときに解放します.
+ * ファイルに対応しない (メモリ上にしかない) 波形データを使う楽器は解放できないため, 上限の対象にせず保持し続けます.
+ * </p>
+ * <p>
+ * 波形データのサイズの取得と解放は com.sun.media.sound の公開されていないAPIのため, リフレクションで呼び出します.
+ * Java 9 以降で java.desktop/com.sun.media.sound の Add-Exports がない場合は使用できないため, 楽器を外さずに保持します.
+ * unloadInstrument は全チャンネルの発音を止めるので, 楽器を外すのは上限を超えた場合だけです.
+ * 再生中は楽器を外さず, 次に外してよい require() まで待ちます.
+ * </p>
+ * 上限はシステムプロパティ mabiicco.instrumentCacheMB で指定します (default: 最大ヒープの1/4).
+ */
+public final class InstrumentCache {
+	private static final long MB = 1024 * 1024;
+
+	private final Synthesizer synthesizer;
+	private final long memoryLimit;
+
+	/** 最近使った順 (アクセス順) の読み込み済みの楽器 */
+	private final LinkedHashMap<Instrument, LoadedInstrument> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** 読み込み済みの波形データと, それを使っている楽器の数 */
+	private final IdentityHashMap<Object, Integer> bufferCount = new IdentityHashMap<>();
+	private long memoryUsage = 0;
+	private long totalLoadTime = 0;
+
+	/**
+	 * 読み込み済みの楽器.
+	 */
+	private static final class LoadedInstrument {
+		private final InstClass inst;
+		/** 解放できる波形データ. 解放できない場合は null. */
+		private final List<Object> buffers;
+		/** 波形データのサイズ (byte). 取得できない場合は負数. */
+		private final long size;
+		/** 読み込みにかかった時間 (ナノ秒) */
+		private final long loadTime;
+
+		private LoadedInstrument(InstClass inst, List<Object> buffers, long size, long loadTime) {
+			this.inst = inst;
+			this.buffers = buffers;
+			this.size = size;
+			this.loadTime = loadTime;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s (%.1fms, %s)", inst, loadTime / 1000000.0, (size < 0) ? "-" : ((size / 1024) + "KB"));
+		}
+	}
+
+	/**
+	 * @param synthesizer 開いているシンセサイザ
+	 * @param memoryLimit 保持する波形データの上限 (byte)
+	 */
+	public InstrumentCache(Synthesizer synthesizer, long memoryLimit) {
+		this.synthesizer = synthesizer;
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * @return システムプロパティ mabiicco.instrumentCacheMB, または最大ヒープの1/4 (byte)
+	 */
+	public static long defaultMemoryLimit() {
+		long limit = Long.getLong("mabiicco.instrumentCacheMB", Runtime.getRuntime().maxMemory() / 4 / MB);
+		return limit * MB;
+	}
+
+	/**
+	 * 楽器を使用できるようにします. 読み込んでいない楽器は読み込み, 上限を超えた場合は指定した楽器以外を古い順に外します.
+	 * 指定した楽器だけで上限を超える場合は, 上限を超えて保持します.
+	 * @param insts 使用する楽器
+	 * @param evict 上限を超えた楽器を外す場合は true. 再生中は false にします (外すと演奏中の発音も止まるため).
+	 */
+	public synchronized void require(Collection<InstClass> insts, boolean evict) {
+		Set<Instrument> required = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (InstClass inst : insts) {
+			Instrument instrument = inst.getInstrument();
+			if (instrument != null) {
+				required.add(instrument);
+			}
+		}
+
+		for (InstClass inst : insts) {
+			Instrument instrument = inst.getInstrument();
+			// get() で最近使った楽器になる.
+			if ( (instrument != null) && (entries.get(instrument) == null) ) {
+				load(inst, required);
+			}
+		}
+		if (evict) {
+			evict(required, memoryLimit);
+		}
+	}
+
+	private void load(InstClass inst, Set<Instrument> required) {
+		Instrument instrument = inst.getInstrument();
+		long startTime = System.nanoTime();
+		boolean loaded;
+		try {
+			loaded = synthesizer.loadInstrument(instrument);
+		} catch (OutOfMemoryError e) {
+			// 使用する楽器以外をすべて外して, もう一度読み込む.
+			evict(required, 0);
+			try {
+				loaded = synthesizer.loadInstrument(instrument);
+			} catch (OutOfMemoryError e2) {
+				e2.printStackTrace();
+				loaded = false;
+			}
+		}
+		if (!loaded) {
+			System.err.println("Instrument load failed: " + inst);
+			return;
+		}
+
+		long loadTime = System.nanoTime() - startTime;
+		List<Object> buffers = SampleBuffer.getBuffers(instrument);
+		long size = -1;
+		if (buffers != null) {
+			size = 0;
+			for (Object buffer : buffers) {
+				size += SampleBuffer.capacity(buffer);
+			}
+			if (!SampleBuffer.isReleasable(buffers)) {
+				buffers = null;
+			}
+		}
+		if (buffers != null) {
+			for (Object buffer : buffers) {
+				long capacity = SampleBuffer.capacity(buffer);
+				Integer count = bufferCount.get(buffer);
+				if (count == null) {
+					memoryUsage += capacity;
+					count = 0;
+				}
+				bufferCount.put(buffer, count + 1);
+			}
+		}
+
+		LoadedInstrument entry = new LoadedInstrument(inst, buffers, size, loadTime);
+		entries.put(instrument, entry);
+		totalLoadTime += loadTime;
+		System.out.printf("Instrument load: %s, total(%dKB)\n", entry, memoryUsage / 1024);
+	}
+
+	/**
+	 * 波形データの合計が limit 以下になるまで, keep 以外の楽器を古い順に外します.
+	 * 波形データを解放できない場合は外しません.
+	 */
+	private void evict(Set<Instrument> keep, long limit) {
+		Iterator<Map.Entry<Instrument, LoadedInstrument>> it = entries.entrySet().iterator();
+		while ( (memoryUsage > limit) && it.hasNext() ) {
+			Map.Entry<Instrument, LoadedInstrument> mapEntry = it.next();
+			LoadedInstrument entry = mapEntry.getValue();
+			if ( keep.contains(mapEntry.getKey()) || (entry.buffers == null) ) {
+				continue;
+			}
+			it.remove();
+			synthesizer.unloadInstrument(mapEntry.getKey());
+			for (Object buffer : entry.buffers) {
+				int count = bufferCount.get(buffer) - 1;
+				if (count > 0) {
+					bufferCount.put(buffer, count);
+				} else {
+					bufferCount.remove(buffer);
+					long capacity = SampleBuffer.capacity(buffer);
+					if (SampleBuffer.unload(buffer)) {
+						memoryUsage -= capacity;
+					} else {
+						// 解放できなかった分はメモリに残るため, 使用量から引かない.
+						System.err.println("Instrument sample unload failed: " + entry);
+					}
+				}
+			}
+			System.out.printf("Instrument unload: %s, total(%dKB)\n", entry, memoryUsage / 1024);
+		}
+	}
+
+	/**
+	 * @return 読み込み済みの波形データの合計 (byte). 取得できない楽器は含みません.
+	 */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * @return 読み込み済みの楽器の数
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return 楽器の読み込みにかかった時間の合計 (ms)
+	 */
+	public synchronized double getTotalLoadTime() {
+		return totalLoadTime / 1000000.0;
+	}
+
+	/**
+	 * @return 古い順に, 読み込み済みの楽器の名前と読み込み時間, 波形データのサイズ
+	 */
+	public synchronized List<String> report() {
+		List<String> list = new ArrayList<>();
+		for (LoadedInstrument entry : entries.values()) {
+			list.add(entry.toString());
+		}
+		return list;
+	}
+
+	/**
+	 * Gervill の楽器の波形データ (ModelByteBuffer) をリフレクションで操作します.
+	 */
+	private static final class SampleBuffer {
+		private static Method getPerformers;
+		private static Method getOscillators;
+		private static Class<?> wavetableClass;
+		private static Method getBuffer;
+		private static Method get8BitExtensionBuffer;
+		private static Method getRoot;
+		private static Method capacity;
+		private static Method getFile;
+		private static Method unload;
+		private static volatile boolean available;
+
+		static {
+			try {
+				String pkg = "com.sun.media.sound.";
+				getPerformers = Class.forName(pkg + "ModelInstrument").getMethod("getPerformers");
+				getOscillators = Class.forName(pkg + "ModelPerformer").getMethod("getOscillators");
+				wavetableClass = Class.forName(pkg + "ModelByteBufferWavetable");
+				getBuffer = wavetableClass.getMethod("getBuffer");
+				get8BitExtensionBuffer = wavetableClass.getMethod("get8BitExtensionBuffer");
+				Class<?> bufferClass = Class.forName(pkg + "ModelByteBuffer");
+				getRoot = bufferClass.getMethod("getRoot");
+				capacity = bufferClass.getMethod("capacity");
+				getFile = bufferClass.getMethod("getFile");
+				unload = bufferClass.getMethod("unload");
+				available = true;
+			} catch (ClassNotFoundException | NoSuchMethodException | RuntimeException e) {
+				available = false;
+			}
+		}
+
+		/**
+		 * @return 楽器が使う波形データ (重複なし). 取得できない場合は null.
+		 */
+		private static List<Object> getBuffers(Instrument instrument) {
+			if ( !available || !getPerformers.getDeclaringClass().isInstance(instrument) ) {
+				return null;
+			}
+			try {
+				Set<Object> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+				for (Object performer : (Object[]) getPerformers.invoke(instrument)) {
+					List<?> oscillators = (List<?>) getOscillators.invoke(performer);
+					if (oscillators == null) {
+						continue;
+					}
+					for (Object oscillator : oscillators) {
+						if (wavetableClass.isInstance(oscillator)) {
+							for (Method method : new Method[] { getBuffer, get8BitExtensionBuffer }) {
+								Object buffer = method.invoke(oscillator);
+								if (buffer != null) {
+									buffers.add(getRoot.invoke(buffer));
+								}
+							}
+						}
+					}
+				}
+				return new ArrayList<>(buffers);
+			} catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
+				// Java 9 以降のモジュールのアクセス制限を含む.
+				System.err.println("InstrumentCache: sample memory is not managed (" + e + ")");
+				available = false;
+				return null;
+			}
+		}
+
+		private static long capacity(Object buffer) {
+			try {
+				return (Long) capacity.invoke(buffer);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				return 0;
+			}
+		}
+
+		/**
+		 * @return すべての波形データがファイルに対応していて, 解放後にファイルから読み直せる場合は true
+		 */
+		private static boolean isReleasable(List<Object> buffers) {
+			try {
+				for (Object buffer : buffers) {
+					if (getFile.invoke(buffer) == null) {
+						return false;
+					}
+				}
+				return true;
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return 解放できた場合は true
+		 */
+		private static boolean unload(Object buffer) {
+			try {
+				unload.invoke(buffer);
+				return true;
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				// ファイルに対応しない (メモリ上にしかない) 波形データは解放できない.
+				return false;
+			}
+		}
+	}
+}
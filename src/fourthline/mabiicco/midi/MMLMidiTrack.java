@@ -5,6 +5,7 @@
 package fourthline.mabiicco.midi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import fourthline.mmlTools.MMLNoteEvent;
@@ -15,10 +16,26 @@ import fourthline.mmlTools.core.MMLTicks;
  * 複数のMMLNoteEventリストから, MIDIトラック用リストに変換する.
  *   マビノギ内の演奏とは若干ちがうけど！（気にしない
  *   TODO: 再生方式の完全な変更が必要.
+ * <p>
+ * パートはtick順に並んでいるので, 追加済みのリストとパートを先頭から1回ずつ走査してマージします.
+ * ノートは複製せず, 音の高さ, 位置, 長さ, 音量を配列に保持します.
+ * </p>
  */
-public class MMLMidiTrack {
-	private List<MMLTempoEvent> tempoList;
-	private ArrayList<MMLNoteEvent> noteEventList;
+public final class MMLMidiTrack {
+	private final List<MMLTempoEvent> tempoList;
+
+	private int size = 0;
+	private int note[] = new int[0];
+	private int tickOffset[] = new int[0];
+	private int tick[] = new int[0];
+	private int velocity[] = new int[0];
+
+	// マージ先
+	private int mergeSize;
+	private int mergeNote[] = new int[0];
+	private int mergeTickOffset[] = new int[0];
+	private int mergeTick[] = new int[0];
+	private int mergeVelocity[] = new int[0];
 
 	public MMLMidiTrack(List<MMLTempoEvent> tempoList) {
 		if (tempoList != null) {
@@ -26,76 +43,124 @@ public class MMLMidiTrack {
 		} else {
 			this.tempoList = new ArrayList<>();
 		}
-		noteEventList = new ArrayList<>();
 	}
 
-	public List<MMLNoteEvent> getNoteEventList() {
-		return noteEventList;
+	public int size() {
+		return size;
+	}
+
+	public int getNote(int index) {
+		return note[index];
 	}
 
+	public int getTickOffset(int index) {
+		return tickOffset[index];
+	}
+
+	public int getTick(int index) {
+		return tick[index];
+	}
+
+	public int getVelocity(int index) {
+		return velocity[index];
+	}
+
+	/**
+	 * パートを追加します. 同じ音が重なる場合は, 追加済みのリストで隣り合うノートを調整します.
+	 * @param list tick順のノートリスト. 変更しません.
+	 */
 	public void add(List<MMLNoteEvent> list) {
-		for (MMLNoteEvent noteEvent : list) {
-			addItem(noteEvent.clone());
+		int capacity = size + list.size();
+		if (mergeNote.length < capacity) {
+			mergeNote = Arrays.copyOf(mergeNote, capacity);
+			mergeTickOffset = Arrays.copyOf(mergeTickOffset, capacity);
+			mergeTick = Arrays.copyOf(mergeTick, capacity);
+			mergeVelocity = Arrays.copyOf(mergeVelocity, capacity);
 		}
-	}
+		mergeSize = 0;
 
-	private void addItem(MMLNoteEvent addEvent) {
-		int targetTick = addEvent.getTickOffset();
-		int targetIndex = 0;
-		for (MMLNoteEvent noteEvent : noteEventList) {
-			if (noteEvent.getTickOffset() > targetTick) {
-				break;
-			}
-			targetIndex++;
-			if ( (noteEvent.getTickOffset() == targetTick) && (noteEvent.getNote() == addEvent.getNote())) {
-				break;
+		int index = 0;
+		for (MMLNoteEvent addEvent : list) {
+			int addNote = addEvent.getNote();
+			int addTickOffset = addEvent.getTickOffset();
+			int addTick = addEvent.getTick();
+			int addVelocity = addEvent.getVelocity();
+
+			// 挿入位置: 同じ位置の同じ音の直後, または同じ位置の最後のノートの後.
+			while (index < size) {
+				if (tickOffset[index] > addTickOffset) {
+					break;
+				}
+				boolean sameNote = (tickOffset[index] == addTickOffset) && (note[index] == addNote);
+				copyToMerge(index++);
+				if (sameNote) {
+					break;
+				}
 			}
-		}
 
-		// 前の音との重複修正
-		if ( targetIndex > 0 ) {
-			MMLNoteEvent prevEvent = noteEventList.get( targetIndex - 1 );
-			if (addEvent.getNote() == prevEvent.getNote()) {
-				if ( prevEvent.getTickOffset() == targetTick ) {
-					// 開始位置が同じときには, 後発音で更新する.
-					// 前の音とテンポ指定がある場合は元あったノートのまま.
-					// 後発音が V0 の場合は l64音に更新する.
-					if (MMLTempoEvent.searchEqualsTick(tempoList, targetTick)) {
-						if (addEvent.getVelocity() == 0) {
-							prevEvent.setTick(MMLTicks.minimumTick());
+			// 前の音との重複修正
+			if (mergeSize > 0) {
+				int prev = mergeSize - 1;
+				if (addNote == mergeNote[prev]) {
+					if (mergeTickOffset[prev] == addTickOffset) {
+						// 開始位置が同じときには, 後発音で更新する.
+						// 前の音とテンポ指定がある場合は元あったノートのまま.
+						// 後発音が V0 の場合は l64音に更新する.
+						if (MMLTempoEvent.searchEqualsTick(tempoList, addTickOffset)) {
+							if (addVelocity == 0) {
+								mergeTick[prev] = MMLTicks.minimumTick();
+							}
+							continue;
+						} else {
+							if (mergeVelocity[prev] == 0) {
+								addTick = MMLTicks.minimumTick();
+							}
+							mergeSize--;
 						}
-						return;
 					} else {
-						if (prevEvent.getVelocity() == 0) {
-							addEvent.setTick(MMLTicks.minimumTick());
+						int tickOverlap = mergeTickOffset[prev] + mergeTick[prev] - addTickOffset;
+						if (tickOverlap > 0) {
+							mergeTick[prev] -= tickOverlap;
 						}
-						targetIndex--;
-						noteEventList.remove(targetIndex);
 					}
-				} else {
-					trimOverlapNote(prevEvent, addEvent);
 				}
 			}
-		}
 
-		// 後ろの音との重複修正
-		if ( targetIndex < noteEventList.size() ) {
-			MMLNoteEvent nextEvent = noteEventList.get( targetIndex );
-			trimOverlapNote(addEvent, nextEvent);
+			// 後ろの音との重複修正
+			if ( (index < size) && (note[index] == addNote) ) {
+				int tickOverlap = addTickOffset + addTick - tickOffset[index];
+				if (tickOverlap > 0) {
+					addTick -= tickOverlap;
+				}
+			}
+
+			mergeNote[mergeSize] = addNote;
+			mergeTickOffset[mergeSize] = addTickOffset;
+			mergeTick[mergeSize] = addTick;
+			mergeVelocity[mergeSize] = addVelocity;
+			mergeSize++;
+		}
+		while (index < size) {
+			copyToMerge(index++);
 		}
 
-		noteEventList.add(targetIndex, addEvent);
+		swap();
 	}
 
-	private void trimOverlapNote(MMLNoteEvent note1, MMLNoteEvent note2) {
-		if (note1.getTickOffset() >= note2.getTickOffset()) {
-			new AssertionError();
-		}
-		if (note1.getNote() == note2.getNote()) {
-			int tickOverlap = note1.getEndTick() - note2.getTickOffset();
-			if (tickOverlap > 0) {
-				note1.setTick( note1.getTick() - tickOverlap );
-			}
-		}
+	private void copyToMerge(int index) {
+		mergeNote[mergeSize] = note[index];
+		mergeTickOffset[mergeSize] = tickOffset[index];
+		mergeTick[mergeSize] = tick[index];
+		mergeVelocity[mergeSize] = velocity[index];
+		mergeSize++;
+	}
+
+	private void swap() {
+		int tmp[];
+		tmp = note; note = mergeNote; mergeNote = tmp;
+		tmp = tickOffset; tickOffset = mergeTickOffset; mergeTickOffset = tmp;
+		tmp = tick; tick = mergeTick; mergeTick = tmp;
+		tmp = velocity; velocity = mergeVelocity; mergeVelocity = tmp;
+		size = mergeSize;
 	}
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.util.Collections;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import fourthline.mmlTools.TempoMap;
+
+/**
+ * シーケンサを使わずに, シンセサイザへ直接MIDIメッセージを送信する再生エンジン.
+ * <p>
+ * 再生前にすべてのイベントをtick順に並べ, テンポの変換表から先頭からの時間 (マイクロ秒) を求めておきます.
+ * 再生中はテンポイベントを処理せず, 優先度の高い1つのスレッドが System.nanoTime() の経過時間で送信します.
+ * イベントは LOOKAHEAD_US だけ先に送信し, シンセサイザの時刻のタイムスタンプで発音時刻を指定します.
+ * </p>
+ * 送信の遅れ (予定した送信時刻からの差) を記録し, タイミングのずれとして取得できます.
+ */
+public final class MMLPlayer {
+	/** 先読みする時間 (マイクロ秒) */
+	public static final long LOOKAHEAD_US = 20000;
+	/** 次のイベントがない場合に待機する最大時間 (ナノ秒) */
+	private static final long MAX_WAIT_NS = 10000000;
+	/** これ以上遅れて送信したイベントを, 遅れたイベントとして数える (マイクロ秒) */
+	private static final long LATE_THRESHOLD_US = 1000;
+
+	private final Receiver receiver;
+	private final MidiDevice device;
+	private final Runnable endListener;
+	private final Thread thread;
+
+	// 以下は this で同期する.
+	private Schedule schedule = new Schedule(new MidiEvent[0][], new TempoMap(Collections.emptyList()));
+	private int index;
+	/** 先読みする時間 (マイクロ秒). デバイスの時刻を取得できない場合は 0 */
+	private long lookahead;
+	/** 再生開始位置の時間 (マイクロ秒) */
+	private long startTime;
+	/** 再生開始位置に対応する System.nanoTime() */
+	private long startNanoTime;
+	private long stopTick;
+	/** 送信したイベントの最後のタイムスタンプ. シンセサイザで発音を待っているイベントがなければ -1 */
+	private long lastTimeStamp = -1;
+	private volatile boolean running = false;
+
+	// 送信の遅れ (マイクロ秒)
+	private long latenessCount;
+	private long latenessSum;
+	private long latenessMax;
+	private long lateEventCount;
+
+	/**
+	 * 再生するイベントをtick順に並べ, 送信時刻を求めたもの. 作成後は変更されません.
+	 */
+	public static final class Schedule {
+		private final long ticks[];
+		private final long times[];
+		private final MidiMessage messages[];
+		private final TempoMap tempoMap;
+
+		/**
+		 * @param trackEvents トラックごとのtick順のイベント列. テンポイベントは使用しません.
+		 * @param tempoMap
+		 */
+		public Schedule(MidiEvent trackEvents[][], TempoMap tempoMap) {
+			int size = 0;
+			for (MidiEvent events[] : trackEvents) {
+				size += events.length;
+			}
+			ticks = new long[size];
+			times = new long[size];
+			messages = new MidiMessage[size];
+			this.tempoMap = tempoMap;
+
+			// 同じtickではトラック順にする.
+			int position[] = new int[trackEvents.length];
+			for (int i = 0; i < size; i++) {
+				int track = -1;
+				for (int j = 0; j < trackEvents.length; j++) {
+					if ( (position[j] < trackEvents[j].length)
+							&& ( (track < 0) || (trackEvents[j][position[j]].getTick() < trackEvents[track][position[track]].getTick()) ) ) {
+						track = j;
+					}
+				}
+				MidiEvent event = trackEvents[track][position[track]++];
+				ticks[i] = event.getTick();
+				times[i] = tempoMap.getMicrosecondOnTickOffset(event.getTick());
+				messages[i] = event.getMessage();
+			}
+		}
+
+		public int size() {
+			return ticks.length;
+		}
+	}
+
+	/**
+	 * @param receiver 送信先
+	 * @param device タイムスタンプの基準にするデバイス. 時刻を取得できない場合は予定時刻に送信します.
+	 * @param endListener 最後のイベントまで再生したときに, 再生スレッドから呼び出します.
+	 */
+	public MMLPlayer(Receiver receiver, MidiDevice device, Runnable endListener) {
+		this.receiver = receiver;
+		this.device = device;
+		this.endListener = endListener;
+		this.thread = new Thread(this::run, "MMLPlayer");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MAX_PRIORITY);
+		this.thread.start();
+	}
+
+	/**
+	 * 指定した位置から再生を開始します. 開始位置より前のノート以外のイベント (プログラムチェンジ等) は先に送信します.
+	 * @param tick
+	 */
+	public synchronized void start(Schedule schedule, long tick) {
+		if (running) {
+			allNotesOff();
+		}
+		this.schedule = schedule;
+		latenessCount = 0;
+		latenessSum = 0;
+		latenessMax = 0;
+		lateEventCount = 0;
+		locate(tick, true);
+		running = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * 再生位置を移動します. 再生中でない場合は, 次の開始位置になります.
+	 * @param tick
+	 */
+	public synchronized void setTickPosition(long tick) {
+		if (running) {
+			allNotesOff();
+			locate(tick, false);
+			LockSupport.unpark(thread);
+		} else {
+			stopTick = tick;
+		}
+	}
+
+	private void locate(long tick, boolean chase) {
+		index = 0;
+		while ( (index < schedule.ticks.length) && (schedule.ticks[index] < tick) ) {
+			if ( chase && !isNoteMessage(schedule.messages[index]) ) {
+				receiver.send(schedule.messages[index], -1);
+			}
+			index++;
+		}
+		lookahead = (device.getMicrosecondPosition() < 0) ? 0 : LOOKAHEAD_US;
+		startTime = schedule.tempoMap.getMicrosecondOnTickOffset(tick);
+		// 最初のイベントも先読みの時間を確保できるように, 時計は先読みの分だけ遅れて始まる.
+		startNanoTime = System.nanoTime() + lookahead * 1000;
+		stopTick = tick;
+	}
+
+	private static boolean isNoteMessage(MidiMessage message) {
+		if (message instanceof ShortMessage) {
+			int command = ((ShortMessage) message).getCommand();
+			return (command == ShortMessage.NOTE_ON) || (command == ShortMessage.NOTE_OFF);
+		}
+		return false;
+	}
+
+	public synchronized void stop() {
+		if (running) {
+			stopTick = getTickPosition();
+			running = false;
+			allNotesOff();
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return 現在の再生位置. 停止中は停止した位置.
+	 */
+	public synchronized long getTickPosition() {
+		if (!running) {
+			return stopTick;
+		}
+		long tick = schedule.tempoMap.getTickOffsetOnMicrosecond(currentTime());
+		return Math.max(tick, stopTick);
+	}
+
+	/**
+	 * @return 最後の再生開始からの, 送信の遅れの平均 (ms)
+	 */
+	public synchronized double getAverageLateness() {
+		return (latenessCount == 0) ? 0.0 : (latenessSum / 1000.0 / latenessCount);
+	}
+
+	/**
+	 * @return 最後の再生開始からの, 送信の遅れの最大 (ms)
+	 */
+	public synchronized double getMaxLateness() {
+		return latenessMax / 1000.0;
+	}
+
+	/**
+	 * @return 最後の再生開始からの, 予定時刻から1ms以上遅れて送信したイベントの数. 予定より遅れて発音しています.
+	 */
+	public synchronized long getLateEventCount() {
+		return lateEventCount;
+	}
+
+	/**
+	 * 再生スレッドの時計.
+	 * @return 先頭からの時間 (マイクロ秒)
+	 */
+	private long currentTime() {
+		return startTime + (System.nanoTime() - startNanoTime) / 1000;
+	}
+
+	private void run() {
+		while (true) {
+			long waitNanos = MAX_WAIT_NS;
+			boolean end = false;
+			synchronized (this) {
+				if (running) {
+					long times[] = schedule.times;
+					long now = currentTime();
+					dispatch(now);
+					if (index < times.length) {
+						waitNanos = Math.min(waitNanos, (times[index] - lookahead - now) * 1000);
+					} else if ( (times.length == 0) || (now >= times[times.length-1]) ) {
+						stopTick = getTickPosition();
+						running = false;
+						end = true;
+					} else {
+						waitNanos = Math.min(waitNanos, (times[times.length-1] - now) * 1000);
+					}
+				}
+			}
+
+			if (end) {
+				endListener.run();
+			} else if (running) {
+				LockSupport.parkNanos(Math.max(waitNanos, 0));
+			} else {
+				LockSupport.park();
+			}
+		}
+	}
+
+	/**
+	 * 先読みの時間までに予定されたイベントを送信します.
+	 * タイムスタンプは送信時のデバイスの時刻からの相対で決めるため, 2つの時計の差は積み重なりません.
+	 */
+	private void dispatch(long now) {
+		long times[] = schedule.times;
+		long deviceTime = -1;
+		while ( (index < times.length) && (times[index] - lookahead <= now) ) {
+			long lead = times[index] - now;
+			if ( (lookahead > 0) && (deviceTime < 0) ) {
+				deviceTime = device.getMicrosecondPosition();
+			}
+			long timeStamp = ( (deviceTime < 0) || (lead <= 0) ) ? -1 : (deviceTime + lead);
+			receiver.send(schedule.messages[index], timeStamp);
+			lastTimeStamp = Math.max(lastTimeStamp, timeStamp);
+
+			long lateness = now - (times[index] - lookahead);
+			latenessCount++;
+			latenessSum += lateness;
+			latenessMax = Math.max(latenessMax, lateness);
+			if (lead < -LATE_THRESHOLD_US) {
+				lateEventCount++;
+			}
+			index++;
+		}
+	}
+
+	/**
+	 * 全チャンネルの発音を止めます.
+	 * 先読みで送信したイベントはシンセサイザで発音を待っているため, 最後のタイムスタンプでも全ノートオフを送信します.
+	 * 同じタイムスタンプのイベントは送信した順に処理されるので, 待っている NOTE_ON の後になります.
+	 */
+	private void allNotesOff() {
+		long timeStamp = lastTimeStamp;
+		lastTimeStamp = -1;
+		for (int channel = 0; channel < 16; channel++) {
+			try {
+				/* ctrl 123 全ノートオフ */
+				ShortMessage message = new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, 123, 0);
+				receiver.send(message, -1);
+				if (timeStamp >= 0) {
+					receiver.send(message, timeStamp);
+				}
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -8,27 +8,32 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 
 import javax.sound.midi.*;
 
-import fourthline.mmlTools.MMLEventList;
 import fourthline.mmlTools.MMLNoteEvent;
 import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLScoreSnapshot;
+import fourthline.mmlTools.MMLScoreSnapshot.TrackSnapshot;
 import fourthline.mmlTools.MMLTempoEvent;
 import fourthline.mmlTools.MMLTrack;
 
-public final class MabiDLS {
+public final class MabiDLS implements InstTypeTable {
 	private static MabiDLS instance = null;
 	private Synthesizer synthesizer;
 	private Sequencer sequencer;
 	private MidiChannel channel[];
 	private ArrayList<MMLNoteEvent[]> playNoteList = new ArrayList<>();
 	private static final int MAX_CHANNEL_PLAY_NOTE = 4;
-	private static final int MAX_MIDI_PART = 12;
-	private ArrayList<InstClass> insts = new ArrayList<>();
+	static final int MAX_MIDI_PART = 12;
+	private volatile InstRegistry instRegistry = InstRegistry.EMPTY;
+	/** 変更のないトラックの変換結果を再利用する */
+	private final MidiSequenceBuilder sequenceBuilder = new MidiSequenceBuilder(this);
+	private PlaybackSession playbackSession;
+	/** 楽器の波形データは使用時に読み込む */
+	private InstrumentCache instrumentCache;
 
 	public static final String DEFALUT_DLS_PATH = "C:/Nexon/Mabinogi/mp3/MSXspirit.dls";
 
@@ -54,6 +59,7 @@ public final class MabiDLS {
 		long latency = this.synthesizer.getLatency();
 		int maxPolyphony = this.synthesizer.getMaxPolyphony();
 		System.out.printf("Latency: %d\nMaxPolyphony: %d\n", latency, maxPolyphony);
+		this.instrumentCache = new InstrumentCache(this.synthesizer, InstrumentCache.defaultMemoryLimit());
 
 		this.sequencer = MidiSystem.getSequencer();
 		this.sequencer.open();
@@ -65,9 +71,7 @@ public final class MabiDLS {
 				sequencer.setTempoInMPQ(ByteBuffer.wrap(metaData).getInt());
 			} else if (type == 0x2f) {
 				// トラック終端
-				for (INotifyTrackEnd n : notifier) {
-					n.trackEndNotify();
-				}
+				notifyTrackEnd();
 			}
 		});
 
@@ -75,55 +79,94 @@ public final class MabiDLS {
 		Receiver receiver = initializeSynthesizer();
 		Transmitter transmitter = this.sequencer.getTransmitters().get(0);
 		transmitter.setReceiver(receiver);
+
+		this.playbackSession = new PlaybackSession(this, this.sequencer, this.synthesizer, this::notifyTrackEnd);
 	}
 
 	public void addTrackEndNotifier(INotifyTrackEnd n) {
 		notifier.add(n);
 	}
 
-	public void loadingDLSFile(File file) throws InvalidMidiDataException, IOException {
+	private void notifyTrackEnd() {
+		for (INotifyTrackEnd n : notifier) {
+			n.trackEndNotify();
+		}
+	}
+
+	/**
+	 * DLSファイルの楽器を追加します. 楽器のテーブルは作り直して差し替えるので, 参照中のテーブルは変わりません.
+	 * 読み込むのは楽器の一覧だけで, 波形データは楽器を使うときに InstrumentCache で読み込みます.
+	 */
+	public synchronized void loadingDLSFile(File file) throws InvalidMidiDataException, IOException {
 		if (file.exists()) {
+			List<InstClass> insts = new ArrayList<>(instRegistry.getInstList());
+			long startTime = System.nanoTime();
 			List<InstClass> loadList = InstClass.loadDLS(file);
+			System.out.printf("DLS: %s, %d instruments (%.1fms)\n", file.getName(), loadList.size(), (System.nanoTime() - startTime) / 1000000.0);
 			for (InstClass inst : loadList) {
 				if (!insts.contains(inst)) {
 					insts.add(inst);
 				}
 			}
+			instRegistry = InstRegistry.of(insts);
 		}
 	}
 
+	/**
+	 * 読み込み済みの楽器のテーブルを取得します. DLSを読み込んでいない場合は空のテーブルです.
+	 * @return
+	 */
+	public InstRegistry getInstRegistry() {
+		return instRegistry;
+	}
+
 	public synchronized void loadRequiredInstruments(MMLScore score) {
+		loadRequiredInstruments(score.snapshot());
+	}
+
+	/**
+	 * スコアで使う楽器を読み込みます. 波形データの上限を超えた場合は, 再生中でなければ使っていない楽器を外します.
+	 * @param score
+	 */
+	public void loadRequiredInstruments(MMLScoreSnapshot score) {
+		loadRequiredInstruments(score, (playbackSession == null) || !playbackSession.isRunning());
+	}
+
+	/**
+	 * スコアで使う楽器を読み込みます.
+	 * @param score
+	 * @param evict 波形データの上限を超えた場合に, 使っていない楽器を外す場合は true. 外すと全チャンネルの発音が止まります.
+	 */
+	synchronized void loadRequiredInstruments(MMLScoreSnapshot score, boolean evict) {
 		ArrayList<InstClass> requiredInsts = new ArrayList<>();
-		for (MMLTrack track : score.getTrackList()) {
+		for (TrackSnapshot track : score.getTrackList()) {
 			InstClass inst1 = getInstByProgram( track.getProgram() );
 			InstClass inst2 = getInstByProgram( track.getSongProgram() );
-			if ( (inst1 != null) && (!requiredInsts.contains(inst1)) ) {
+			if (inst1 != null) {
 				requiredInsts.add(inst1);
 			}
-			if ( (inst2 != null) && (!requiredInsts.contains(inst2)) ) {
+			if (inst2 != null) {
 				requiredInsts.add(inst2);
 			}
 		}
+		instrumentCache.require(requiredInsts, evict);
+	}
 
-		// load required Instruments
-		List<Instrument> loadedList = Arrays.asList(synthesizer.getLoadedInstruments());
-		for (InstClass inst : requiredInsts) {
-			try {
-				Instrument instrument = inst.getInstrument();
-				if (!loadedList.contains(instrument)) {
-					synthesizer.loadInstrument(instrument);
-				}
-			} catch (OutOfMemoryError e) {
-				// FIXME: エラー処理
-				System.exit(1);
-			}
-		}
+	public InstrumentCache getInstrumentCache() {
+		return instrumentCache;
 	}
 
 	public Sequencer getSequencer() {
 		return sequencer;
 	}
 
+	/**
+	 * @return 再生セッション. initializeMIDI() 後に使用できます.
+	 */
+	public PlaybackSession getPlaybackSession() {
+		return playbackSession;
+	}
+
 	public Synthesizer getSynthesizer() {
 		return synthesizer;
 	}
@@ -153,19 +196,23 @@ public final class MabiDLS {
 	}
 
 	public InstClass[] getAvailableInstByInstType(EnumSet<InstType> e) {
-		return insts.stream()
+		return instRegistry.getInstList().stream()
 				.filter(inst -> e.contains(inst.getType()))
 				.toArray(size -> new InstClass[size]);
 	}
 
 	public InstClass getInstByProgram(int program) {
-		for (InstClass inst : insts) {
-			if (inst.getProgram() == program) {
-				return inst;
-			}
-		}
+		return instRegistry.getInstByProgram(program);
+	}
 
-		return null;
+	/**
+	 * 読み込んだDLSの楽器から, 楽器の種類を取得します.
+	 * @param program
+	 * @return DLSにない楽器の場合は InstType.NONE
+	 */
+	@Override
+	public InstType getInstType(int program) {
+		return instRegistry.getInstType(program);
 	}
 
 	/** 単音再生 */
@@ -179,8 +226,8 @@ public final class MabiDLS {
 
 	/** 和音再生 */
 	public void playNotes(MMLNoteEvent noteList[], int program, int channel) {
-		/* シーケンサによる再生中は鳴らさない */
-		if (sequencer.isRunning()) {
+		/* 再生中は鳴らさない */
+		if ( (playbackSession != null) && playbackSession.isRunning() ) {
 			return;
 		}
 		changeProgram(program, channel);
@@ -199,7 +246,7 @@ public final class MabiDLS {
 				}
 			}
 			if (note != playNoteEvents[i]) {
-				InstType instType = getInstByProgram(program).getType();
+				InstType instType = getInstType(program);
 				int volumn = instType.convertVelocityMML2Midi(note.getVelocity());
 				if (note.getNote() >= 0) {
 					midiChannel.noteOn( convertNoteMML2Midi(note.getNote()), volumn);
@@ -277,121 +324,42 @@ public final class MabiDLS {
 	 * @throws InvalidMidiDataException 
 	 */
 	public Sequence createSequence(MMLScore score) throws InvalidMidiDataException {
-		Sequence sequence = new Sequence(Sequence.PPQ, 96);
-
-		int trackCount = 0;
-		for (MMLTrack mmlTrack : score.getTrackList()) {
-			convertMidiTrack(sequence.createTrack(), mmlTrack, trackCount);
-			trackCount++;
-			if (trackCount >= MAX_MIDI_PART) {
-				break;
-			}
-		}
-
-		// グローバルテンポ
-		Track track = sequence.getTracks()[0];
-		List<MMLTempoEvent> globalTempoList = score.getTempoEventList();
-		for (MMLTempoEvent tempoEvent :  globalTempoList) {
-			byte tempo[] = tempoEvent.getMetaData();
-			int tickOffset = tempoEvent.getTickOffset();
-
-			MidiMessage message = new MetaMessage(MMLTempoEvent.META, 
-					tempo, tempo.length);
-			track.add(new MidiEvent(message, tickOffset));
-		}
-
-		// コーラスパートの作成
-		createVoiceMidiTrack(sequence, score, 13, 100); // 男声コーラス
-		createVoiceMidiTrack(sequence, score, 14, 110); // 女声コーラス
-
-		return sequence;
+		return createSequence(score.snapshot());
 	}
 
-	private void createVoiceMidiTrack(Sequence sequence, MMLScore score, int channel, int program) throws InvalidMidiDataException {
-		Track track = sequence.createTrack();
-		ShortMessage pcMessage = new ShortMessage(ShortMessage.PROGRAM_CHANGE, 
-				channel,
-				program,
-				0);
-		track.add(new MidiEvent(pcMessage, 0));
-
-		for (MMLTrack mmlTrack : score.getTrackList()) {
-			if (mmlTrack.getSongProgram() != program) {
-				continue;
-			}
-
-			InstType instType = getInstByProgram(program).getType();
-			convertMidiPart(track, mmlTrack.getMMLEventAtIndex(3).getMMLNoteEventList(), channel, instType);
-		}
+	/**
+	 * スナップショットからMIDIシーケンスを作成します。編集中のスコアとは別スレッドで使用できます。
+	 * 前回から変更のないトラックは, 前回変換したMIDIイベントを使います。
+	 * @throws InvalidMidiDataException 
+	 */
+	public Sequence createSequence(MMLScoreSnapshot score) throws InvalidMidiDataException {
+		return sequenceBuilder.createSequence(score);
 	}
 
 	/**
-	 * トラックに含まれるすべてのMMLEventListを1つのMIDIトラックに変換します.
-	 * @param track
-	 * @param channel
+	 * スナップショットからトラックごとのMIDIイベントを作成します. createSequence() と変換結果を共有します.
 	 * @throws InvalidMidiDataException
 	 */
-	private void convertMidiTrack(Track track, MMLTrack mmlTrack, int channel) throws InvalidMidiDataException {
-		int program = mmlTrack.getProgram();
-		channel = convertMidiChannel(channel);
-		ShortMessage pcMessage = new ShortMessage(ShortMessage.PROGRAM_CHANGE, 
-				channel,
-				program,
-				0);
-		track.add(new MidiEvent(pcMessage, 0));
-		boolean enablePart[] = InstClass.getEnablePartByProgram(program);
-		InstType instType = getInstByProgram(mmlTrack.getProgram()).getType();
-
-		MMLMidiTrack midiTrack = new MMLMidiTrack(mmlTrack.getGlobalTempoList());
-		for (int i = 0; i < enablePart.length; i++) {
-			if (enablePart[i]) {
-				MMLEventList eventList = mmlTrack.getMMLEventAtIndex(i);
-				midiTrack.add(eventList.getMMLNoteEventList());
-			}
-		}
-		convertMidiPart(track, midiTrack.getNoteEventList(), channel, instType);
+	public MidiEvent[][] createTrackEvents(MMLScoreSnapshot score) throws InvalidMidiDataException {
+		return sequenceBuilder.createTrackEvents(score);
 	}
 
-	private void convertMidiPart(Track track, List<MMLNoteEvent> eventList, int channel, InstType inst) {
-		int volumn = MMLNoteEvent.INITIAL_VOLUMN;
-
-		// Noteイベントの変換
-		for ( MMLNoteEvent noteEvent : eventList ) {
-			int note = noteEvent.getNote();
-			int tick = noteEvent.getTick();
-			int tickOffset = noteEvent.getTickOffset() + 1;
-			int endTickOffset = tickOffset + tick - 1;
-
-			// ボリュームの変更
-			if (noteEvent.getVelocity() >= 0) {
-				volumn = noteEvent.getVelocity();
-			}
-
-			try {
-				// ON イベント作成
-				MidiMessage message1 = new ShortMessage(ShortMessage.NOTE_ON, 
-						channel,
-						convertNoteMML2Midi(note), 
-						inst.convertVelocityMML2Midi(volumn));
-				track.add(new MidiEvent(message1, tickOffset));
-
-				// Off イベント作成
-				MidiMessage message2 = new ShortMessage(ShortMessage.NOTE_OFF,
-						channel, 
-						convertNoteMML2Midi(note),
-						0);
-				track.add(new MidiEvent(message2, endTickOffset));
-			} catch (InvalidMidiDataException e) {
-				e.printStackTrace();
-			}
-		}
+	/**
+	 * 楽器の種類のテーブルを指定して, スナップショットからMIDIシーケンスを作成します. DLSやシンセサイザは使用しません.
+	 * @param score
+	 * @param instTypeTable
+	 * @return
+	 * @throws InvalidMidiDataException
+	 */
+	public static Sequence createSequence(MMLScoreSnapshot score, InstTypeTable instTypeTable) throws InvalidMidiDataException {
+		return new MidiSequenceBuilder(instTypeTable).createSequence(score);
 	}
 
-	private int convertNoteMML2Midi(int mml_note) {
+	static int convertNoteMML2Midi(int mml_note) {
 		return (mml_note + 12);
 	}
 
-	private int convertMidiChannel(int channel) {
+	static int convertMidiChannel(int channel) {
 		if ( (channel >= 9) && (channel < MAX_MIDI_PART) ) {
 			return (channel + 1);
 		}
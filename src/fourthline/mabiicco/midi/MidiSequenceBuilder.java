@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import fourthline.mmlTools.MMLNoteEvent;
+import fourthline.mmlTools.MMLScoreSnapshot;
+import fourthline.mmlTools.MMLScoreSnapshot.TrackSnapshot;
+import fourthline.mmlTools.MMLTempoEvent;
+
+/**
+ * スナップショットからMIDIシーケンスを作成します.
+ * <p>
+ * トラックごとに変換したMIDIイベントを, tick順に並べて保持します.
+ * 変更のないトラックはスナップショットで同じ TrackSnapshot を共有するので,
+ * 次に作成するときは変換せずに保持しているイベントを使います.
+ * イベントはtick順にトラックへ追加するため, Track.add() は末尾への追加になります.
+ * </p>
+ */
+public final class MidiSequenceBuilder {
+	private final InstTypeTable instTypeTable;
+
+	/** トラックごとの変換結果 */
+	private final CachedEvents trackCache[] = new CachedEvents[MabiDLS.MAX_MIDI_PART];
+	/** コーラスパートの変換結果 */
+	private final CachedEvents voiceCache[] = new CachedEvents[2];
+
+	/**
+	 * 変換したMIDIイベントと, 変換元.
+	 */
+	private static final class CachedEvents {
+		private final List<TrackSnapshot> source;
+		private final List<MMLTempoEvent> tempoList;
+		private final InstType instType;
+		private final MidiEvent events[];
+
+		private CachedEvents(List<TrackSnapshot> source, List<MMLTempoEvent> tempoList, InstType instType, MidiEvent events[]) {
+			this.source = source;
+			this.tempoList = tempoList;
+			this.instType = instType;
+			this.events = events;
+		}
+
+		private boolean matches(List<TrackSnapshot> source, List<MMLTempoEvent> tempoList, InstType instType) {
+			if ( (this.instType != instType) || (this.source.size() != source.size()) ) {
+				return false;
+			}
+			for (int i = 0; i < source.size(); i++) {
+				if (this.source.get(i) != source.get(i)) {
+					return false;
+				}
+			}
+			return (this.tempoList == null) || this.tempoList.equals(tempoList);
+		}
+	}
+
+	/**
+	 * @param instTypeTable パートの構成と音量の変換に使う, 楽器の種類のテーブル
+	 */
+	public MidiSequenceBuilder(InstTypeTable instTypeTable) {
+		this.instTypeTable = instTypeTable;
+	}
+
+	/**
+	 * MIDIシーケンスを作成します.
+	 * @param score
+	 * @return
+	 * @throws InvalidMidiDataException
+	 */
+	public Sequence createSequence(MMLScoreSnapshot score) throws InvalidMidiDataException {
+		Sequence sequence = new Sequence(Sequence.PPQ, 96);
+		MidiEvent trackEvents[][] = createTrackEvents(score);
+		for (int i = 0; i < trackEvents.length; i++) {
+			if (i == 0) {
+				// グローバルテンポ
+				addEvents(sequence.createTrack(), trackEvents[i], createTempoEvents(score.getTempoEventList()));
+			} else {
+				addEvents(sequence.createTrack(), trackEvents[i], null);
+			}
+		}
+		return sequence;
+	}
+
+	/**
+	 * トラックごとのMIDIイベントを作成します. テンポイベントは含みません.
+	 * 返すイベントは変更のないトラックで共有されるため, 変更してはいけません.
+	 * @param score
+	 * @return トラックとコーラスパートの順に並んだ, tick順のイベント列
+	 * @throws InvalidMidiDataException
+	 */
+	public synchronized MidiEvent[][] createTrackEvents(MMLScoreSnapshot score) throws InvalidMidiDataException {
+		List<MMLTempoEvent> globalTempoList = score.getTempoEventList();
+		List<TrackSnapshot> trackList = score.getTrackList();
+		int trackCount = Math.min(trackList.size(), MabiDLS.MAX_MIDI_PART);
+		MidiEvent trackEvents[][] = new MidiEvent[trackCount + voiceCache.length][];
+		for (int i = 0; i < trackCount; i++) {
+			TrackSnapshot mmlTrack = trackList.get(i);
+			InstType instType = instTypeTable.getInstType(mmlTrack.getProgram());
+			List<TrackSnapshot> source = Arrays.asList(mmlTrack);
+			CachedEvents cache = trackCache[i];
+			if ( (cache == null) || !cache.matches(source, globalTempoList, instType) ) {
+				MidiEvent events[] = convertMidiTrack(mmlTrack, globalTempoList, MabiDLS.convertMidiChannel(i), instType);
+				cache = new CachedEvents(source, new ArrayList<>(globalTempoList), instType, events);
+				trackCache[i] = cache;
+			}
+			trackEvents[i] = cache.events;
+		}
+		Arrays.fill(trackCache, trackCount, trackCache.length, null);
+
+		// コーラスパートの作成
+		trackEvents[trackCount] = createVoiceEvents(trackList, 0, 13, 100); // 男声コーラス
+		trackEvents[trackCount+1] = createVoiceEvents(trackList, 1, 14, 110); // 女声コーラス
+
+		return trackEvents;
+	}
+
+	private MidiEvent[] createVoiceEvents(List<TrackSnapshot> trackList, int cacheIndex, int channel, int program) throws InvalidMidiDataException {
+		List<TrackSnapshot> source = new ArrayList<>();
+		for (TrackSnapshot mmlTrack : trackList) {
+			if (mmlTrack.getSongProgram() == program) {
+				source.add(mmlTrack);
+			}
+		}
+
+		InstType instType = instTypeTable.getInstType(program);
+		CachedEvents cache = voiceCache[cacheIndex];
+		if ( (cache == null) || !cache.matches(source, null, instType) ) {
+			EventList eventList = new EventList();
+			eventList.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, channel, program, 0), 0));
+			for (TrackSnapshot mmlTrack : source) {
+				int volumn = MMLNoteEvent.INITIAL_VOLUMN;
+				for (MMLNoteEvent noteEvent : mmlTrack.getPart(3)) {
+					if (noteEvent.getVelocity() >= 0) {
+						volumn = noteEvent.getVelocity();
+					}
+					eventList.addNote(channel, noteEvent.getNote(), noteEvent.getTickOffset(), noteEvent.getTick(), instType.convertVelocityMML2Midi(volumn));
+				}
+			}
+			cache = new CachedEvents(source, null, instType, eventList.toSortedArray());
+			voiceCache[cacheIndex] = cache;
+		}
+		return cache.events;
+	}
+
+	/**
+	 * トラックに含まれるすべてのMMLEventListを1つのMIDIトラックに変換します.
+	 */
+	private static MidiEvent[] convertMidiTrack(TrackSnapshot mmlTrack, List<MMLTempoEvent> globalTempoList, int channel, InstType instType) throws InvalidMidiDataException {
+		EventList eventList = new EventList();
+		eventList.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, channel, mmlTrack.getProgram(), 0), 0));
+
+		boolean enablePart[] = instType.getEnablePart();
+		MMLMidiTrack midiTrack = new MMLMidiTrack(globalTempoList);
+		for (int i = 0; i < enablePart.length; i++) {
+			if (enablePart[i]) {
+				midiTrack.add(mmlTrack.getPart(i));
+			}
+		}
+
+		int volumn = MMLNoteEvent.INITIAL_VOLUMN;
+		for (int i = 0; i < midiTrack.size(); i++) {
+			// ボリュームの変更
+			if (midiTrack.getVelocity(i) >= 0) {
+				volumn = midiTrack.getVelocity(i);
+			}
+			eventList.addNote(channel, midiTrack.getNote(i), midiTrack.getTickOffset(i), midiTrack.getTick(i), instType.convertVelocityMML2Midi(volumn));
+		}
+		return eventList.toSortedArray();
+	}
+
+	private static MidiEvent[] createTempoEvents(List<MMLTempoEvent> globalTempoList) throws InvalidMidiDataException {
+		EventList eventList = new EventList();
+		for (MMLTempoEvent tempoEvent : globalTempoList) {
+			byte tempo[] = tempoEvent.getMetaData();
+			eventList.add(new MidiEvent(new MetaMessage(MMLTempoEvent.META, tempo, tempo.length), tempoEvent.getTickOffset()));
+		}
+		return eventList.toSortedArray();
+	}
+
+	/**
+	 * 2つのtick順のイベント列をマージしてトラックに追加します. 同じtickでは events1 を先にします.
+	 */
+	private static void addEvents(Track track, MidiEvent events1[], MidiEvent events2[]) {
+		if (events2 == null) {
+			events2 = new MidiEvent[0];
+		}
+		int i = 0;
+		int j = 0;
+		while ( (i < events1.length) || (j < events2.length) ) {
+			if ( (j >= events2.length) || ( (i < events1.length) && (events1[i].getTick() <= events2[j].getTick()) ) ) {
+				track.add(events1[i++]);
+			} else {
+				track.add(events2[j++]);
+			}
+		}
+	}
+
+	/**
+	 * 追加した順序を保ったまま, tick順に並べるイベントのリスト.
+	 * Track.add() と同じく, 同じtickのイベントは追加した順になります.
+	 */
+	private static final class EventList {
+		private final List<MidiEvent> events = new ArrayList<>();
+
+		private void add(MidiEvent event) {
+			events.add(event);
+		}
+
+		/**
+		 * ノートのON/OFFイベントを追加します. ONは開始位置の1tick後, OFFは終了位置です.
+		 * MIDIの範囲外のノートは追加しません.
+		 */
+		private void addNote(int channel, int note, int tickOffset, int tick, int velocity) {
+			int midiNote = MabiDLS.convertNoteMML2Midi(note);
+			try {
+				MidiMessage message1 = new ShortMessage(ShortMessage.NOTE_ON, channel, midiNote, velocity);
+				MidiMessage message2 = new ShortMessage(ShortMessage.NOTE_OFF, channel, midiNote, 0);
+				events.add(new MidiEvent(message1, tickOffset + 1));
+				events.add(new MidiEvent(message2, tickOffset + tick));
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+			}
+		}
+
+		private MidiEvent[] toSortedArray() {
+			// tick と追加順をまとめてソートする.
+			long keys[] = new long[events.size()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = (events.get(i).getTick() << 32) | i;
+			}
+			Arrays.sort(keys);
+			MidiEvent sorted[] = new MidiEvent[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				sorted[i] = events.get((int) keys[i]);
+			}
+			return sorted;
+		}
+	}
+}
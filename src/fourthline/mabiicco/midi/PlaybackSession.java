@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mabiicco.midi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+
+import fourthline.mmlTools.MMLScoreSnapshot;
+import fourthline.mmlTools.MMLScoreSnapshot.TrackSnapshot;
+import fourthline.mmlTools.TempoMap;
+
+/**
+ * 再生セッション.
+ * <p>
+ * 作成した再生データを保持し, スコアのトラックとテンポが変わっていなければ次の再生開始でもそのまま使います.
+ * 楽器の読み込みと再生データの作成は1つの再生スレッドで順に行うため, 再生開始や事前準備の要求は待たずに戻ります.
+ * 変更のないトラックはスナップショットで同じ TrackSnapshot が共有されるので, 同一性で変更を判定します.
+ * </p>
+ * <p>
+ * 通常は MMLPlayer でシンセサイザへ直接送信します.
+ * システムプロパティ mabiicco.useSequencer=true を指定した場合は, 標準のシーケンサで再生します.
+ * </p>
+ * <p>
+ * 再生開始の要求は世代番号で管理し, 再生スレッドで開始するまでに停止や次の再生開始が要求された場合は開始しません.
+ * 開始を待っている間も再生中として扱います.
+ * </p>
+ * 再生要求から最初のノートが発音されるまでの時間を計測します.
+ */
+public final class PlaybackSession {
+	private final MabiDLS dls;
+	private final Sequencer sequencer;
+	private final MidiDevice device;
+	/** シーケンサを使う場合は null */
+	private final MMLPlayer player;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor((r) -> {
+		Thread thread = new Thread(r, "PlaybackSession");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** 事前準備を待っているスナップショット */
+	private final AtomicReference<MMLScoreSnapshot> pendingScore = new AtomicReference<>();
+
+	/** 再生開始と停止の世代. 開始を待っている要求は, 世代が変わると取り消される. */
+	private final AtomicInteger generation = new AtomicInteger();
+	/** 再生エンジンの開始と停止, 以下の2つの変数は lock で同期する. */
+	private final Object lock = new Object();
+	private volatile boolean startPending = false;
+	/** 開始を待っている再生の開始位置 */
+	private volatile long pendingTick;
+
+	// 以下は再生スレッドでのみ変更する.
+	private MMLScoreSnapshot preparedScore;
+	private InstRegistry preparedRegistry;
+	private Sequence preparedSequence;
+	private MMLPlayer.Schedule preparedSchedule;
+	private TempoMap preparedTempoMap = new TempoMap(Collections.emptyList());
+	/** 再生中のシーケンスのテンポ */
+	private volatile TempoMap tempoMap = preparedTempoMap;
+
+	/** 計測中の再生要求の時刻 (ナノ秒). 計測していない場合は 0 */
+	private volatile long requestTime = 0;
+	private volatile long startLatency = -1;
+	private volatile long timeToFirstNote = -1;
+
+	/**
+	 * @param dls
+	 * @param sequencer シンセサイザに接続済みのシーケンサ
+	 * @param synthesizer
+	 * @param endListener MMLPlayer で最後まで再生したときに呼び出します.
+	 * @throws MidiUnavailableException
+	 */
+	PlaybackSession(MabiDLS dls, Sequencer sequencer, MidiDevice synthesizer, Runnable endListener) throws MidiUnavailableException {
+		this.dls = dls;
+		this.sequencer = sequencer;
+		this.device = synthesizer;
+		if (Boolean.getBoolean("mabiicco.useSequencer")) {
+			sequencer.getTransmitter().setReceiver(new FirstNoteReceiver(null));
+			this.player = null;
+		} else {
+			this.player = new MMLPlayer(new FirstNoteReceiver(synthesizer.getReceiver()), synthesizer, endListener);
+		}
+	}
+
+	/**
+	 * 再生に必要な楽器の読み込みと再生データの作成を, 再生スレッドで先に行います.
+	 * 続けて呼び出された場合は, 最後のスナップショットだけを準備します. 再生中の演奏は変わりません.
+	 * 再生中は, 楽器のキャッシュが上限を超えても楽器を外しません (外すと演奏中の発音が止まるため).
+	 * @param score
+	 */
+	public void prepare(MMLScoreSnapshot score) {
+		if (pendingScore.getAndSet(score) == null) {
+			executor.execute(() -> {
+				try {
+					prepareScore(pendingScore.getAndSet(null), !isEngineRunning());
+				} catch (InvalidMidiDataException e) {
+					e.printStackTrace();
+				}
+			});
+		}
+	}
+
+	/**
+	 * 指定した位置から再生を開始します. 位置のテンポはスナップショットのテンポリストから求めます.
+	 * @param score
+	 * @param startTick
+	 */
+	public void start(MMLScoreSnapshot score, long startTick) {
+		long request = System.nanoTime();
+		int startGeneration;
+		synchronized (lock) {
+			startGeneration = generation.incrementAndGet();
+			startPending = true;
+			pendingTick = startTick;
+		}
+		executor.execute(() -> {
+			try {
+				if (generation.get() != startGeneration) {
+					return;
+				}
+				// 再生を始める前なので, 上限を超えた楽器を外してよい.
+				prepareScore(score, true);
+				synchronized (lock) {
+					// 準備の間に停止, または次の再生開始が要求された.
+					if (generation.get() != startGeneration) {
+						return;
+					}
+					startPending = false;
+					startEngine(pendingTick, request);
+				}
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+			} finally {
+				synchronized (lock) {
+					if (generation.get() == startGeneration) {
+						startPending = false;
+					}
+				}
+			}
+		});
+	}
+
+	private void startEngine(long startTick, long request) {
+		tempoMap = preparedTempoMap;
+		int tempo = tempoMap.searchOnTick(startTick);
+		timeToFirstNote = -1;
+		requestTime = request;
+		if (player != null) {
+			player.start(preparedSchedule, startTick);
+		} else {
+			try {
+				if (sequencer.getSequence() != preparedSequence) {
+					sequencer.setSequence(preparedSequence);
+				}
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+				return;
+			}
+
+			// 再生開始が先頭でない場合、そこのテンポに設定する必要がある。
+			sequencer.setTickPosition(startTick);
+			sequencer.setTempoInBPM(tempo);
+			sequencer.start();
+		}
+		startLatency = System.nanoTime() - request;
+		System.out.printf("Sequence start: tick(%d), tempo(%d), latency(%.1fms)\n", startTick, tempo, getStartLatency());
+	}
+
+	/**
+	 * 再生中の位置を移動し, 移動先のテンポに設定します. 再生中のシーケンスのテンポを使用します.
+	 * @param tick
+	 */
+	public void seek(long tick) {
+		synchronized (lock) {
+			if (startPending) {
+				// 開始を待っている場合は, 開始位置を変える.
+				pendingTick = tick;
+				return;
+			}
+			int tempo = tempoMap.searchOnTick(tick);
+			if (player != null) {
+				player.setTickPosition(tick);
+			} else {
+				sequencer.setTickPosition(tick);
+				sequencer.setTempoInBPM(tempo);
+			}
+			System.out.printf("Sequence update: tick(%d), tempo(%d)\n", tick, tempo);
+		}
+	}
+
+	/**
+	 * 再生を停止します. 開始を待っている再生は取り消します.
+	 */
+	public void stop() {
+		synchronized (lock) {
+			generation.incrementAndGet();
+			startPending = false;
+			requestTime = 0;
+			if (player != null) {
+				boolean running = player.isRunning();
+				player.stop();
+				if (running) {
+					System.out.printf("Sequence stop: lateness avg(%.3fms) max(%.3fms), late events(%d)\n",
+							player.getAverageLateness(), player.getMaxLateness(), player.getLateEventCount());
+				}
+			} else {
+				sequencer.stop();
+			}
+		}
+	}
+
+	/**
+	 * @return 再生中, または再生の開始を待っている場合は true
+	 */
+	public boolean isRunning() {
+		if (startPending) {
+			return true;
+		}
+		return isEngineRunning();
+	}
+
+	private boolean isEngineRunning() {
+		if (player != null) {
+			return player.isRunning();
+		}
+		return sequencer.isRunning();
+	}
+
+	/**
+	 * @return 再生位置. 開始を待っている場合は開始位置.
+	 */
+	public long getTickPosition() {
+		if (startPending) {
+			return pendingTick;
+		}
+		if (player != null) {
+			return player.getTickPosition();
+		}
+		return sequencer.getTickPosition();
+	}
+
+	/**
+	 * @return 最後の再生要求から, 再生開始までの時間 (ms). 計測していない場合は負数.
+	 */
+	public double getStartLatency() {
+		return toMillis(startLatency);
+	}
+
+	/**
+	 * @return 最後の再生要求から, 最初のノートが発音されるまでの時間 (ms). 開始位置の休符も含みます. 計測していない場合は負数.
+	 */
+	public double getTimeToFirstNote() {
+		return toMillis(timeToFirstNote);
+	}
+
+	/**
+	 * @return MMLPlayer で再生している場合はそのエンジン. シーケンサを使う場合は null.
+	 */
+	public MMLPlayer getPlayer() {
+		return player;
+	}
+
+	private static double toMillis(long nanoTime) {
+		return (nanoTime < 0) ? -1.0 : (nanoTime / 1000000.0);
+	}
+
+	/**
+	 * 前回作成した再生データと同じ内容であればそれを使い, 異なる場合は楽器を読み込んで作り直します.
+	 * @param evict 楽器のキャッシュが上限を超えた場合に, 使っていない楽器を外す場合は true
+	 */
+	private void prepareScore(MMLScoreSnapshot score, boolean evict) throws InvalidMidiDataException {
+		InstRegistry registry = dls.getInstRegistry();
+		if ( (preparedScore == null) || (preparedRegistry != registry) || !equalsSequenceSource(preparedScore, score) ) {
+			dls.loadRequiredInstruments(score, evict);
+			preparedTempoMap = TempoMap.of(preparedTempoMap, score.getTempoEventList());
+			if (player != null) {
+				preparedSchedule = new MMLPlayer.Schedule(dls.createTrackEvents(score), preparedTempoMap);
+			} else {
+				preparedSequence = dls.createSequence(score);
+			}
+			preparedRegistry = registry;
+		}
+		preparedScore = score;
+	}
+
+	/**
+	 * 再生データの作成に使うトラックとテンポが同じかどうかを判定します.
+	 */
+	private static boolean equalsSequenceSource(MMLScoreSnapshot score1, MMLScoreSnapshot score2) {
+		if (score1 == score2) {
+			return true;
+		}
+
+		List<TrackSnapshot> trackList1 = score1.getTrackList();
+		List<TrackSnapshot> trackList2 = score2.getTrackList();
+		if (trackList1.size() != trackList2.size()) {
+			return false;
+		}
+		for (int i = 0; i < trackList1.size(); i++) {
+			if (trackList1.get(i) != trackList2.get(i)) {
+				return false;
+			}
+		}
+		return score1.getTempoEventList().equals(score2.getTempoEventList());
+	}
+
+	/**
+	 * 再生要求後の最初の NOTE_ON が発音される時刻を記録し, 送信先へ転送します.
+	 */
+	private final class FirstNoteReceiver implements Receiver {
+		private final Receiver receiver;
+
+		private FirstNoteReceiver(Receiver receiver) {
+			this.receiver = receiver;
+		}
+
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			if (receiver != null) {
+				receiver.send(message, timeStamp);
+			}
+
+			long request = requestTime;
+			if ( (request != 0) && (message instanceof ShortMessage) ) {
+				ShortMessage shortMessage = (ShortMessage) message;
+				if ( (shortMessage.getCommand() == ShortMessage.NOTE_ON) && (shortMessage.getData2() > 0) ) {
+					long now = System.nanoTime();
+					if (timeStamp >= 0) {
+						// タイムスタンプ付きの場合は, 発音時刻までの時間を加える.
+						now += Math.max(0, timeStamp - device.getMicrosecondPosition()) * 1000;
+					}
+					requestTime = 0;
+					timeToFirstNote = now - request;
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			if (receiver != null) {
+				receiver.close();
+			}
+		}
+	}
+}
@@ -15,13 +15,13 @@ import java.awt.event.MouseMotionListener;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.sound.midi.Sequencer;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.SwingUtilities;
 
 import fourthline.mabiicco.MabiIccoProperties;
 import fourthline.mabiicco.midi.MabiDLS;
+import fourthline.mabiicco.midi.PlaybackSession;
 import fourthline.mabiicco.ui.editor.IEditAlign;
 import fourthline.mabiicco.ui.editor.IMarkerEditor;
 import fourthline.mabiicco.ui.editor.MarkerEditor;
@@ -149,8 +149,8 @@ public final class ColumnPanel extends JPanel implements MouseListener, MouseMot
 	}
 
 	private void setSequenceBar(int x) {
-		Sequencer sequencer = MabiDLS.getInstance().getSequencer();
-		if (!sequencer.isRunning()) {
+		PlaybackSession session = MabiDLS.getInstance().getPlaybackSession();
+		if (!session.isRunning()) {
 			long tick = pianoRollView.convertXtoTick(x);
 			tick -= tick % editAlign.getEditAlign();
 			pianoRollView.setSequenceTick(tick);
@@ -159,19 +159,16 @@ public final class ColumnPanel extends JPanel implements MouseListener, MouseMot
 		} else {
 			long tick = pianoRollView.convertXtoTick(x);
 			// 移動先のテンポに設定する.
-			int tempo = mmlManager.getMMLScore().getTempoOnTick(tick);
-			sequencer.setTickPosition(tick);
-			sequencer.setTempoInBPM(tempo);
-			System.out.printf("Sequence update: tick(%d), tempo(%d)\n", tick, tempo);
+			session.seek(tick);
 		}
 	}
 
 	private void playAllNoteOnTick(int x) {
-		Sequencer sequencer = MabiDLS.getInstance().getSequencer();
+		PlaybackSession session = MabiDLS.getInstance().getPlaybackSession();
 		if (!MabiIccoProperties.getInstance().getEnableClickPlay()) {
 			return;
 		}
-		if (!sequencer.isRunning()) {
+		if (!session.isRunning()) {
 			MMLScore score = mmlManager.getMMLScore();
 			long tick = pianoRollView.convertXtoTick(x);
 			int trackIndex = 0;
@@ -4,8 +4,6 @@
 
 package fourthline.mabiicco.ui;
 
-import javax.sound.midi.Sequence;
-import javax.sound.midi.Sequencer;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -19,14 +17,15 @@ import fourthline.mabiicco.IEditState;
 import fourthline.mabiicco.IFileState;
 import fourthline.mabiicco.midi.InstClass;
 import fourthline.mabiicco.midi.MabiDLS;
+import fourthline.mabiicco.midi.PlaybackSession;
 import fourthline.mabiicco.ui.PianoRollView.PaintMode;
 import fourthline.mabiicco.ui.editor.MMLEditor;
 import fourthline.mabiicco.ui.editor.MMLScoreUndoEdit;
 import fourthline.mmlTools.MMLEventList;
 import fourthline.mmlTools.MMLNoteEvent;
 import fourthline.mmlTools.MMLScore;
-import fourthline.mmlTools.MMLTempoEvent;
 import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.TempoMap;
 import fourthline.mmlTools.UndefinedTickException;
 import fourthline.mmlTools.core.MMLTicks;
 
@@ -37,7 +36,6 @@ import java.awt.Frame;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.List;
 
 public final class MMLSeqView implements IMMLManager, ChangeListener, ActionListener {
 	private static final int INITIAL_TRACK_COUNT = 1;
@@ -198,35 +196,13 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 		}
 	}
 
-	/**
-	 * 全トラックにおける、指定Tick位置のテンポを取得する。
-	 */
-	private int getTempoInSequenceAtTick(long tick) {
-		return mmlScore.getTempoOnTick(tick);
-	}
-
 	/**
 	 * 再生スタート（現在のシーケンス位置を使用）
 	 */
 	public void startSequence() {
-		new Thread(() -> {
-			try {
-				MabiDLS.getInstance().loadRequiredInstruments(mmlScore);
-				Sequencer sequencer = MabiDLS.getInstance().getSequencer();
-				Sequence sequence = MabiDLS.getInstance().createSequence(mmlScore);
-
-				// 再生開始が先頭でない場合、そこのテンポに設定する必要がある。
-				long startTick = pianoRollView.getSequencePosition();
-				int tempo = getTempoInSequenceAtTick(startTick);
-				System.out.printf("Sequence start: tick(%d), tempo(%d)\n", startTick, tempo);
-				sequencer.setSequence(sequence);
-				sequencer.setTickPosition(startTick);
-				sequencer.setTempoInBPM(tempo);
-				sequencer.start();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}).start();
+		// 再生スレッドは編集中のスコアではなく, スナップショットを使用する.
+		long startTick = pianoRollView.getSequencePosition();
+		MabiDLS.getInstance().getPlaybackSession().start(mmlScore.snapshot(), startTick);
 	}
 
 	/**
@@ -337,14 +313,13 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 	 * シーケンスの現在位置を先頭に戻す
 	 */
 	public void setStartPosition() {
-		Sequencer sequencer = MabiDLS.getInstance().getSequencer();
-		if (!sequencer.isRunning()) {
+		PlaybackSession session = MabiDLS.getInstance().getPlaybackSession();
+		if (!session.isRunning()) {
 			setViewPosition(0);
 			pianoRollView.setSequenceTick(0);
 			panel.repaint();
 		} else {
-			sequencer.setTempoInBPM(120);
-			sequencer.setTickPosition(0);
+			session.seek(0);
 		}
 	}
 
@@ -352,8 +327,7 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 	 * 現在のTickにシーケンスを設定する。（一時停止用）
 	 */
 	public void pauseTickPosition() {
-		Sequencer sequencer = MabiDLS.getInstance().getSequencer();
-		long tick = sequencer.getTickPosition();
+		long tick = MabiDLS.getInstance().getPlaybackSession().getTickPosition();
 		tick -= tick % MMLTicks.minimumTick();
 		pianoRollView.setSequenceTick(tick);
 	}
@@ -481,7 +455,7 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 		try {
 			int step = MMLTicks.getTick(mmlScore.getBaseOnly());
 			int deltaTick = mmlScore.getTimeCountOnly() * step;
-			Sequencer sequencer = MabiDLS.getInstance().getSequencer();
+			PlaybackSession session = MabiDLS.getInstance().getPlaybackSession();
 			long tick = pianoRollView.getSequencePlayPosition();
 			if (next) {
 				tick += deltaTick;
@@ -489,14 +463,12 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 				tick -= step;
 			}
 			tick -= tick % deltaTick;
-			if (!sequencer.isRunning()) {
+			if (!session.isRunning()) {
 				pianoRollView.setSequenceTick(tick);
 				panel.repaint();
 			} else {
 				// 移動先のテンポに設定する.
-				int tempo = mmlScore.getTempoOnTick(tick);
-				sequencer.setTickPosition(tick);
-				sequencer.setTempoInBPM(tempo);
+				session.seek(tick);
 			}
 
 			updatePianoRollView();
@@ -634,11 +606,11 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 
 	private void updateTimeView() {
 		long position = pianoRollView.getSequencePlayPosition();
-		List<MMLTempoEvent> tempoList = mmlScore.getTempoEventList();
-		long time = MMLTempoEvent.getTimeOnTickOffset(tempoList, (int)position);
+		TempoMap tempoMap = mmlScore.getTempoMap();
+		long time = tempoMap.getTimeOnTickOffset(position);
 		int totalTick = mmlScore.getTotalTickLength();
-		long totalTime = MMLTempoEvent.getTimeOnTickOffset(tempoList, totalTick);
-		int tempo = MMLTempoEvent.searchOnTick(tempoList, (int)position);
+		long totalTime = tempoMap.getTimeOnTickOffset(totalTick);
+		int tempo = tempoMap.searchOnTick(position);
 
 		String str = String.format("time %d:%02d.%d/%d:%02d.%d (t%d)", 
 				(time/60/1000), (time/1000%60), (time/100%10),
@@ -662,7 +634,7 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 				} catch (InterruptedException e) {
 					e.printStackTrace();
 				}
-				if (MabiDLS.getInstance().getSequencer().isRunning()) {
+				if (MabiDLS.getInstance().getPlaybackSession().isRunning()) {
 					EventQueue.invokeLater(() -> {
 						updatePianoRollView();
 					});
@@ -712,8 +684,7 @@ public final class MMLSeqView implements IMMLManager, ChangeListener, ActionList
 	}
 
 	private void updateProgramSelect() {
-		new Thread(() -> {
-			MabiDLS.getInstance().loadRequiredInstruments(mmlScore);
-		}).start();
+		// 楽器の読み込みとシーケンスの作成を先に行っておく.
+		MabiDLS.getInstance().getPlaybackSession().prepare(mmlScore.snapshot());
 	}
 }
@@ -25,6 +25,7 @@ import fourthline.mabiicco.midi.MabiDLS;
 import fourthline.mabiicco.ui.PianoRollView.PaintMode;
 import fourthline.mabiicco.ui.editor.MMLEditor;
 import fourthline.mabiicco.ui.editor.NoteAlign;
+import fourthline.mmlTools.MMLScore;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
@@ -327,6 +328,11 @@ public final class MainFrame extends JFrame implements ComponentListener, INotif
 		createNoteHeightMenu(settingMenu);
 		createCheckMenu(settingMenu, "clickPlayMenu", properties::getEnableClickPlay, properties::setEnableClickPlay);
 		createCheckMenu(settingMenu, "view.marker", properties::getEnableViewMarker, properties::setEnableViewMarker);
+		MMLScore.setParallelGenerate(properties.getEnableParallelGenerate());
+		createCheckMenu(settingMenu, "menu.parallel_generate", properties::getEnableParallelGenerate, (b) -> {
+			properties.setEnableParallelGenerate(b);
+			MMLScore.setParallelGenerate(b);
+		});
 
 		JMenuItem clearDLSMenu = createMenuItem(appText("menu.clear_dls"), ActionDispatcher.CLEAR_DLS);
 		settingMenu.add(clearDLSMenu);
@@ -291,12 +291,12 @@ public final class PianoRollView extends JPanel {
 	}
 
 	public void updateRunningSequencePosition() {
-		runningSequencePosition = MabiDLS.getInstance().getSequencer().getTickPosition();
+		runningSequencePosition = MabiDLS.getInstance().getPlaybackSession().getTickPosition();
 	}
 
 	public long getSequencePlayPosition() {
 		long position = sequencePosition;
-		if (MabiDLS.getInstance().getSequencer().isRunning()) {
+		if (MabiDLS.getInstance().getPlaybackSession().isRunning()) {
 			return runningSequencePosition;
 		}
 
@@ -304,7 +304,7 @@ public final class PianoRollView extends JPanel {
 	}
 
 	public void setSequenceTick(long tick) {
-		if (!MabiDLS.getInstance().getSequencer().isRunning()) {
+		if (!MabiDLS.getInstance().getPlaybackSession().isRunning()) {
 			sequencePosition = tick;
 		}
 	}
@@ -495,6 +495,25 @@ public final class PianoRollView extends JPanel {
 		}
 	}
 
+	/**
+	 * MMLEventリストのロールを表示します。
+	 * View範囲にあるノートのみを二分探索で取り出して描画します.
+	 * @param g
+	 * @param eventList
+	 */
+	private void paintMMLPart(Graphics2D g, MMLEventList eventList, Color rectColor, Color fillColor, boolean drawOption) {
+		List<MMLNoteEvent> noteList = eventList.getNoteListInRange(startViewTick - DRAW_START_MARGIN, endViewTick + 1);
+		if (noteList.isEmpty()) {
+			return;
+		}
+
+		MMLNoteEvent prevNote = eventList.searchPrevNoteOnTickOffset(noteList.get(0).getTickOffset());
+		for (MMLNoteEvent noteEvent : noteList) {
+			drawNote(g, noteEvent, rectColor, fillColor, drawOption, prevNote);
+			prevNote = noteEvent;
+		}
+	}
+
 	/**
 	 * MMLEventリストのロールを表示します。
 	 * @param g
@@ -539,7 +558,7 @@ public final class PianoRollView extends JPanel {
 			}
 			Color rectColor = partColor.getRectColor(index);
 			Color fillColor = partColor.getFillColor(index);
-			paintMMLPart(g, track.getMMLEventList().get(i).getMMLNoteEventList(), rectColor, fillColor, false);
+			paintMMLPart(g, targetPart, rectColor, fillColor, false);
 		}
 	}
 
@@ -552,7 +571,7 @@ public final class PianoRollView extends JPanel {
 
 		Color rectColor = ColorPalette.ACTIVE.getRectColor(trackIndex);
 		Color fillColor = ColorPalette.ACTIVE.getFillColor(trackIndex);
-		paintMMLPart(g, activePart.getMMLNoteEventList(), rectColor, fillColor, true);
+		paintMMLPart(g, activePart, rectColor, fillColor, true);
 	}
 
 	private void paintOtherTrack(Graphics2D g) {
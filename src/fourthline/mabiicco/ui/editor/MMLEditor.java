@@ -12,6 +12,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
@@ -157,10 +158,8 @@ public final class MMLEditor implements MouseInputListener, IEditState, IEditCon
 
 		selectedNote.clear();
 		MMLEventList editEventList = mmlManager.getActiveMMLPart();
-		for (MMLNoteEvent noteEvent : editEventList.getMMLNoteEventList()) {
-			if ( (noteEvent.getNote() >= note[0]) && (noteEvent.getNote() <= note[1]) 
-					&& (noteEvent.getEndTick() > tickOffset[0])
-					&& (noteEvent.getTickOffset() <= tickOffset[1]) ) {
+		for (MMLNoteEvent noteEvent : editEventList.getNoteListInRange(tickOffset[0], tickOffset[1]+1)) {
+			if ( (noteEvent.getNote() >= note[0]) && (noteEvent.getNote() <= note[1]) ) {
 				selectedNote.add(noteEvent);
 			}
 		}
@@ -274,11 +273,13 @@ public final class MMLEditor implements MouseInputListener, IEditState, IEditCon
 	 */
 	@Override
 	public void applyEditNote(boolean select) {
-		for (MMLNoteEvent noteEvent : selectedNote) {
-			MMLEventList editEventList = mmlManager.getActiveMMLPart();
+		MMLEventList editEventList = mmlManager.getActiveMMLPart();
+		List<MMLNoteEvent> addNoteList = new ArrayList<>(selectedNote);
+		for (MMLNoteEvent noteEvent : addNoteList) {
 			editEventList.deleteMMLEvent(noteEvent);
-			editEventList.addMMLNoteEvent(noteEvent);
 		}
+		addNoteList.sort((note1, note2) -> (note1.getTickOffset() - note2.getTickOffset()));
+		editEventList.addMMLNoteEventList(addNoteList);
 		if (!select) {
 			selectNote(null);
 		}
@@ -454,12 +455,15 @@ public final class MMLEditor implements MouseInputListener, IEditState, IEditCon
 
 		selectNote(null);
 		long offset = clipEventList.getMMLNoteEventList().get(0).getTickOffset();
+		List<MMLNoteEvent> addNoteList = new ArrayList<>();
 		for (MMLNoteEvent noteEvent : clipEventList.getMMLNoteEventList()) {
 			long tickOffset = noteEvent.getTickOffset() - offset + startTick;
 			MMLNoteEvent addNote = new MMLNoteEvent(noteEvent.getNote(), noteEvent.getTick(), (int)tickOffset, 0);
 			addNote.setVelocity(noteEvent.getVelocity());
-			MMLEventList editEventList = mmlManager.getActiveMMLPart();
-			editEventList.addMMLNoteEvent(addNote);
+			addNoteList.add(addNote);
+		}
+		mmlManager.getActiveMMLPart().addMMLNoteEventList(addNoteList);
+		for (MMLNoteEvent addNote : addNoteList) {
 			selectNote(addNote, true);
 		}
 
@@ -4,7 +4,6 @@
 
 package fourthline.mabiicco.ui.editor;
 
-import java.util.Arrays;
 import java.util.Stack;
 
 import javax.swing.undo.AbstractUndoableEdit;
@@ -15,18 +14,26 @@ import fourthline.mabiicco.IFileState;
 import fourthline.mabiicco.IFileStateObserver;
 import fourthline.mabiicco.ui.IMMLManager;
 import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLScoreDelta;
+import fourthline.mmlTools.MMLScoreSnapshot;
+import fourthline.mmlTools.UndefinedTickException;
 
 public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFileState {
 	private static final long serialVersionUID = 4093930608712571204L;
 
 	private IFileStateObserver fileStateObserver = null;
 
-	private static final int MAX_UNDO = 20;
-	private final Stack<byte[]> undoState = new Stack<>();
-	private final Stack<byte[]> redoState = new Stack<>();
+	/** Undo履歴に使用するメモリの上限 (byte). 超えた場合は古い履歴から破棄する. */
+	private static final long MAX_UNDO_MEMORY = 32L * 1024 * 1024;
+	private final Stack<MMLScoreDelta> undoState = new Stack<>();
+	private final Stack<MMLScoreDelta> redoState = new Stack<>();
+	private long undoMemory = 0;
+
+	/** 最後に保存した状態. 差分はこの状態との比較で作成する. */
+	private MMLScoreSnapshot currentState = null;
 
 	private final IMMLManager mmlManager;
-	private int originalIndex = 0; /** オリジナル位置. undo/redo範囲外になった場合は 負値. 0~size-1 */
+	private int originalIndex = 0; /** オリジナル位置. undo/redo範囲外になった場合は 負値. 0~size */
 
 	public MMLScoreUndoEdit(IMMLManager mmlManager) {
 		this.mmlManager = mmlManager;
@@ -35,6 +42,8 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 	public void initState() {
 		undoState.clear();
 		redoState.clear();
+		undoMemory = 0;
+		currentState = null;
 		originalIndex = 0;
 
 		saveState();
@@ -43,29 +52,48 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 	@Override
 	public void saveState() {
 		MMLScore score = mmlManager.getMMLScore();
-		byte state[] = score.getObjectState();
-		if ( !undoState.empty() && Arrays.equals(state, undoState.lastElement()) ) {
-			return;
-		}
-
-		undoState.push(state);
-		redoState.clear();
-
-		if (undoState.size() > MAX_UNDO) {
-			undoState.remove(0);
-			originalIndex = -1;
+		MMLScoreSnapshot state = score.snapshot();
+		if (currentState != null) {
+			MMLScoreDelta delta = MMLScoreDelta.diff(currentState, state);
+			if (delta == null) {
+				return;
+			}
+
+			undoState.push(delta);
+			undoMemory += delta.estimateSize();
+			redoState.clear();
+
+			while ( (undoState.size() > 1) && (undoMemory > MAX_UNDO_MEMORY) ) {
+				undoMemory -= undoState.remove(0).estimateSize();
+				if (originalIndex >= 0) {
+					originalIndex--;
+				}
+			}
 		}
+		currentState = state;
 
 		if (fileStateObserver != null)
 			fileStateObserver.notifyUpdateFileState();
 
-		System.out.println("saveState() "+undoState.size());
+		System.out.println("saveState() "+undoState.size()+" ("+undoMemory+" bytes)");
 	}
 
 	@Override
 	public void revertState() {
 		MMLScore score = mmlManager.getMMLScore();
-		score.putObjectState(undoState.lastElement());
+		restoreState(score);
+	}
+
+	/**
+	 * 現在の状態をスコアに反映し, 変更のあったトラックのみ再生成する.
+	 */
+	private void restoreState(MMLScore score) {
+		currentState.restore(score);
+		try {
+			score.generateAll();
+		} catch (UndefinedTickException e) {
+			e.printStackTrace();
+		}
 	}
 
 	@Override
@@ -74,9 +102,11 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 
 		MMLScore score = mmlManager.getMMLScore();
 		if (canUndo()) {
-			byte nextState[] = undoState.pop();
-			score.putObjectState(undoState.lastElement());
-			redoState.push(nextState);
+			MMLScoreDelta delta = undoState.pop();
+			undoMemory -= delta.estimateSize();
+			currentState = delta.apply(currentState, true);
+			restoreState(score);
+			redoState.push(delta);
 			if (fileStateObserver != null)
 				fileStateObserver.notifyUpdateFileState();
 		}
@@ -88,9 +118,11 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 
 		MMLScore score = mmlManager.getMMLScore();
 		if (canRedo()) {
-			byte state[] = redoState.pop();
-			score.putObjectState(state);
-			undoState.push(state);
+			MMLScoreDelta delta = redoState.pop();
+			currentState = delta.apply(currentState, false);
+			restoreState(score);
+			undoState.push(delta);
+			undoMemory += delta.estimateSize();
 			if (fileStateObserver != null)
 				fileStateObserver.notifyUpdateFileState();
 		}
@@ -98,7 +130,7 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 
 	@Override
 	public boolean canUndo() {
-		if (undoState.size() > 1) {
+		if (!undoState.empty()) {
 			return true;
 		}
 
@@ -112,7 +144,7 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 
 	@Override
 	public boolean isModified() {
-		if ( originalIndex == (undoState.size()-1) ) {
+		if ( originalIndex == undoState.size() ) {
 			return false;
 		}
 
@@ -121,7 +153,7 @@ public final class MMLScoreUndoEdit extends AbstractUndoableEdit implements IFil
 
 	@Override
 	public void setOriginalBase() {
-		originalIndex = undoState.size() - 1;
+		originalIndex = undoState.size();
 	}
 
 	@Override
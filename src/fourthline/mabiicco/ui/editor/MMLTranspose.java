@@ -34,7 +34,7 @@ public final class MMLTranspose {
 		MabiDLS dls = MabiDLS.getInstance();
 		for (MMLTrack track : mmlManager.getMMLScore().getTrackList()) {
 			// ドラムパートは移調対象外
-			if (dls.getInstByProgram(track.getProgram()).getType().equals(InstType.DRUMS)) {
+			if (dls.getInstType(track.getProgram()).equals(InstType.DRUMS)) {
 				continue;
 			}
 			for (MMLEventList eventList : track.getMMLEventList()) {
@@ -163,19 +163,17 @@ public class DrumTools extends MMLTools {
 	 */
 	public String disDrumVolumn() throws UndefinedTickException {
 		MMLTokenizer mt = new MMLTokenizer(mml_melody);
-		StringBuffer sb = new StringBuffer(mml_melody.length());
+		StringBuilder sb = new StringBuilder(mml_melody.length());
 
-		while (mt.hasNext()) {
-			String item = mt.next();
-			if (item.startsWith("v") || item.startsWith("V")) {
-				String vol = item.substring(1);
-				int volInt = Integer.parseInt(vol);
+		while (mt.nextToken()) {
+			if (mt.getTokenKind() == 'v') {
+				int volInt = mt.isNumberOnly() ? mt.getNumber() : Integer.parseInt(mt.getArgument());
 				volInt = convDrumVol(volInt);
 
-				sb.append(item.charAt(0));
+				sb.append(mt.getTokenChar());
 				sb.append(volInt);
 			} else {
-				sb.append(item);
+				mt.appendToken(sb);
 			}
 		}
 
@@ -80,19 +80,57 @@ public final class MMLEventList implements Serializable, Cloneable {
 		return noteList;
 	}
 
+	/**
+	 * tickOffsetが指定値以上となる最初のノートのindexを二分探索します.
+	 * noteListはtickOffset順に並んでいることが前提です.
+	 * @param tickOffset
+	 * @return 該当するノートがない場合は, noteListのサイズ
+	 */
+	private int indexOfFirstOffset(long tickOffset) {
+		int low = 0;
+		int high = noteList.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (noteList.get(mid).getTickOffset() < tickOffset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * endTickが指定値より大きくなる最初のノートのindexを二分探索します.
+	 * noteList内のノートは重ならないため, endTickもtickOffset順に並んでいます.
+	 * @param tick
+	 * @return 該当するノートがない場合は, noteListのサイズ
+	 */
+	private int indexOfFirstEnd(long tick) {
+		int low = 0;
+		int high = noteList.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (noteList.get(mid).getEndTick() <= tick) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
 	/**
 	 * 指定したtickOffset位置にあるNoteEventを検索します.
 	 * @param tickOffset
 	 * @return 見つからなかった場合は、nullを返します.
 	 */
 	public MMLNoteEvent searchOnTickOffset(long tickOffset) {
-		for (MMLNoteEvent noteEvent : noteList) {
+		int index = indexOfFirstEnd(tickOffset);
+		if (index < noteList.size()) {
+			MMLNoteEvent noteEvent = noteList.get(index);
 			if (noteEvent.getTickOffset() <= tickOffset) {
-				if (tickOffset < noteEvent.getEndTick()) {
-					return noteEvent;
-				}
-			} else {
-				break;
+				return noteEvent;
 			}
 		}
 
@@ -105,14 +143,40 @@ public final class MMLEventList implements Serializable, Cloneable {
 	 * @return
 	 */
 	public MMLNoteEvent searchPrevNoteOnTickOffset(long tickOffset) {
-		MMLNoteEvent prevNote = new MMLNoteEvent(-1, 0, 0);
-		for (MMLNoteEvent noteEvent : noteList) {
-			if (noteEvent.getTickOffset() >= tickOffset) {
-				break;
-			}
-			prevNote = noteEvent;
+		int index = indexOfFirstOffset(tickOffset);
+		if (index > 0) {
+			return noteList.get(index-1);
+		}
+		return new MMLNoteEvent(-1, 0, 0);
+	}
+
+	/**
+	 * [startTick, endTick) の範囲に重なる最初のノートのindexを検索します.
+	 * @param startTick
+	 * @param endTick
+	 * @return 見つからなかった場合は, -1を返します.
+	 */
+	public int searchFirstIndexInRange(long startTick, long endTick) {
+		int index = indexOfFirstEnd(startTick);
+		if ( (index < noteList.size()) && (noteList.get(index).getTickOffset() < endTick) ) {
+			return index;
 		}
-		return prevNote;
+		return -1;
+	}
+
+	/**
+	 * [startTick, endTick) の範囲に重なるノートのリストを取得します.
+	 * @param startTick
+	 * @param endTick
+	 * @return noteListの部分ビュー
+	 */
+	public List<MMLNoteEvent> getNoteListInRange(long startTick, long endTick) {
+		int fromIndex = indexOfFirstEnd(startTick);
+		int toIndex = indexOfFirstOffset(endTick);
+		if (toIndex < fromIndex) {
+			toIndex = fromIndex;
+		}
+		return noteList.subList(fromIndex, toIndex);
 	}
 
 	/**
@@ -121,17 +185,14 @@ public final class MMLEventList implements Serializable, Cloneable {
 	 * @return
 	 */
 	public int[] indexOfMMLString(long tickOffset) {
-		int start = 0;
-		for (MMLNoteEvent noteEvent : noteList) {
-			int index[] = noteEvent.getIndexOfMMLString();
+		int index = indexOfFirstEnd(tickOffset);
+		int start = (index > 0) ? noteList.get(index-1).getIndexOfMMLString()[1] : 0;
+		if (index < noteList.size()) {
+			MMLNoteEvent noteEvent = noteList.get(index);
 			if (noteEvent.getTickOffset() <= tickOffset) {
-				if (tickOffset < noteEvent.getEndTick()) {
-					return index;
-				}
-			} else {
-				return new int[] { start, index[0] };
+				return noteEvent.getIndexOfMMLString();
 			}
-			start = index[1];
+			return new int[] { start, noteEvent.getIndexOfMMLString()[0] };
 		}
 		return new int[] { start, start };
 	}
@@ -142,51 +203,98 @@ public final class MMLEventList implements Serializable, Cloneable {
 	 * @param addNoteEvent
 	 */
 	public void addMMLNoteEvent(MMLNoteEvent addNoteEvent) {
-		int i;
-		if ((addNoteEvent.getNote() < 0) || (addNoteEvent.getTick() <= 0) || (addNoteEvent.getEndTick() <= 0)) {
+		if (!prepareAddNote(addNoteEvent)) {
 			return;
 		}
-		int offset = addNoteEvent.getTickOffset();
-		if (offset < 0) {
-			addNoteEvent.setTick( (addNoteEvent.getTick() + offset) );
-			addNoteEvent.setTickOffset(0);
-		}
 
 		// 追加したノートイベントに重なる前のノートを調節します.
-		for (i = 0; i < noteList.size(); i++) {
-			MMLNoteEvent noteEvent = noteList.get(i);
-			int tickOverlap = noteEvent.getEndTick() - addNoteEvent.getTickOffset();
-			if (addNoteEvent.getTickOffset() < noteEvent.getTickOffset()) {
-				break;
-			}
-			if (tickOverlap >= 0) {
-				// 追加するノートに音が重なっている.
-				int tick = noteEvent.getTick() - tickOverlap;
-				if (tick == 0) {
-					noteList.remove(i);
-					break;
-				} else {
-					noteEvent.setTick(tick);
-					i++;
-					break;
-				}
-			}
+		int i = indexOfFirstOffset(addNoteEvent.getTickOffset() + 1);
+		if ( (i > 0) && trimPrevNote(noteList.get(i-1), addNoteEvent) ) {
+			noteList.remove(--i);
 		}
 
 		// ノートイベントを追加します.
-		noteList.add(i++, addNoteEvent);
+		noteList.add(i, addNoteEvent);
 
 		// 追加したノートイベントに重なっている後続のノートを削除します.
-		for ( ; i < noteList.size(); ) {
-			MMLNoteEvent noteEvent = noteList.get(i);
-			int tickOverlap = addNoteEvent.getEndTick() - noteEvent.getTickOffset();
+		int endIndex = indexOfFirstOffset(addNoteEvent.getEndTick());
+		if (endIndex > i+1) {
+			noteList.subList(i+1, endIndex).clear();
+		}
+	}
 
-			if (tickOverlap > 0) {
-				noteList.remove(i);
-			} else {
-				break;
+	/**
+	 * tickOffset順に並んだノートイベントをまとめて追加します.
+	 * 1つずつ addMMLNoteEvent した場合と同じ結果を, 1回のマージで得ます.
+	 * @param addNoteList tickOffset順のノートリスト (このイベントリスト自身のリストは不可)
+	 */
+	public void addMMLNoteEventList(List<MMLNoteEvent> addNoteList) {
+		if (addNoteList.isEmpty()) {
+			return;
+		}
+
+		// 最初の追加位置以降の既存ノートを退避して, 追加ノートとマージします.
+		int startIndex = indexOfFirstOffset(Math.max(0, addNoteList.get(0).getTickOffset()));
+		List<MMLNoteEvent> tailList = noteList.subList(startIndex, noteList.size());
+		List<MMLNoteEvent> restList = new ArrayList<>(tailList);
+		tailList.clear();
+
+		int restIndex = 0;
+		for (MMLNoteEvent addNoteEvent : addNoteList) {
+			if (!prepareAddNote(addNoteEvent)) {
+				continue;
+			}
+			int tickOffset = addNoteEvent.getTickOffset();
+			while ( (restIndex < restList.size()) && (restList.get(restIndex).getTickOffset() < tickOffset) ) {
+				noteList.add(restList.get(restIndex++));
+			}
+
+			int last = noteList.size() - 1;
+			if ( (last >= 0) && trimPrevNote(noteList.get(last), addNoteEvent) ) {
+				noteList.remove(last);
+			}
+			noteList.add(addNoteEvent);
+
+			// 重なっている後続のノートは追加しない.
+			while ( (restIndex < restList.size()) && (restList.get(restIndex).getTickOffset() < addNoteEvent.getEndTick()) ) {
+				restIndex++;
 			}
 		}
+		noteList.addAll(restList.subList(restIndex, restList.size()));
+	}
+
+	/**
+	 * 追加するノートイベントを検査します. tickOffsetが負の場合は先頭を切り詰めます.
+	 * @param addNoteEvent
+	 * @return 追加できないノートの場合は false
+	 */
+	private boolean prepareAddNote(MMLNoteEvent addNoteEvent) {
+		if ((addNoteEvent.getNote() < 0) || (addNoteEvent.getTick() <= 0) || (addNoteEvent.getEndTick() <= 0)) {
+			return false;
+		}
+		int offset = addNoteEvent.getTickOffset();
+		if (offset < 0) {
+			addNoteEvent.setTick( (addNoteEvent.getTick() + offset) );
+			addNoteEvent.setTickOffset(0);
+		}
+		return true;
+	}
+
+	/**
+	 * 追加するノートイベントに重なる前のノートを調節します.
+	 * @param noteEvent 追加位置の手前のノート
+	 * @param addNoteEvent
+	 * @return 同じ位置から始まるため削除が必要な場合は true
+	 */
+	private boolean trimPrevNote(MMLNoteEvent noteEvent, MMLNoteEvent addNoteEvent) {
+		int tickOffset = addNoteEvent.getTickOffset();
+		if (noteEvent.getTickOffset() == tickOffset) {
+			return true;
+		}
+		if (noteEvent.getEndTick() > tickOffset) {
+			noteEvent.setTick(tickOffset - noteEvent.getTickOffset());
+		}
+		return false;
 	}
 
 	/**
@@ -247,16 +355,14 @@ public final class MMLEventList implements Serializable, Cloneable {
 			// FIXME: 最後の1つのrだけに細工すればよいね.
 			if (mabiTempo) {
 				// マビノギ補正（rrrT***N の処理
-				MMLTicks ticks = new MMLTicks("c", tickLength, false);
 				if (prevNoteEvent.getVelocity() != 0) {
 					sb.append("v0");
 				}
-				sb.append(ticks.toMMLText());
+				MMLTicks.appendMMLText(sb, "c", tickLength, false);
 				prevNoteEvent = new MMLNoteEvent(note, tickLength, tickOffset, 0);
 			} else {
-				MMLTicks ticks = new MMLTicks("r", tickLength, false);
 				prevNoteEvent = new MMLNoteEvent(prevNoteEvent.getNote(), tickLength, tickOffset, prevNoteEvent.getVelocity());
-				sb.append(ticks.toMMLText());
+				MMLTicks.appendMMLText(sb, "r", tickLength, false);
 			}
 		}
 		sb.append(tempoEvent.toMMLString());
@@ -276,7 +382,7 @@ public final class MMLEventList implements Serializable, Cloneable {
 			int tick = localTempoList.getFirst().getTickOffset() - divNoteEvent.getTickOffset();
 
 			MMLNoteEvent partNoteEvent = new MMLNoteEvent(divNoteEvent.getNote(), tick, divNoteEvent.getTickOffset(), divNoteEvent.getVelocity());
-			sb.append( partNoteEvent.toMMLString(prevNoteEvent) );
+			partNoteEvent.appendMMLString(sb, prevNoteEvent);
 
 			if (withTempo) {
 				sb.append( localTempoList.getFirst().toMMLString() );
@@ -292,7 +398,7 @@ public final class MMLEventList implements Serializable, Cloneable {
 		}
 
 		if (divNoteEvent.getTick() > 0){
-			sb.append( divNoteEvent.toMMLString(prevNoteEvent) );
+			divNoteEvent.appendMMLString(sb, prevNoteEvent);
 		}
 	}
 
@@ -378,51 +484,48 @@ public final class MMLEventList implements Serializable, Cloneable {
 		}
 	}
 
-	public void swap(MMLEventList list2, int startTick, int endTick) {
-		List<MMLNoteEvent> tmp1 = new ArrayList<>();
-		List<MMLNoteEvent> tmp2 = new ArrayList<>();
-		for (MMLNoteEvent noteEvent : noteList) {
-			if ( (noteEvent.getTickOffset() >= startTick) && (noteEvent.getEndTick() <= endTick) ) {
-				tmp1.add(noteEvent);
-			}
-		}
-		for (MMLNoteEvent noteEvent : tmp1) {
-			noteList.remove(noteEvent);
+	/**
+	 * [startTick, endTick] の範囲に収まるノートのindex範囲を取得します.
+	 * @return { fromIndex, toIndex }
+	 */
+	private int[] indexRangeWithin(int startTick, int endTick) {
+		int fromIndex = indexOfFirstOffset(startTick);
+		int toIndex = indexOfFirstEnd(endTick);
+		if (toIndex < fromIndex) {
+			toIndex = fromIndex;
 		}
+		return new int[] { fromIndex, toIndex };
+	}
 
-		for (MMLNoteEvent noteEvent : list2.getMMLNoteEventList()) {
-			if ( (noteEvent.getTickOffset() >= startTick) && (noteEvent.getEndTick() <= endTick) ) {
-				tmp2.add(noteEvent);
-			}
-		}
-		for (MMLNoteEvent noteEvent : tmp2) {
-			list2.getMMLNoteEventList().remove(noteEvent);
-			addMMLNoteEvent(noteEvent);
-		}
-		for (MMLNoteEvent noteEvent : tmp1) {
-			list2.addMMLNoteEvent(noteEvent);
-		}
+	/**
+	 * [startTick, endTick] の範囲に収まるノートを取り除いて返します.
+	 */
+	private List<MMLNoteEvent> removeNoteListWithin(int startTick, int endTick) {
+		int range[] = indexRangeWithin(startTick, endTick);
+		List<MMLNoteEvent> subList = noteList.subList(range[0], range[1]);
+		List<MMLNoteEvent> removeList = new ArrayList<>(subList);
+		subList.clear();
+		return removeList;
+	}
+
+	public void swap(MMLEventList list2, int startTick, int endTick) {
+		List<MMLNoteEvent> tmp1 = removeNoteListWithin(startTick, endTick);
+		List<MMLNoteEvent> tmp2 = list2.removeNoteListWithin(startTick, endTick);
+		addMMLNoteEventList(tmp2);
+		list2.addMMLNoteEventList(tmp1);
 	}
 
 	public void move(MMLEventList list2, int startTick, int endTick) {
-		List<MMLNoteEvent> tmp1 = new ArrayList<>();
-		for (MMLNoteEvent noteEvent : noteList) {
-			if ( (noteEvent.getTickOffset() >= startTick) && (noteEvent.getEndTick() <= endTick) ) {
-				tmp1.add(noteEvent);
-			}
-		}
-		for (MMLNoteEvent noteEvent : tmp1) {
-			deleteMMLEvent(noteEvent);
-			list2.addMMLNoteEvent(noteEvent);
-		}
+		list2.addMMLNoteEventList( removeNoteListWithin(startTick, endTick) );
 	}
 
 	public void copy(MMLEventList list2, int startTick, int endTick) {
-		for (MMLNoteEvent noteEvent : noteList) {
-			if ( (noteEvent.getTickOffset() >= startTick) && (noteEvent.getEndTick() <= endTick) ) {
-				list2.addMMLNoteEvent( noteEvent.clone() );
-			}
+		int range[] = indexRangeWithin(startTick, endTick);
+		List<MMLNoteEvent> tmp1 = new ArrayList<>(range[1] - range[0]);
+		for (MMLNoteEvent noteEvent : noteList.subList(range[0], range[1])) {
+			tmp1.add(noteEvent.clone());
 		}
+		list2.addMMLNoteEventList(tmp1);
 	}
 
 	@Override
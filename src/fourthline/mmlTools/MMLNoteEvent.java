@@ -104,47 +104,54 @@ public final class MMLNoteEvent extends MMLEvent implements Cloneable {
 
 	@Override
 	public String toMMLString() throws UndefinedTickException {
+		return appendMMLString(new StringBuilder()).toString();
+	}
+
+	private StringBuilder appendMMLString(StringBuilder sb) throws UndefinedTickException {
 		String noteName = getNoteName();
-		MMLTicks mmlTick = new MMLTicks(noteName, tick);
 		if (tuningBase != null) {
-			return mmlTick.toMMLTextByBase(tuningBase);
+			return sb.append( new MMLTicks(noteName, tick).toMMLTextByBase(tuningBase) );
 		} else {
-			return mmlTick.toMMLText();
+			return MMLTicks.appendMMLText(sb, noteName, tick, true);
 		}
 	}
 
 	public String toMMLString(MMLNoteEvent prevNoteEvent) throws UndefinedTickException {
-		StringBuilder sb = new StringBuilder();
+		return appendMMLString(new StringBuilder(), prevNoteEvent).toString();
+	}
 
+	/**
+	 * 前のノートからの差分（休符, オクターブ, 音量）を含めたMML文字列を追加します.
+	 * @param sb
+	 * @param prevNoteEvent
+	 * @return sb
+	 * @throws UndefinedTickException
+	 */
+	public StringBuilder appendMMLString(StringBuilder sb, MMLNoteEvent prevNoteEvent) throws UndefinedTickException {
 		// 前のノートとの差を見て、休符を挿入する.
-		sb.append( createMMLSpaceString(prevNoteEvent) );
+		appendMMLSpaceString(sb, prevNoteEvent);
 
 		// 前のノートとのオクターブ差分をみて、オクターブ変化を挿入する.
 		sb.append( changeOctaveinMMLString(prevNoteEvent.getOctave()) );
 
 		// 前のノートとの音量が違う場合、音量コマンドを挿入する.
 		if (prevNoteEvent.getVelocity() != velocity) {
-			sb.append("v"+velocity);
+			sb.append('v').append(velocity);
 		}
 
-		sb.append( toMMLString() );
-
-		return sb.toString();
+		return appendMMLString(sb);
 	}
 
 	/**
 	 * 前のNoteEvent間にある休符のMML文字列を生成します.
+	 * @param sb
 	 * @param prevNoteEvent
-	 * @return
 	 */
-	private String createMMLSpaceString(MMLNoteEvent prevNoteEvent) throws UndefinedTickException {
+	private void appendMMLSpaceString(StringBuilder sb, MMLNoteEvent prevNoteEvent) throws UndefinedTickException {
 		int noteSpaceTick = getTickOffset() - prevNoteEvent.getEndTick();
 		if ( noteSpaceTick > 0 ) {
-			MMLTicks mmlTick = new MMLTicks("r", noteSpaceTick, false);
-			return mmlTick.toMMLText();
+			MMLTicks.appendMMLText(sb, "r", noteSpaceTick, false);
 		}
-
-		return "";
 	}
 
 	/**
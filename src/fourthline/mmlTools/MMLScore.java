@@ -14,13 +14,14 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import fourthline.mmlTools.core.MMLTicks;
 import fourthline.mmlTools.parser.IMMLFileParser;
 import fourthline.mmlTools.parser.MMLParseException;
 import fourthline.mmlTools.parser.MMSFile;
-import fourthline.mmlTools.parser.SectionContents;
+import fourthline.mmlTools.parser.SectionReader;
 import fourthline.mmlTools.parser.TextParser;
 
 
@@ -34,11 +35,19 @@ public final class MMLScore implements IMMLFileParser {
 
 	public static final int MAX_TRACK = 12;
 
+	private static volatile boolean parallelGenerate = true;
+
 	private String title = "";
 	private String author = "";
 	private int numTime = 4;
 	private int baseTime = 4;
 
+	/** 最後に取得したスナップショット. 次のスナップショットと変更のない部分を共有する. */
+	private MMLScoreSnapshot lastSnapshot = null;
+
+	/** globalTempoList の変換表. テンポリストが変更されていれば取得時に作り直す. */
+	private volatile TempoMap tempoMap = null;
+
 	/**
 	 * 新たにトラックを追加します.
 	 * @param track
@@ -107,7 +116,18 @@ public final class MMLScore implements IMMLFileParser {
 	}
 
 	public int getTempoOnTick(long tickOffset) {
-		return MMLTempoEvent.searchOnTick(globalTempoList, tickOffset);
+		return getTempoMap().searchOnTick(tickOffset);
+	}
+
+	/**
+	 * テンポリストのtickと時間の変換表を取得します.
+	 * テンポリストが前回から変更されていなければ, 同じ変換表を返します.
+	 * @return
+	 */
+	public TempoMap getTempoMap() {
+		TempoMap map = TempoMap.of(tempoMap, globalTempoList);
+		tempoMap = map;
+		return map;
 	}
 
 	public List<MMLTempoEvent> getTempoEventList() {
@@ -212,6 +232,17 @@ public final class MMLScore implements IMMLFileParser {
 		return (int)tick;
 	}
 
+	/**
+	 * 現在の内容の変更できないスナップショットを取得します.
+	 * 前回のスナップショットから変更のないトラック, パートは共有されます.
+	 * 編集と同じスレッドで呼び出してください.
+	 * @return
+	 */
+	public MMLScoreSnapshot snapshot() {
+		lastSnapshot = MMLScoreSnapshot.capture(this, lastSnapshot);
+		return lastSnapshot;
+	}
+
 	public byte[] getObjectState() {
 		ByteArrayOutputStream ostream = new ByteArrayOutputStream();
 		writeToOutputStream(ostream);
@@ -279,16 +310,30 @@ public final class MMLScore implements IMMLFileParser {
 		this.globalTempoList.clear();
 		this.trackList.clear();
 
-		List<SectionContents> contentsList = SectionContents.makeSectionContentsByInputStream(istream, "UTF-8");
-		if (contentsList.isEmpty()) {
-			throw(new MMLParseException());
-		}
-		for (SectionContents section : contentsList) {
-			if (section.getName().equals("[mml-score]")) {
-				parseMMLScore(section.getContents());
-			} else if (section.getName().equals("[marker]")) {
-				parseMarker(section.getContents());
+		int sectionCount = SectionReader.read(istream, "UTF-8", new SectionReader.Handler() {
+			private Consumer<String> lineParser = null;
+
+			@Override
+			public void startSection(String name) {
+				if (name.equals("[mml-score]")) {
+					lineParser = MMLScore.this::parseMMLScoreLine;
+				} else if (name.equals("[marker]")) {
+					markerList.clear();
+					lineParser = MMLScore.this::parseMarkerLine;
+				} else {
+					lineParser = null;
+				}
 			}
+
+			@Override
+			public void sectionLine(String line) {
+				if (lineParser != null) {
+					lineParser.accept(line);
+				}
+			}
+		});
+		if (sectionCount == 0) {
+			throw(new MMLParseException());
 		}
 		try {
 			generateAll();
@@ -299,45 +344,81 @@ public final class MMLScore implements IMMLFileParser {
 	}
 
 	/**
-	 * parse [mml-score] contents
-	 * @param contents
+	 * parse [mml-score] line
+	 * @param s
 	 */
-	private void parseMMLScore(String contents) {
-		Pattern.compile("\n").splitAsStream(contents).forEachOrdered((s) -> {
-			TextParser textParser = TextParser.text(s);
-			if (        textParser.startsWith("mml-track=",   t -> this.addTrack(new MMLTrack().setMML(t)) )) {
-			} else if ( textParser.startsWith("name=",        t -> this.trackList.getLast().setTrackName(t) )) {
-			} else if ( textParser.startsWith("program=",     t -> this.trackList.getLast().setProgram(Integer.parseInt(t)) )) {
-			} else if ( textParser.startsWith("songProgram=", t -> this.trackList.getLast().setSongProgram(Integer.parseInt(t)) )) {
-			} else if ( textParser.startsWith("panpot=",      t -> this.trackList.getLast().setPanpot(Integer.parseInt(t)) )) {
-			} else if ( textParser.startsWith("title=",       this::setTitle )) {
-			} else if ( textParser.startsWith("author=",      this::setAuthor )) {
-			} else if ( textParser.startsWith("time=",        this::setBaseTime )) {
-			}
-		});
+	private void parseMMLScoreLine(String s) {
+		TextParser textParser = TextParser.text(s);
+		if (        textParser.startsWith("mml-track=",   t -> this.addTrack(new MMLTrack().setMML(t)) )) {
+		} else if ( textParser.startsWith("name=",        t -> this.trackList.getLast().setTrackName(t) )) {
+		} else if ( textParser.startsWith("program=",     t -> this.trackList.getLast().setProgram(Integer.parseInt(t)) )) {
+		} else if ( textParser.startsWith("songProgram=", t -> this.trackList.getLast().setSongProgram(Integer.parseInt(t)) )) {
+		} else if ( textParser.startsWith("panpot=",      t -> this.trackList.getLast().setPanpot(Integer.parseInt(t)) )) {
+		} else if ( textParser.startsWith("title=",       this::setTitle )) {
+		} else if ( textParser.startsWith("author=",      this::setAuthor )) {
+		} else if ( textParser.startsWith("time=",        this::setBaseTime )) {
+		}
 	}
 
 	/**
-	 * parse [marker] contents
-	 * @param contents
+	 * parse [marker] line
+	 * @param s
 	 */
-	private void parseMarker(String contents) {
-		markerList.clear();
-		for (String s : contents.split("\n")) {
-			// <tickOffset>=<name>
-			String tickString = s.substring(0, s.indexOf('='));
-			String name = s.substring(s.indexOf('=')+1);
-			markerList.add( new Marker(name, Integer.parseInt(tickString)) );
+	private void parseMarkerLine(String s) {
+		if (s.isEmpty()) {
+			return;
 		}
+		// <tickOffset>=<name>
+		String tickString = s.substring(0, s.indexOf('='));
+		String name = s.substring(s.indexOf('=')+1);
+		markerList.add( new Marker(name, Integer.parseInt(tickString)) );
 	}
 
+	/**
+	 * 全トラックのMMLを生成します.
+	 * 並列生成が有効な場合は, トラックごとにForkJoinPoolで生成します.
+	 * @return
+	 * @throws UndefinedTickException 生成できないトラックがある場合, もっとも若いトラックの例外
+	 */
 	public MMLScore generateAll() throws UndefinedTickException {
-		for (MMLTrack track : trackList) {
-			track.generate();
+		if ( (!parallelGenerate) || (trackList.size() <= 1) ) {
+			for (MMLTrack track : trackList) {
+				track.generate();
+			}
+			return this;
+		}
+
+		// 各トラックは共有のテンポリストを読むだけなので, 呼び出し元が待っている間は並列に生成できる.
+		List<MMLTrack> tracks = new ArrayList<>(trackList);
+		UndefinedTickException exceptions[] = new UndefinedTickException[tracks.size()];
+		IntStream.range(0, tracks.size()).parallel().forEach(i -> {
+			try {
+				tracks.get(i).generate();
+			} catch (UndefinedTickException e) {
+				exceptions[i] = e;
+			}
+		});
+
+		for (UndefinedTickException e : exceptions) {
+			if (e != null) {
+				throw e;
+			}
 		}
 		return this;
 	}
 
+	/**
+	 * generateAll() でトラックを並列に生成するかどうかを設定します.
+	 * @param b false の場合は, トラック順に1つずつ生成します.
+	 */
+	public static void setParallelGenerate(boolean b) {
+		parallelGenerate = b;
+	}
+
+	public static boolean isParallelGenerate() {
+		return parallelGenerate;
+	}
+
 	public static void main(String args[]) {
 		try {
 			System.out.println(" --- parse sample.mms ---");
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+import fourthline.mmlTools.MMLScoreSnapshot.TrackSnapshot;
+
+/**
+ * 2つのスコアスナップショットの差分. Undo/Redoの1ステップ分.
+ * パートごとのノート, テンポ, マーカーは変更のあった範囲だけを保持します.
+ */
+public final class MMLScoreDelta {
+	/** 1イベントあたりの概算メモリ (byte) */
+	private static final int EVENT_SIZE = 48;
+
+	private final String title[];
+	private final String author[];
+	private final String baseTime[];
+
+	/** トラック数が同じ場合の, トラックごとの差分. 変更のないトラックは null. */
+	private final TrackDelta trackDelta[];
+	/** トラック数が変わる場合の, トラック単位の差分. */
+	private final ArrayDelta<TrackSnapshot> trackListDelta;
+
+	private final ArrayDelta<MMLTempoEvent> tempoDelta;
+	private final ArrayDelta<Marker> markerDelta;
+
+	private MMLScoreDelta(MMLScoreSnapshot before, MMLScoreSnapshot after) {
+		title = new String[] { before.title, after.title };
+		author = new String[] { before.author, after.author };
+		baseTime = new String[] { before.baseTime, after.baseTime };
+
+		if (before.tracks.length == after.tracks.length) {
+			trackDelta = new TrackDelta[after.tracks.length];
+			for (int i = 0; i < trackDelta.length; i++) {
+				trackDelta[i] = TrackDelta.diff(before.tracks[i], after.tracks[i]);
+			}
+			trackListDelta = null;
+		} else {
+			trackDelta = null;
+			trackListDelta = ArrayDelta.diff(before.tracks, after.tracks, MMLScoreDelta::equalsTrack);
+		}
+
+		tempoDelta = ArrayDelta.diff(before.tempoList, after.tempoList, MMLTempoEvent::equals);
+		markerDelta = ArrayDelta.diff(before.markerList, after.markerList, MMLScoreSnapshot::equalsMarker);
+	}
+
+	/**
+	 * 2つの状態の差分を作成します.
+	 * @param before
+	 * @param after
+	 * @return 差分がない場合は null
+	 */
+	public static MMLScoreDelta diff(MMLScoreSnapshot before, MMLScoreSnapshot after) {
+		MMLScoreDelta delta = new MMLScoreDelta(before, after);
+		if (delta.isEmpty()) {
+			return null;
+		}
+		return delta;
+	}
+
+	private boolean isEmpty() {
+		if ( !MMLScoreSnapshot.equalsText(title[0], title[1])
+				|| !MMLScoreSnapshot.equalsText(author[0], author[1])
+				|| !MMLScoreSnapshot.equalsText(baseTime[0], baseTime[1]) ) {
+			return false;
+		}
+		if ( (trackListDelta != null) || (tempoDelta != null) || (markerDelta != null) ) {
+			return false;
+		}
+		for (TrackDelta delta : trackDelta) {
+			if (delta != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 状態に差分を適用します.
+	 * @param state 差分の適用元 (undoの場合は変更後の状態)
+	 * @param undo trueの場合は逆方向に適用する.
+	 * @return 適用後の状態
+	 */
+	public MMLScoreSnapshot apply(MMLScoreSnapshot state, boolean undo) {
+		int index = undo ? 0 : 1;
+		TrackSnapshot tracks[];
+		if (trackListDelta != null) {
+			tracks = trackListDelta.apply(state.tracks, undo);
+		} else {
+			tracks = state.tracks.clone();
+			for (int i = 0; i < tracks.length; i++) {
+				if (trackDelta[i] != null) {
+					tracks[i] = trackDelta[i].apply(tracks[i], undo);
+				}
+			}
+		}
+
+		MMLTempoEvent tempoList[] = (tempoDelta != null) ? tempoDelta.apply(state.tempoList, undo) : state.tempoList;
+		Marker markerList[] = (markerDelta != null) ? markerDelta.apply(state.markerList, undo) : state.markerList;
+		return new MMLScoreSnapshot(title[index], author[index], baseTime[index], tracks, tempoList, markerList);
+	}
+
+	/**
+	 * この差分が保持するメモリの概算を返します.
+	 * @return byte
+	 */
+	public long estimateSize() {
+		long size = EVENT_SIZE;
+		if (trackListDelta != null) {
+			for (TrackSnapshot track : trackListDelta.removed) {
+				size += track.estimateSize();
+			}
+			for (TrackSnapshot track : trackListDelta.added) {
+				size += track.estimateSize();
+			}
+		} else {
+			for (TrackDelta delta : trackDelta) {
+				if (delta != null) {
+					size += delta.estimateSize();
+				}
+			}
+		}
+		if (tempoDelta != null) {
+			size += eventSize(tempoDelta.removed.length + tempoDelta.added.length);
+		}
+		if (markerDelta != null) {
+			size += eventSize(markerDelta.removed.length + markerDelta.added.length);
+		}
+		return size;
+	}
+
+	static long eventSize(int count) {
+		return (long) count * EVENT_SIZE;
+	}
+
+	private static boolean equalsTrack(TrackSnapshot track1, TrackSnapshot track2) {
+		if (track1 == track2) {
+			return true;
+		}
+		if ( !track1.equalsProperty(track2) || (track1.parts.length != track2.parts.length) ) {
+			return false;
+		}
+		for (int i = 0; i < track1.parts.length; i++) {
+			if ( (track1.parts[i] != track2.parts[i]) && !Arrays.equals(track1.parts[i], track2.parts[i]) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * トラック1つ分の差分. プロパティと, パートごとのノート差分.
+	 */
+	private static final class TrackDelta {
+		private final TrackSnapshot property[];
+		/** 変更のないパートは null */
+		private final List<ArrayDelta<MMLNoteEvent>> partDelta;
+
+		private TrackDelta(TrackSnapshot before, TrackSnapshot after) {
+			// プロパティのみを保持し, パートの配列は参照しない.
+			property = new TrackSnapshot[] {
+					new TrackSnapshot(before.name, before.program, before.songProgram, before.panpot, null),
+					new TrackSnapshot(after.name, after.program, after.songProgram, after.panpot, null)
+			};
+			partDelta = new ArrayList<>(after.parts.length);
+			for (int i = 0; i < after.parts.length; i++) {
+				if (before.parts[i] != after.parts[i]) {
+					partDelta.add(ArrayDelta.diff(before.parts[i], after.parts[i], MMLNoteEvent::equals));
+				} else {
+					partDelta.add(null);
+				}
+			}
+		}
+
+		private static TrackDelta diff(TrackSnapshot before, TrackSnapshot after) {
+			if (before == after) {
+				return null;
+			}
+			TrackDelta delta = new TrackDelta(before, after);
+			if (!before.equalsProperty(after)) {
+				return delta;
+			}
+			for (ArrayDelta<MMLNoteEvent> part : delta.partDelta) {
+				if (part != null) {
+					return delta;
+				}
+			}
+			return null;
+		}
+
+		private TrackSnapshot apply(TrackSnapshot state, boolean undo) {
+			TrackSnapshot target = property[undo ? 0 : 1];
+			MMLNoteEvent parts[][] = state.parts.clone();
+			for (int i = 0; i < parts.length; i++) {
+				ArrayDelta<MMLNoteEvent> part = partDelta.get(i);
+				if (part != null) {
+					parts[i] = part.apply(parts[i], undo);
+				}
+			}
+			return new TrackSnapshot(target.name, target.program, target.songProgram, target.panpot, parts);
+		}
+
+		private long estimateSize() {
+			long size = EVENT_SIZE;
+			for (ArrayDelta<MMLNoteEvent> part : partDelta) {
+				if (part != null) {
+					size += eventSize(part.removed.length + part.added.length);
+				}
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * 配列の差分. 先頭と末尾の一致部分を除いた, 置き換え範囲を保持します.
+	 */
+	private static final class ArrayDelta<T> {
+		private final int start;
+		private final T removed[];
+		private final T added[];
+
+		private ArrayDelta(int start, T removed[], T added[]) {
+			this.start = start;
+			this.removed = removed;
+			this.added = added;
+		}
+
+		/**
+		 * @return 差分がない場合は null
+		 */
+		private static <T> ArrayDelta<T> diff(T before[], T after[], BiPredicate<T, T> equals) {
+			int length = Math.min(before.length, after.length);
+			int head = 0;
+			while ( (head < length) && equals.test(before[head], after[head]) ) {
+				head++;
+			}
+			if ( (head == length) && (before.length == after.length) ) {
+				return null;
+			}
+
+			int tail = 0;
+			while ( (tail < length - head) && equals.test(before[before.length-1-tail], after[after.length-1-tail]) ) {
+				tail++;
+			}
+			return new ArrayDelta<>(head,
+					Arrays.copyOfRange(before, head, before.length - tail),
+					Arrays.copyOfRange(after, head, after.length - tail));
+		}
+
+		private T[] apply(T src[], boolean undo) {
+			T from[] = undo ? added : removed;
+			T to[] = undo ? removed : added;
+			T result[] = Arrays.copyOf(src, src.length - from.length + to.length);
+			System.arraycopy(to, 0, result, start, to.length);
+			System.arraycopy(src, start + from.length, result, start + to.length, src.length - start - from.length);
+			return result;
+		}
+	}
+}
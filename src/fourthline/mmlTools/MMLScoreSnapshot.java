@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 変更できないスコアのスナップショット.
+ * 保持するイベントは複製したもので, 変更しない. 変更のないトラックやパートは前のスナップショットと共有する.
+ * 再生やUndo履歴など, 編集中のスコアとは別に一貫した内容が必要な場合に使用します.
+ * 取得したイベントは共有されているため, 変更してはいけません.
+ */
+public final class MMLScoreSnapshot {
+	final String title;
+	final String author;
+	final String baseTime;
+	final TrackSnapshot tracks[];
+	final MMLTempoEvent tempoList[];
+	final Marker markerList[];
+
+	MMLScoreSnapshot(String title, String author, String baseTime, TrackSnapshot tracks[], MMLTempoEvent tempoList[], Marker markerList[]) {
+		this.title = title;
+		this.author = author;
+		this.baseTime = baseTime;
+		this.tracks = tracks;
+		this.tempoList = tempoList;
+		this.markerList = markerList;
+	}
+
+	/**
+	 * トラック1つ分のスナップショット.
+	 */
+	public static final class TrackSnapshot {
+		final String name;
+		final int program;
+		final int songProgram;
+		final int panpot;
+		final MMLNoteEvent parts[][];
+
+		TrackSnapshot(String name, int program, int songProgram, int panpot, MMLNoteEvent parts[][]) {
+			this.name = name;
+			this.program = program;
+			this.songProgram = songProgram;
+			this.panpot = panpot;
+			this.parts = parts;
+		}
+
+		public String getTrackName() {
+			return name;
+		}
+
+		public int getProgram() {
+			return program;
+		}
+
+		public int getSongProgram() {
+			return songProgram;
+		}
+
+		public int getPanpot() {
+			return panpot;
+		}
+
+		public int getPartCount() {
+			return parts.length;
+		}
+
+		/**
+		 * @param index パートindex
+		 * @return 変更不可のノートリスト
+		 */
+		public List<MMLNoteEvent> getPart(int index) {
+			return Collections.unmodifiableList(Arrays.asList(parts[index]));
+		}
+
+		boolean equalsProperty(TrackSnapshot state) {
+			return (program == state.program) && (songProgram == state.songProgram)
+					&& (panpot == state.panpot) && equalsText(name, state.name);
+		}
+
+		private boolean equalsProperty(MMLTrack track) {
+			return (program == track.getProgram()) && (songProgram == track.getSongProgram())
+					&& (panpot == track.getPanpot()) && equalsText(name, track.getTrackName());
+		}
+
+		private static TrackSnapshot capture(MMLTrack track, TrackSnapshot prev) {
+			int count = track.getMMLEventListSize();
+			MMLNoteEvent parts[][] = new MMLNoteEvent[count][];
+			boolean same = (prev != null) && (prev.parts.length == count) && prev.equalsProperty(track);
+			for (int i = 0; i < count; i++) {
+				List<MMLNoteEvent> noteList = track.getMMLEventAtIndex(i).getMMLNoteEventList();
+				if ( (prev != null) && (i < prev.parts.length) && equalsNoteList(prev.parts[i], noteList) ) {
+					parts[i] = prev.parts[i];
+				} else {
+					parts[i] = cloneNoteList(noteList);
+					same = false;
+				}
+			}
+
+			if (same) {
+				return prev;
+			}
+			return new TrackSnapshot(track.getTrackName(), track.getProgram(), track.getSongProgram(), track.getPanpot(), parts);
+		}
+
+		private void restore(MMLTrack track) {
+			if (!equalsProperty(track)) {
+				track.setTrackName(name);
+				track.setProgram(program);
+				track.setSongProgram(songProgram);
+				track.setPanpot(panpot);
+			}
+			for (int i = 0; i < parts.length; i++) {
+				List<MMLNoteEvent> noteList = track.getMMLEventAtIndex(i).getMMLNoteEventList();
+				if (!equalsNoteList(parts[i], noteList)) {
+					noteList.clear();
+					for (MMLNoteEvent noteEvent : parts[i]) {
+						noteList.add(noteEvent.clone());
+					}
+				}
+			}
+		}
+
+		long estimateSize() {
+			long size = 0;
+			for (MMLNoteEvent part[] : parts) {
+				size += MMLScoreDelta.eventSize(part.length);
+			}
+			return size;
+		}
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getAuthor() {
+		return author;
+	}
+
+	public String getBaseTime() {
+		return baseTime;
+	}
+
+	public int getTrackCount() {
+		return tracks.length;
+	}
+
+	public TrackSnapshot getTrack(int index) {
+		return tracks[index];
+	}
+
+	public List<TrackSnapshot> getTrackList() {
+		return Collections.unmodifiableList(Arrays.asList(tracks));
+	}
+
+	/**
+	 * @return 変更不可のテンポリスト
+	 */
+	public List<MMLTempoEvent> getTempoEventList() {
+		return Collections.unmodifiableList(Arrays.asList(tempoList));
+	}
+
+	/**
+	 * @return 変更不可のマーカーリスト
+	 */
+	public List<Marker> getMarkerList() {
+		return Collections.unmodifiableList(Arrays.asList(markerList));
+	}
+
+	/**
+	 * スコアのスナップショットを取得します.
+	 * 前のスナップショットと比較し, 変更のあったパートのみを複製します.
+	 * @param score
+	 * @param prev 前のスナップショット. 変更のない部分はこれと共有する. nullの場合はすべて複製する.
+	 * @return
+	 */
+	public static MMLScoreSnapshot capture(MMLScore score, MMLScoreSnapshot prev) {
+		List<MMLTrack> trackList = score.getTrackList();
+		TrackSnapshot tracks[] = new TrackSnapshot[trackList.size()];
+		int i = 0;
+		for (MMLTrack track : trackList) {
+			TrackSnapshot prevTrack = ((prev != null) && (i < prev.tracks.length)) ? prev.tracks[i] : null;
+			tracks[i++] = TrackSnapshot.capture(track, prevTrack);
+		}
+
+		MMLTempoEvent tempoList[];
+		if ( (prev != null) && Arrays.equals(prev.tempoList, score.getTempoEventList().toArray()) ) {
+			tempoList = prev.tempoList;
+		} else {
+			tempoList = cloneTempoList(score.getTempoEventList());
+		}
+
+		Marker markerList[];
+		if ( (prev != null) && equalsMarkerList(prev.markerList, score.getMarkerList()) ) {
+			markerList = prev.markerList;
+		} else {
+			markerList = cloneMarkerList(score.getMarkerList());
+		}
+
+		return new MMLScoreSnapshot(score.getTitle(), score.getAuthor(), score.getBaseTime(), tracks, tempoList, markerList);
+	}
+
+	/**
+	 * スコアをこのスナップショットの内容に戻します. 内容が異なるトラック, パートのみを書き換えます.
+	 * @param score
+	 */
+	public void restore(MMLScore score) {
+		score.setTitle(title);
+		score.setAuthor(author);
+		score.setBaseTime(baseTime);
+
+		List<MMLTempoEvent> scoreTempoList = score.getTempoEventList();
+		if (!Arrays.equals(tempoList, scoreTempoList.toArray())) {
+			scoreTempoList.clear();
+			for (MMLTempoEvent tempoEvent : tempoList) {
+				scoreTempoList.add(tempoEvent.clone());
+			}
+		}
+
+		List<Marker> scoreMarkerList = score.getMarkerList();
+		if (!equalsMarkerList(markerList, scoreMarkerList)) {
+			scoreMarkerList.clear();
+			for (Marker marker : markerList) {
+				scoreMarkerList.add(new Marker(marker.getName(), marker.getTickOffset()));
+			}
+		}
+
+		while (score.getTrackCount() > tracks.length) {
+			score.removeTrack(score.getTrackCount()-1);
+		}
+		while (score.getTrackCount() < tracks.length) {
+			score.addTrack(new MMLTrack());
+		}
+		for (int i = 0; i < tracks.length; i++) {
+			tracks[i].restore(score.getTrack(i));
+		}
+	}
+
+	/**
+	 * このスナップショットが保持するメモリの概算を返します.
+	 * @return byte
+	 */
+	public long estimateSize() {
+		long size = MMLScoreDelta.eventSize(tempoList.length + markerList.length);
+		for (TrackSnapshot track : tracks) {
+			size += track.estimateSize();
+		}
+		return size;
+	}
+
+	static boolean equalsText(String s1, String s2) {
+		return (s1 == null) ? (s2 == null) : s1.equals(s2);
+	}
+
+	static boolean equalsMarker(Marker marker1, Marker marker2) {
+		return (marker1.getTickOffset() == marker2.getTickOffset()) && equalsText(marker1.getName(), marker2.getName());
+	}
+
+	private static boolean equalsNoteList(MMLNoteEvent notes[], List<MMLNoteEvent> noteList) {
+		if (notes.length != noteList.size()) {
+			return false;
+		}
+		int i = 0;
+		for (MMLNoteEvent noteEvent : noteList) {
+			if (!notes[i++].equals(noteEvent)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equalsMarkerList(Marker markers[], List<Marker> markerList) {
+		if (markers.length != markerList.size()) {
+			return false;
+		}
+		int i = 0;
+		for (Marker marker : markerList) {
+			if (!equalsMarker(markers[i++], marker)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static MMLNoteEvent[] cloneNoteList(List<MMLNoteEvent> noteList) {
+		MMLNoteEvent notes[] = new MMLNoteEvent[noteList.size()];
+		int i = 0;
+		for (MMLNoteEvent noteEvent : noteList) {
+			notes[i++] = noteEvent.clone();
+		}
+		return notes;
+	}
+
+	private static MMLTempoEvent[] cloneTempoList(List<MMLTempoEvent> tempoList) {
+		MMLTempoEvent tempos[] = new MMLTempoEvent[tempoList.size()];
+		int i = 0;
+		for (MMLTempoEvent tempoEvent : tempoList) {
+			tempos[i++] = tempoEvent.clone();
+		}
+		return tempos;
+	}
+
+	private static Marker[] cloneMarkerList(List<Marker> markerList) {
+		Marker markers[] = new Marker[markerList.size()];
+		int i = 0;
+		for (Marker marker : markerList) {
+			markers[i++] = new Marker(marker.getName(), marker.getTickOffset());
+		}
+		return markers;
+	}
+}
@@ -9,7 +9,7 @@ import java.util.Arrays;
 import java.util.List;
 
 
-public final class MMLTempoEvent extends MMLEvent {
+public final class MMLTempoEvent extends MMLEvent implements Cloneable {
 	private static final long serialVersionUID = 8014294359518840951L;
 
 	private int tempo;
@@ -79,16 +79,7 @@ public final class MMLTempoEvent extends MMLEvent {
 	}
 
 	public static int searchOnTick(List<MMLTempoEvent> tempoList, long tickOffset) {
-		int tempo = INITIAL_TEMPO;
-		for (MMLTempoEvent tempoEvent : tempoList) {
-			if (tickOffset < tempoEvent.getTickOffset()) {
-				break;
-			}
-
-			tempo = tempoEvent.getTempo();
-		}
-
-		return tempo;
+		return new TempoMap(tempoList).searchOnTick(tickOffset);
 	}
 
 	public static boolean searchEqualsTick(List<MMLTempoEvent> tempoList, long tickOffset) {
@@ -104,57 +95,24 @@ public final class MMLTempoEvent extends MMLEvent {
 
 	/**
 	 * 指定したtickオフセット位置の先頭からの時間を返します.
+	 * 繰り返し変換する場合は TempoMap を使用してください.
 	 * @param tempoList
 	 * @param tickOffset
 	 * @return 先頭からの時間（ms）
 	 */
 	public static long getTimeOnTickOffset(List<MMLTempoEvent> tempoList, int tickOffset) {
-		long totalTime = 0L;
-
-		int tempo = INITIAL_TEMPO;
-		int currentTick = 0;
-		for (MMLTempoEvent tempoEvent : tempoList) {
-			int currentTempoTick = tempoEvent.getTickOffset();
-			if (tickOffset < currentTempoTick) {
-				break;
-			}
-
-			int currentTempo = tempoEvent.getTempo();
-			if (tempo != currentTempo) {
-				totalTime += (currentTempoTick - currentTick) * 60 / tempo * 1000;
-				currentTick = currentTempoTick;
-			}
-
-			tempo = currentTempo;
-		}
-
-		totalTime += (tickOffset - currentTick) * 60 / tempo * 1000;
-		totalTime /= 96.0;
-		return totalTime;
+		return new TempoMap(tempoList).getTimeOnTickOffset(tickOffset);
 	}
 
 	/**
 	 * 指定した時間からtickオフセットを返します.
+	 * 繰り返し変換する場合は TempoMap を使用してください.
 	 * @param tempoList
-	 * @param ms
-	 * @return 先頭からの時間（ms）
+	 * @param time 先頭からの時間（ms）
+	 * @return tickオフセット
 	 */
 	public static long getTickOffsetOnTime(List<MMLTempoEvent> tempoList, long time) {
-		int tempo = INITIAL_TEMPO;
-		long pointTime = 0;
-		long tick = 0;
-		for (MMLTempoEvent tempoEvent : tempoList) {
-			long tempoTime = getTimeOnTickOffset(tempoList, tempoEvent.getTickOffset());
-			if (time <= tempoTime) {
-				break;
-			}
-			pointTime = tempoTime;
-			tempo = tempoEvent.getTempo();
-			tick = tempoEvent.getTickOffset();
-		}
-
-		tick += (time - pointTime) * 96 * tempo / 60 / 1000;
-		return tick;
+		return new TempoMap(tempoList).getTickOffsetOnTime(time);
 	}
 
 	/**
@@ -174,6 +132,15 @@ public final class MMLTempoEvent extends MMLEvent {
 		return maxEvent;
 	}
 
+	@Override
+	public MMLTempoEvent clone() {
+		try {
+			return (MMLTempoEvent) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError();
+		}
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof MMLTempoEvent)) {
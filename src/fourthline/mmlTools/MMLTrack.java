@@ -11,6 +11,7 @@ import java.util.List;
 
 import fourthline.mmlTools.core.MMLText;
 import fourthline.mmlTools.core.MMLTicks;
+import fourthline.mmlTools.optimizer.MMLCommandOptimizer;
 import fourthline.mmlTools.optimizer.MMLStringOptimizer;
 
 public final class MMLTrack implements Serializable {
@@ -21,6 +22,16 @@ public final class MMLTrack implements Serializable {
 	private List<MMLTempoEvent> globalTempoList = new ArrayList<>();
 	private boolean generated = false;
 
+	// 最後に generate() したときの内容. ノートは getMMLNoteEventList() 経由で直接編集されるため, これと比較して変更を判定する.
+	private transient List<MMLEventList> generatedParts = null;
+	private transient List<MMLTempoEvent> generatedTempoList = null;
+
+	// globalTempoList の変換表. テンポリストが変更されていれば取得時に作り直す.
+	private transient TempoMap tempoMap = null;
+
+	// 最後に generate() したときに, オクターブ・音量コマンドの最適化で削減できたパートごとの文字数.
+	private transient int commandSavedLength[] = null;
+
 	private int program = 0;
 	private String trackName;
 	private int panpot = 64;
@@ -57,7 +68,7 @@ public final class MMLTrack implements Serializable {
 
 	private void mmlParse() {
 		mmlParts.clear();
-		generated = false;
+		markDirty();
 
 		for (int i = 0; i < PART_COUNT; i++) {
 			String s = originalMML.getText(i);
@@ -99,6 +110,7 @@ public final class MMLTrack implements Serializable {
 
 	public void setGlobalTempoList(List<MMLTempoEvent> globalTempoList) {
 		this.globalTempoList = globalTempoList;
+		markDirty();
 
 		for (MMLEventList eventList : mmlParts) {
 			eventList.setGlobalTempoList(globalTempoList);
@@ -170,17 +182,72 @@ public final class MMLTrack implements Serializable {
 		return max;
 	}
 
+	/**
+	 * 最後の generate() 以降に, ノートやテンポが変更されているかどうかを判定します.
+	 * テンポリストは全トラックで共有しているため, テンポの変更は全トラックが対象になります.
+	 * @return 再生成が必要な場合は true
+	 */
+	public boolean isDirty() {
+		if ( !generated || (generatedParts == null) ) {
+			return true;
+		}
+		return !mmlParts.equals(generatedParts) || !globalTempoList.equals(generatedTempoList);
+	}
+
+	/**
+	 * 次の generate() で必ず再生成するようにします.
+	 */
+	public void markDirty() {
+		generated = false;
+		generatedParts = null;
+		generatedTempoList = null;
+	}
+
+	/**
+	 * MMLを再生成します. 前回の生成から変更がない場合は何もしません.
+	 * @return
+	 * @throws UndefinedTickException
+	 */
 	public MMLTrack generate() throws UndefinedTickException {
-		originalMML.setMMLText(getMMLStrings(false, false));
+		if (!isDirty()) {
+			return this;
+		}
+
+		originalMML.setMMLText(getMMLStrings(false, false, null));
 		if (!(new MMLTrack().setMML(getOriginalMML()).equals(this))) {
 			new UndefinedTickException("Verify error.");
 		}
-		mabiMML.setMMLText(getMMLStrings(true, true));
+		int savedLength[] = new int[mmlParts.size()];
+		mabiMML.setMMLText(getMMLStrings(true, true, savedLength));
+		commandSavedLength = savedLength;
 		generated = true;
+		saveGeneratedState();
 		return this;
 	}
 
-	private String[] getMMLStrings(boolean tailFix, boolean mabiTempo) throws UndefinedTickException {
+	private void saveGeneratedState() {
+		generatedParts = new ArrayList<>(mmlParts.size());
+		for (MMLEventList eventList : mmlParts) {
+			generatedParts.add(eventList.clone());
+		}
+		generatedTempoList = new ArrayList<>(globalTempoList.size());
+		for (MMLTempoEvent tempoEvent : globalTempoList) {
+			generatedTempoList.add(tempoEvent.clone());
+		}
+	}
+
+	/**
+	 * 出力用のMMLランク計算に使われる, オクターブ・音量コマンドの最適化で削減した文字数を取得します.
+	 * @return 各パートの削減文字数. 一度も generate() していない場合は全パート 0.
+	 */
+	public int[] getCommandSavedLength() {
+		if (commandSavedLength == null) {
+			return new int[ PART_COUNT ];
+		}
+		return commandSavedLength.clone();
+	}
+
+	private String[] getMMLStrings(boolean tailFix, boolean mabiTempo, int savedLength[]) throws UndefinedTickException {
 		int count = mmlParts.size();
 		String mml[] = new String[count];
 		int totalTick = (int)this.getMaxTickLength();
@@ -200,6 +267,11 @@ public final class MMLTrack implements Serializable {
 		}
 		for (int i = 0; i < count; i++) {
 			mml[i] = new MMLStringOptimizer(mml[i]).toString();
+			MMLCommandOptimizer commandOptimizer = new MMLCommandOptimizer(mml[i]);
+			mml[i] = commandOptimizer.toString();
+			if (savedLength != null) {
+				savedLength[i] = commandOptimizer.getSavedLength();
+			}
 		}
 		if ((mmlParts.get(3).getTickLength() == 0)) {
 			mml[3] = "";
@@ -213,18 +285,24 @@ public final class MMLTrack implements Serializable {
 		double playTime = getPlayTime();
 		double mmlTime = getMabinogiTime();
 		int tick = (int)(totalTick - new MMLEventList(s).getTickLength());
+		StringBuilder sb = new StringBuilder(s);
 		if (playTime > mmlTime) {
 			// スキルが演奏の途中で止まるのを防ぎます.
-			s += new MMLTicks("r", tick, false).toMMLText();
+			MMLTicks.appendMMLText(sb, "r", tick, false);
 		} else if (playTime < mmlTime) {
 			// 演奏が終ってスキルが止まらないのを防ぎます.
 			if (tick > 0) {
-				s += new MMLTicks("r", tick, false).toMMLText() + "v0c64";
+				MMLTicks.appendMMLText(sb, "r", tick, false).append("v0c64");
 			}
-			s += MMLTempoEvent.getMaxTempoEvent(globalTempoList).toMMLString();
+			sb.append( MMLTempoEvent.getMaxTempoEvent(globalTempoList).toMMLString() );
 		}
 
-		return s;
+		return sb.toString();
+	}
+
+	private TempoMap getTempoMap() {
+		tempoMap = TempoMap.of(tempoMap, globalTempoList);
+		return tempoMap;
 	}
 
 	/**
@@ -232,8 +310,8 @@ public final class MMLTrack implements Serializable {
 	 * @return 時間（秒）
 	 */
 	public double getPlayTime() {
-		int totalTick = (int)getMaxTickLength();
-		long playTime = MMLTempoEvent.getTimeOnTickOffset(globalTempoList, totalTick);
+		long totalTick = getMaxTickLength();
+		long playTime = getTempoMap().getTimeOnTickOffset(totalTick);
 
 		return playTime/1000.0;
 	}	
@@ -247,19 +325,20 @@ public final class MMLTrack implements Serializable {
 	public double getMabinogiTime() {
 		long partTime[] = new long[mmlParts.size()];
 
-		int melodyTick = (int)mmlParts.get(0).getTickLength();
-		partTime[0] = MMLTempoEvent.getTimeOnTickOffset(globalTempoList, melodyTick);
+		TempoMap globalTempoMap = getTempoMap();
+		long melodyTick = mmlParts.get(0).getTickLength();
+		partTime[0] = globalTempoMap.getTimeOnTickOffset(melodyTick);
 
-		ArrayList<MMLTempoEvent> globalTailTempo = new ArrayList<>();
-		MMLTempoEvent lastTempoEvent = new MMLTempoEvent(120, 0);
+		// 和音パートは最後のテンポで演奏する.
+		int lastTempo = MMLTempoEvent.INITIAL_TEMPO;
 		if (globalTempoList.size() > 0) {
-			lastTempoEvent.setTempo(globalTempoList.get(globalTempoList.size()-1).getTempo());
+			lastTempo = globalTempoList.get(globalTempoList.size()-1).getTempo();
 		}
-		globalTailTempo.add(new MMLTempoEvent(lastTempoEvent.getTempo(), 0));
+		TempoMap tailTempoMap = new TempoMap(Arrays.asList(new MMLTempoEvent(lastTempo, 0)));
 
 		for (int i = 1; i < partTime.length; i++) {
-			int tick = (int)mmlParts.get(i).getTickLength();
-			partTime[i] = MMLTempoEvent.getTimeOnTickOffset(globalTailTempo, tick);
+			long tick = mmlParts.get(i).getTickLength();
+			partTime[i] = tailTempoMap.getTimeOnTickOffset(tick);
 		}
 
 		long maxTime = 0;
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools;
+
+import java.util.List;
+
+/**
+ * テンポリストから作成する, tickと時間の変換表.
+ * <p>
+ * テンポが変わる位置ごとに, 開始tick, テンポ, 先頭からの時間 (マイクロ秒) を配列で保持し,
+ * tickと時間の変換, テンポの検索を二分探索で行います.
+ * 時間はテンポ区間ごとに整数で計算し, 途中で丸めるのは区間の境界だけです.
+ * </p>
+ * 作成後は変更されません. テンポリストを編集した場合は, of(TempoMap, List) で作り直してください.
+ */
+public final class TempoMap {
+	/** 4分音符のtick数 */
+	private static final long TICKS_PER_BEAT = 96;
+	/** 1分 (マイクロ秒) */
+	private static final long MINUTE_US = 60000000L;
+
+	/** 区間の開始tick. 先頭は 0 */
+	private final int ticks[];
+	/** 区間のテンポ */
+	private final int tempos[];
+	/** 区間の開始時間 (マイクロ秒) */
+	private final long times[];
+	/** 作成元のテンポリストの内容 (変更の判定用) */
+	private final int sourceTicks[];
+	private final int sourceTempos[];
+
+	/**
+	 * @param tempoList tick順に並んだテンポリスト
+	 */
+	public TempoMap(List<MMLTempoEvent> tempoList) {
+		int size = tempoList.size();
+		sourceTicks = new int[size];
+		sourceTempos = new int[size];
+		int segmentTicks[] = new int[size+1];
+		int segmentTempos[] = new int[size+1];
+		long segmentTimes[] = new long[size+1];
+
+		int count = 1;
+		segmentTempos[0] = MMLTempoEvent.INITIAL_TEMPO;
+		for (int i = 0; i < size; i++) {
+			MMLTempoEvent tempoEvent = tempoList.get(i);
+			int tick = tempoEvent.getTickOffset();
+			int tempo = tempoEvent.getTempo();
+			sourceTicks[i] = tick;
+			sourceTempos[i] = tempo;
+
+			int last = count - 1;
+			if (tick <= segmentTicks[last]) {
+				// 同じ位置のテンポは後のものを使う.
+				segmentTempos[last] = tempo;
+			} else if (tempo != segmentTempos[last]) {
+				segmentTicks[count] = tick;
+				segmentTempos[count] = tempo;
+				segmentTimes[count] = segmentTimes[last] + tickToMicrosecond(tick - segmentTicks[last], segmentTempos[last]);
+				count++;
+			}
+		}
+
+		if (count < size+1) {
+			ticks = new int[count];
+			tempos = new int[count];
+			times = new long[count];
+			System.arraycopy(segmentTicks, 0, ticks, 0, count);
+			System.arraycopy(segmentTempos, 0, tempos, 0, count);
+			System.arraycopy(segmentTimes, 0, times, 0, count);
+		} else {
+			ticks = segmentTicks;
+			tempos = segmentTempos;
+			times = segmentTimes;
+		}
+	}
+
+	/**
+	 * テンポリストに対応する変換表を取得します. 変換表がリストと同じ内容であれば, そのまま返します.
+	 * @param tempoMap 前回の変換表 (null可)
+	 * @param tempoList
+	 * @return
+	 */
+	public static TempoMap of(TempoMap tempoMap, List<MMLTempoEvent> tempoList) {
+		if ( (tempoMap != null) && tempoMap.matches(tempoList) ) {
+			return tempoMap;
+		}
+		return new TempoMap(tempoList);
+	}
+
+	/**
+	 * 変換表がテンポリストと同じ内容から作成されたかどうかを判定します.
+	 * @param tempoList
+	 * @return
+	 */
+	public boolean matches(List<MMLTempoEvent> tempoList) {
+		if (tempoList.size() != sourceTicks.length) {
+			return false;
+		}
+		int i = 0;
+		for (MMLTempoEvent tempoEvent : tempoList) {
+			if ( (tempoEvent.getTickOffset() != sourceTicks[i]) || (tempoEvent.getTempo() != sourceTempos[i]) ) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	private static long tickToMicrosecond(long tick, int tempo) {
+		return tick * MINUTE_US / (TICKS_PER_BEAT * tempo);
+	}
+
+	/**
+	 * tickを含む区間を探します.
+	 * @return tick以前で最後の区間. 先頭より前の場合は 0
+	 */
+	private int segmentOnTick(long tick) {
+		int low = 0;
+		int high = ticks.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (ticks[mid] <= tick) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private int segmentOnTime(long time) {
+		int low = 0;
+		int high = times.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (times[mid] <= time) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * 指定したtickオフセット位置のテンポを返します.
+	 * @param tickOffset
+	 * @return
+	 */
+	public int searchOnTick(long tickOffset) {
+		return tempos[segmentOnTick(tickOffset)];
+	}
+
+	/**
+	 * 指定したtickオフセット位置の先頭からの時間を返します.
+	 * @param tickOffset
+	 * @return 先頭からの時間（マイクロ秒）
+	 */
+	public long getMicrosecondOnTickOffset(long tickOffset) {
+		int i = segmentOnTick(tickOffset);
+		return times[i] + tickToMicrosecond(tickOffset - ticks[i], tempos[i]);
+	}
+
+	/**
+	 * 指定した時間からtickオフセットを返します.
+	 * @param time 先頭からの時間（マイクロ秒）
+	 * @return
+	 */
+	public long getTickOffsetOnMicrosecond(long time) {
+		int i = segmentOnTime(time);
+		return ticks[i] + (time - times[i]) * TICKS_PER_BEAT * tempos[i] / MINUTE_US;
+	}
+
+	/**
+	 * 指定したtickオフセット位置の先頭からの時間を返します.
+	 * @param tickOffset
+	 * @return 先頭からの時間（ms）
+	 */
+	public long getTimeOnTickOffset(long tickOffset) {
+		return getMicrosecondOnTickOffset(tickOffset) / 1000;
+	}
+
+	/**
+	 * 指定した時間からtickオフセットを返します.
+	 * @param time 先頭からの時間（ms）
+	 * @return
+	 */
+	public long getTickOffsetOnTime(long time) {
+		return getTickOffsetOnMicrosecond(time * 1000);
+	}
+
+	/**
+	 * @return 最後のテンポ
+	 */
+	public int getLastTempo() {
+		return tempos[tempos.length-1];
+	}
+}
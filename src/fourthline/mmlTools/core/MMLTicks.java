@@ -5,7 +5,9 @@
 package fourthline.mmlTools.core;
 
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import fourthline.mmlTools.UndefinedTickException;
 
@@ -16,181 +18,256 @@ import fourthline.mmlTools.UndefinedTickException;
  */
 public final class MMLTicks {
 
+	/**
+	 * 音長指定の最大値 (1~64)
+	 */
+	public static final int MAX_LENGTH = 64;
+
 	/**
 	 * For MML text -> tick
+	 * 音長指定の数値をindexとするtick値. 付点なし, 付点ありの2つ. (未定義は 0)
 	 */
-	private static final HashMap<String, Integer> tickTable = new HashMap<>();
+	private static final int tickTable[] = new int[MAX_LENGTH+1];
+	private static final int dotTickTable[] = new int[MAX_LENGTH+1];
 
 	/**
 	 * For tick -> MML text
+	 * tick値をindexとするMML文字列. (未定義は null)
 	 */
-	private static final HashMap<Integer, String> tickInvTable = new HashMap<>();
+	private static final String tickInvTable[] = new String[576+1];
+
+	private static final int minimumTick;
 
 
 	static {
-		add("1.", 576);
-		add("2.", 288);
-		add("3.", 192);
-		add("4.", 144);
-		add("5.", 114);
-		add("6.", 96);
-		add("7.", 81);
-		add("8.", 72);
-		add("9.", 63);
-		add("10.", 57);
-		add("11.", 51);
-		add("12.", 48);
-		add("13.", 43);
-		add("14.", 40);
-		add("15.", 37);
-		add("16.", 36);
-		add("17.", 33);
-		add("18.", 31);
-		add("19.", 30);
-		add("20.", 28);
-		add("21.", 27);
-		add("22.", 25);
-		add("23.", 24);
-		add("24.", 24);
-		add("25.", 22);
-		add("26.", 21);
-		add("27.", 21);
-		add("28.", 19);
-		add("29.", 19);
-		add("30.", 18);
-		add("31.", 18);
-		add("32.", 18);
-		add("33.", 16);
-		add("34.", 16);
-		add("35.", 15);
-		add("36.", 15);
-		add("37.", 15);
-		add("38.", 15);
-		add("39.", 13);
-		add("40.", 13);
-		add("41.", 13);
-		add("42.", 13);
-		add("43.", 12);
-		add("44.", 12);
-		add("45.", 12);
-		add("46.", 12);
-		add("47.", 12);
-		add("48.", 12);
-		add("49.", 10);
-		add("50.", 10);
-		add("51.", 10);
-		add("52.", 10);
-		add("53.", 10);
-		add("54.", 10);
-		add("55.", 9);
-		add("56.", 9);
-		add("57.", 9);
-		add("58.", 9);
-		add("59.", 9);
-		add("60.", 9);
-		add("61.", 9);
-		add("62.", 9);
-		add("63.", 9);
-		add("64.", 9);
-
-		add("1", 384);
-		add("2", 192);
-		add("3", 128);
-		add("4", 96);
-		add("5", 76);
-		add("6", 64);
-		add("7", 54);
-		add("8", 48);
-		add("9", 42);
-		add("10", 38);
-		add("11", 34);
-		add("12", 32);
-		add("13", 29);
-		add("14", 27);
-		add("15", 25);
-		add("16", 24);
-		add("17", 22);
-		add("18", 21);
-		add("19", 20);
-		add("20", 19);
-		add("21", 18);
-		add("22", 17);
-		add("23", 16);
-		add("24", 16);
-		add("25", 15);
-		add("26", 14);
-		add("27", 14);
-		add("28", 13);
-		add("29", 13);
-		add("30", 12);
-		add("31", 12);
-		add("32", 12);
-		add("33", 11);
-		add("34", 11);
-		add("35", 10);
-		add("36", 10);
-		add("37", 10);
-		add("38", 10);
-		add("39", 9);
-		add("40", 9);
-		add("41", 9);
-		add("42", 9);
-		add("43", 8);
-		add("44", 8);
-		add("45", 8);
-		add("46", 8);
-		add("47", 8);
-		add("48", 8);
-		add("49", 7);
-		add("50", 7);
-		add("51", 7);
-		add("52", 7);
-		add("53", 7);
-		add("54", 7);
-		add("55", 6);
-		add("56", 6);
-		add("57", 6);
-		add("58", 6);
-		add("59", 6);
-		add("60", 6);
-		add("61", 6);
-		add("62", 6);
-		add("63", 6);
-		add("64", 6);
+		add(1, true, 576);
+		add(2, true, 288);
+		add(3, true, 192);
+		add(4, true, 144);
+		add(5, true, 114);
+		add(6, true, 96);
+		add(7, true, 81);
+		add(8, true, 72);
+		add(9, true, 63);
+		add(10, true, 57);
+		add(11, true, 51);
+		add(12, true, 48);
+		add(13, true, 43);
+		add(14, true, 40);
+		add(15, true, 37);
+		add(16, true, 36);
+		add(17, true, 33);
+		add(18, true, 31);
+		add(19, true, 30);
+		add(20, true, 28);
+		add(21, true, 27);
+		add(22, true, 25);
+		add(23, true, 24);
+		add(24, true, 24);
+		add(25, true, 22);
+		add(26, true, 21);
+		add(27, true, 21);
+		add(28, true, 19);
+		add(29, true, 19);
+		add(30, true, 18);
+		add(31, true, 18);
+		add(32, true, 18);
+		add(33, true, 16);
+		add(34, true, 16);
+		add(35, true, 15);
+		add(36, true, 15);
+		add(37, true, 15);
+		add(38, true, 15);
+		add(39, true, 13);
+		add(40, true, 13);
+		add(41, true, 13);
+		add(42, true, 13);
+		add(43, true, 12);
+		add(44, true, 12);
+		add(45, true, 12);
+		add(46, true, 12);
+		add(47, true, 12);
+		add(48, true, 12);
+		add(49, true, 10);
+		add(50, true, 10);
+		add(51, true, 10);
+		add(52, true, 10);
+		add(53, true, 10);
+		add(54, true, 10);
+		add(55, true, 9);
+		add(56, true, 9);
+		add(57, true, 9);
+		add(58, true, 9);
+		add(59, true, 9);
+		add(60, true, 9);
+		add(61, true, 9);
+		add(62, true, 9);
+		add(63, true, 9);
+		add(64, true, 9);
+
+		add(1, false, 384);
+		add(2, false, 192);
+		add(3, false, 128);
+		add(4, false, 96);
+		add(5, false, 76);
+		add(6, false, 64);
+		add(7, false, 54);
+		add(8, false, 48);
+		add(9, false, 42);
+		add(10, false, 38);
+		add(11, false, 34);
+		add(12, false, 32);
+		add(13, false, 29);
+		add(14, false, 27);
+		add(15, false, 25);
+		add(16, false, 24);
+		add(17, false, 22);
+		add(18, false, 21);
+		add(19, false, 20);
+		add(20, false, 19);
+		add(21, false, 18);
+		add(22, false, 17);
+		add(23, false, 16);
+		add(24, false, 16);
+		add(25, false, 15);
+		add(26, false, 14);
+		add(27, false, 14);
+		add(28, false, 13);
+		add(29, false, 13);
+		add(30, false, 12);
+		add(31, false, 12);
+		add(32, false, 12);
+		add(33, false, 11);
+		add(34, false, 11);
+		add(35, false, 10);
+		add(36, false, 10);
+		add(37, false, 10);
+		add(38, false, 10);
+		add(39, false, 9);
+		add(40, false, 9);
+		add(41, false, 9);
+		add(42, false, 9);
+		add(43, false, 8);
+		add(44, false, 8);
+		add(45, false, 8);
+		add(46, false, 8);
+		add(47, false, 8);
+		add(48, false, 8);
+		add(49, false, 7);
+		add(50, false, 7);
+		add(51, false, 7);
+		add(52, false, 7);
+		add(53, false, 7);
+		add(54, false, 7);
+		add(55, false, 6);
+		add(56, false, 6);
+		add(57, false, 6);
+		add(58, false, 6);
+		add(59, false, 6);
+		add(60, false, 6);
+		add(61, false, 6);
+		add(62, false, 6);
+		add(63, false, 6);
+		add(64, false, 6);
+
+		int minimum = Integer.MAX_VALUE;
+		for (int i = 1; i <= MAX_LENGTH; i++) {
+			minimum = Math.min(minimum, Math.min(tickTable[i], dotTickTable[i]));
+		}
+		minimumTick = minimum;
 	}
 
-	static private void add(String s, Integer value) {
-		tickTable.put(s, value);
+	static private void add(int length, boolean dot, int value) {
+		String s = dot ? (length + ".") : String.valueOf(length);
+		if (dot) {
+			dotTickTable[length] = value;
+		} else {
+			tickTable[length] = value;
+		}
 
-		String invText = tickInvTable.get(value);
+		String invText = tickInvTable[value];
 		if ( (invText == null) || (s.length() <= invText.length()) ) {
-			tickInvTable.put(value, s);
+			tickInvTable[value] = s;
+		}
+	}
+
+	/**
+	 * 音長の数値と付点指定からtick長を取得します.
+	 * @param length 音長 (1~64)
+	 * @param dot 付点指定
+	 * @return tick長
+	 * @throws UndefinedTickException
+	 */
+	static public int getTick(int length, boolean dot) throws UndefinedTickException {
+		if ( (length <= 0) || (length > MAX_LENGTH) ) {
+			throw new UndefinedTickException(dot ? (length + ".") : String.valueOf(length));
 		}
+
+		return dot ? dotTickTable[length] : tickTable[length];
 	}
 
 	static public int getTick(String gt) throws UndefinedTickException {
-		String str = gt;
-		while (!tickTable.containsKey(str)) {
-			int len = str.length();
-			if (len > 1) {
-				str = str.substring(0, len - 1);
-			} else {
-				throw new UndefinedTickException(gt);
+		return getTick(gt, 0, gt.length());
+	}
+
+	/**
+	 * 文字列の指定範囲のMML音長表記をtick長に変換します.
+	 * 末尾の解釈できない文字は無視します. ( "8.." は "8." , "123" は "12" として扱います. )
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return tick長
+	 * @throws UndefinedTickException
+	 */
+	static public int getTick(CharSequence s, int start, int end) throws UndefinedTickException {
+		// 先頭2桁まで (3桁以上の数値は音長として定義されていない)
+		int digits = 0;
+		int value = 0;
+		int index = start;
+		for ( ; (index < end) && (digits < 3); index++) {
+			char ch = s.charAt(index);
+			if ( (ch < '0') || (ch > '9') ) {
+				break;
 			}
+			value = value * 10 + (ch - '0');
+			digits++;
 		}
 
-		return tickTable.get(str);
-	}
+		if ( (digits == 0) || (s.charAt(start) == '0') ) {
+			throw new UndefinedTickException(s.subSequence(start, end).toString());
+		}
 
-	static public int minimumTick() {
-		Integer minimum = null;
-		for (Integer i : tickTable.values()) {
-			if ( (minimum == null) || (i < minimum) ) {
-				minimum = i;
+		if (digits <= 2) {
+			if ( (value <= MAX_LENGTH) && (index < end) && (s.charAt(index) == '.') ) {
+				return dotTickTable[value];
 			}
+		} else {
+			value /= 10;
 		}
 
-		return minimum;
+		if (value > MAX_LENGTH) {
+			value /= 10;
+		}
+		return tickTable[value];
+	}
+
+	/**
+	 * @return 定義されている最小のtick長
+	 */
+	static public int minimumTick() {
+		return minimumTick;
+	}
+
+	/**
+	 * tick長に対応する最短のMML音長表記を取得します.
+	 * @param tick
+	 * @return 対応する音長表記がない場合は null
+	 */
+	static private String tickInvText(int tick) {
+		if ( (tick <= 0) || (tick >= tickInvTable.length) ) {
+			return null;
+		}
+		return tickInvTable[tick];
 	}
 
 
@@ -235,39 +312,132 @@ public final class MMLTicks {
 	 * @throws UndefinedTickException
 	 */
 	public String toMMLText() throws UndefinedTickException {
+		return appendMMLText(new StringBuilder(), noteName, tick, needTie).toString();
+	}
+
+	/**
+	 * noteNameとtickをMMLの文字列に変換して, 指定のStringBuilderに追加します.
+	 * @param sb
+	 * @param noteName
+	 * @param tick
+	 * @param needTie noteNameを連結するときに tie が必要かどうかを指定します. 休符 or 音量ゼロのときは, falseを指定してください.
+	 * @return sb
+	 * @throws UndefinedTickException 変換できないtick長のとき. このとき sb は変更しません.
+	 */
+	public static StringBuilder appendMMLText(StringBuilder sb, String noteName, int tick, boolean needTie) throws UndefinedTickException {
+		// "1." の繰り返し
+		int count = 0;
 		int remTick = tick;
-		StringBuilder sb = new StringBuilder();
+		while (remTick > (tickTable[1]*2)) {
+			remTick -= dotTickTable[1];
+			count++;
+		}
 
-		// "1."
-		int mTick = getTick("1.");
-		int tick1 = getTick("1");
-		while (remTick > (tick1*2)) {
-			sb.append( mmlNotePart("1.") );
-			remTick -= mTick;
+		LengthSequence sequence = lengthSequence(remTick);
+		if (sequence.remTick > 0) {
+			throw new UndefinedTickException(sequence.remTick + "/" + tick);
 		}
 
-		// 1~64の分割
+		boolean first = true;
+		for (int i = 0; i < count; i++) {
+			appendNotePart(sb, noteName, "1.", needTie && !first);
+			first = false;
+		}
+		for (String length : sequence.lengths) {
+			appendNotePart(sb, noteName, length, needTie && !first);
+			first = false;
+		}
+
+		return sb;
+	}
+
+	private static void appendNotePart(StringBuilder sb, String noteName, String length, boolean tie) {
+		if (tie) {
+			sb.append('&');
+		}
+		sb.append(noteName).append(length);
+	}
+
+	/**
+	 * tick長を分解した音長表記の列.
+	 */
+	private static final class LengthSequence {
+		private final String lengths[];
+		private final int remTick; // 分解できずに残ったtick
+
+		private LengthSequence(String lengths[], int remTick) {
+			this.lengths = lengths;
+			this.remTick = remTick;
+		}
+	}
+
+	/**
+	 * 分解キャッシュ. "1." の繰り返しを除いた残りは 1~2小節 (tickTable[1]*2) 以下になるため, その範囲をすべて保持します.
+	 */
+	private static final AtomicReferenceArray<LengthSequence> lengthSequenceCache = new AtomicReferenceArray<>(tickTable[1]*2+1);
+	private static final AtomicLong cacheHitCount = new AtomicLong();
+	private static final AtomicLong cacheMissCount = new AtomicLong();
+
+	private static LengthSequence lengthSequence(int tick) {
+		if ( (tick < 0) || (tick >= lengthSequenceCache.length()) ) {
+			return createLengthSequence(tick);
+		}
+
+		LengthSequence sequence = lengthSequenceCache.get(tick);
+		if (sequence != null) {
+			cacheHitCount.incrementAndGet();
+		} else {
+			cacheMissCount.incrementAndGet();
+			sequence = createLengthSequence(tick);
+			lengthSequenceCache.set(tick, sequence);
+		}
+		return sequence;
+	}
+
+	/**
+	 * 1~64の分割
+	 */
+	private static LengthSequence createLengthSequence(int tick) {
+		int remTick = tick;
+		ArrayList<String> list = new ArrayList<>();
+
 		for (int base = 1; base <= 64; base *= 2) {
-			int baseTick = getTick(""+base);
-			if (tickInvTable.containsKey(remTick)) {
-				sb.append( mmlNotePart(tickInvTable.get(remTick)) );
+			int baseTick = tickTable[base];
+			String invText = tickInvText(remTick);
+			if (invText != null) {
+				list.add(invText);
 				remTick = 0;
 				break;
 			}
 			while (remTick >= baseTick) {
-				sb.append( mmlNotePart(""+base) );
+				list.add(String.valueOf(base));
 				remTick -= baseTick;
 			}
 		}
-		if (remTick > 0) {
-			throw new UndefinedTickException(remTick + "/" + tick);
-		}
 
-		if (needTie) {
-			return sb.substring(1);
-		} else {
-			return sb.toString();
-		}
+		return new LengthSequence(list.toArray(new String[list.size()]), remTick);
+	}
+
+	/**
+	 * @return 分解キャッシュのヒット数
+	 */
+	public static long getCacheHitCount() {
+		return cacheHitCount.get();
+	}
+
+	/**
+	 * @return 分解キャッシュのミス数
+	 */
+	public static long getCacheMissCount() {
+		return cacheMissCount.get();
+	}
+
+	/**
+	 * 分解キャッシュのヒット数, ミス数をリセットします.
+	 */
+	public static void resetCacheCount() {
+		cacheHitCount.set(0);
+		cacheMissCount.set(0);
 	}
 
 	/**
@@ -6,18 +6,50 @@ package fourthline.mmlTools.core;
 
 import java.util.Iterator;
 
+import fourthline.mmlTools.UndefinedTickException;
+
 
 /**
  * MML命令の分割
+ * <p>
+ * {@link #next()} による文字列トークンの取得のほかに, 文字列を生成しないカーソル方式
+ * ({@link #nextToken()}) での走査ができます.
+ * </p>
  * @author たんらる
  */
 public final class MMLTokenizer implements Iterator<String> {
 	static private final String noteString = "abcdefgABCDEFGnNrR";
 	static private final String tokenString = noteString + "tToOlLvV<>&";
+
+	// 文字種別テーブル (ASCII)
+	static private final byte CLASS_TOKEN = 0x01;
+	static private final byte CLASS_NOTE  = 0x02;
+	static private final byte CLASS_DIGIT = 0x04;
+	static private final byte charClass[] = new byte[128];
+	static {
+		for (char ch : tokenString.toCharArray()) {
+			charClass[ch] |= CLASS_TOKEN;
+		}
+		for (char ch : noteString.toCharArray()) {
+			charClass[ch] |= CLASS_NOTE;
+		}
+		for (char ch = '0'; ch <= '9'; ch++) {
+			charClass[ch] |= CLASS_DIGIT;
+		}
+	}
+
+	// int に収まる桁数. これを超える桁は数値として扱わない.
+	static private final int MAX_NUMBER_DIGITS = 9;
+
 	private final String mml_src;
 	int startIndex = 0;
 	int endIndex = 0;
 
+	// カーソル方式の解析結果
+	private int argumentIndex = 0;
+	private int numberEndIndex = 0;
+	private int number = -1;
+
 	public MMLTokenizer(String src) {
 		mml_src = src;
 	}
@@ -42,6 +74,209 @@ public final class MMLTokenizer implements Iterator<String> {
 	public void remove() {
 		startIndex = 0;
 		endIndex = 0;
+		argumentIndex = 0;
+		numberEndIndex = 0;
+		number = -1;
+	}
+
+	/**
+	 * カーソル方式で次のトークンへ進みます. トークン文字列の生成は行いません.
+	 * トークンの内容は {@link #getTokenKind()}, {@link #getNumber()} などで取得します.
+	 * @return 次のトークンがない場合は false
+	 */
+	public boolean nextToken() {
+		if (!hasNext()) {
+			return false;
+		}
+
+		startIndex = endIndex;
+		endIndex = searchToken(endIndex+1);
+		parseArgument();
+		return true;
+	}
+
+	/**
+	 * トークンの引数部分（音名・コマンド文字の後ろ）を解析します.
+	 */
+	private void parseArgument() {
+		char ch = mml_src.charAt(startIndex);
+		int index = startIndex + 1;
+		if ( isNote(ch) && (ch != 'n') && (ch != 'N') && (index < endIndex) ) {
+			char note2 = mml_src.charAt(index);
+			if ( (note2 == '+') || (note2 == '-') || (note2 == '#') ) {
+				index++;
+			}
+		}
+		argumentIndex = index;
+
+		int value = 0;
+		for ( ; index < endIndex; index++) {
+			ch = mml_src.charAt(index);
+			if ( (ch >= 128) || ((charClass[ch] & CLASS_DIGIT) == 0) ) {
+				break;
+			}
+			if (index - argumentIndex < MAX_NUMBER_DIGITS) {
+				value = value * 10 + (ch - '0');
+			}
+		}
+		numberEndIndex = index;
+		number = (index > argumentIndex) ? value : -1;
+	}
+
+	/**
+	 * カーソル位置のトークン種別を取得します.
+	 * @return トークン先頭の文字を小文字にしたもの ('a'~'g', 'n', 'r', 't', 'o', 'l', 'v', '<', '>', '&')
+	 */
+	public char getTokenKind() {
+		return Character.toLowerCase(mml_src.charAt(startIndex));
+	}
+
+	/**
+	 * カーソル位置のトークン先頭の文字を取得します.
+	 * @return トークン先頭の文字
+	 */
+	public char getTokenChar() {
+		return mml_src.charAt(startIndex);
+	}
+
+	/**
+	 * @return ノートの変化記号 ('+', '-', '#'). ない場合は ' '.
+	 */
+	public char getAccidental() {
+		if (argumentIndex > startIndex+1) {
+			return mml_src.charAt(startIndex+1);
+		}
+		return ' ';
+	}
+
+	/**
+	 * @return カーソル位置のトークンがノート（休符を含む）のとき true
+	 */
+	public boolean isNoteToken() {
+		return isNote(mml_src.charAt(startIndex));
+	}
+
+	/**
+	 * @return カーソル位置のトークンの開始index
+	 */
+	public int getTokenStart() {
+		return startIndex;
+	}
+
+	/**
+	 * @return カーソル位置のトークンの終了index（このindexは含まない）
+	 */
+	public int getTokenEnd() {
+		return endIndex;
+	}
+
+	/**
+	 * 引数部分の開始indexを取得します.
+	 * ノートの場合は音名（'+', '-', '#' を含む）の後ろ, コマンドの場合はコマンド文字の後ろです.
+	 * @return 引数部分の開始index
+	 */
+	public int getArgumentStart() {
+		return argumentIndex;
+	}
+
+	/**
+	 * @return 引数部分の先頭にある数値. 数値がない場合は -1.
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return 引数部分の先頭にある数値の終了index
+	 */
+	public int getNumberEnd() {
+		return numberEndIndex;
+	}
+
+	/**
+	 * @return 数値の直後（数値がない場合は引数部分の先頭）に付点 '.' があるとき true
+	 */
+	public boolean hasDot() {
+		return (numberEndIndex < endIndex) && (mml_src.charAt(numberEndIndex) == '.');
+	}
+
+	/**
+	 * 引数部分がすべて数値であるかどうかを判定します.
+	 * @return true のとき, {@link #getNumber()} は {@code Integer.parseInt()} と同じ値です.
+	 */
+	public boolean isNumberOnly() {
+		return (number >= 0) && (numberEndIndex == endIndex) && (endIndex - argumentIndex <= MAX_NUMBER_DIGITS);
+	}
+
+	/**
+	 * 引数部分が指定の文字列と一致するかどうかを判定します.
+	 * @param s
+	 * @return
+	 */
+	public boolean argumentEquals(String s) {
+		int length = endIndex - argumentIndex;
+		return (length == s.length()) && mml_src.regionMatches(argumentIndex, s, 0, length);
+	}
+
+	/**
+	 * 引数部分が指定の文字列（付点指定のときは末尾に '.' を加えたもの）と一致するかどうかを判定します.
+	 * @param s
+	 * @param dot
+	 * @return
+	 */
+	public boolean argumentEquals(String s, boolean dot) {
+		if (!dot) {
+			return argumentEquals(s);
+		}
+		int length = s.length();
+		return (endIndex - argumentIndex == length + 1)
+				&& mml_src.regionMatches(argumentIndex, s, 0, length)
+				&& (mml_src.charAt(endIndex-1) == '.');
+	}
+
+	/**
+	 * 引数部分を音長表記として, tick長を取得します.
+	 * @return tick長
+	 * @throws UndefinedTickException
+	 * @see MMLTicks#getTick(CharSequence, int, int)
+	 */
+	public int getLengthTick() throws UndefinedTickException {
+		return MMLTicks.getTick(mml_src, argumentIndex, endIndex);
+	}
+
+	/**
+	 * 引数部分の文字列を取得します.
+	 * @return
+	 */
+	public String getArgument() {
+		return mml_src.substring(argumentIndex, endIndex);
+	}
+
+	/**
+	 * カーソル位置のトークンを追加します.
+	 * @param sb
+	 * @return sb
+	 */
+	public StringBuilder appendToken(StringBuilder sb) {
+		return sb.append(mml_src, startIndex, endIndex);
+	}
+
+	/**
+	 * カーソル位置のトークンの引数部分を除いた部分（音名・コマンド文字）を追加します.
+	 * @param sb
+	 * @return sb
+	 */
+	public StringBuilder appendTokenName(StringBuilder sb) {
+		return sb.append(mml_src, startIndex, argumentIndex);
+	}
+
+	/**
+	 * カーソル位置のトークンの引数部分を追加します.
+	 * @param sb
+	 * @return sb
+	 */
+	public StringBuilder appendArgument(StringBuilder sb) {
+		return sb.append(mml_src, argumentIndex, endIndex);
 	}
 
 	/**
@@ -53,14 +288,14 @@ public final class MMLTokenizer implements Iterator<String> {
 	}
 
 	static public boolean isToken(char ch) {
-		if (tokenString.indexOf(ch) < 0)
+		if ( (ch >= 128) || ((charClass[ch] & CLASS_TOKEN) == 0) )
 			return false;
 
 		return true;
 	}
 
 	static public boolean isNote(char ch) {
-		if (noteString.indexOf(ch) < 0)
+		if ( (ch >= 128) || ((charClass[ch] & CLASS_NOTE) == 0) )
 			return false;
 
 		return true;
@@ -24,6 +24,9 @@ public class MelodyParser {
 	private int mml_length = -1; // for tick
 	private int mml_oct = 4;
 
+	private int mml_L_tick = -1;
+	private int mml_L_dotTick = -1;
+
 	private int tempo;
 	private final Map<Integer, Integer> tempoList = new TreeMap<>(); // <tick, tempo>
 
@@ -47,7 +50,7 @@ public class MelodyParser {
 		else
 			mml_src = mml;
 
-		this.mml_L = mml_L;
+		setMmlL(mml_L);
 		this.tempo = tempo;
 
 		tempoList.put(0, tempo); // initial tempo
@@ -148,7 +151,7 @@ public class MelodyParser {
 			if ( now_elem.getValue().equals(pre_elem.getValue()) ) 
 				continue; // now tempo == pre tempo
 
-			length_total += (now_elem.getKey() - pre_elem.getKey())*60 / pre_elem.getValue();
+			length_total += (now_elem.getKey() - pre_elem.getKey()) * 60.0 / pre_elem.getValue();
 
 			pre_elem = now_elem;
 		}
@@ -164,6 +167,29 @@ public class MelodyParser {
 		return tick;
 	}
 
+	/**
+	 * 現在のL指定の長さ (mml_L) のtick. 付点指定のときは mml_L+"." のtick.
+	 */
+	private int mmlLGT(boolean dot) throws UndefinedTickException {
+		if (dot) {
+			if (mml_L_dotTick < 0) {
+				mml_L_dotTick = mmlGT(mml_L+".");
+			}
+			return mml_L_dotTick;
+		} else {
+			if (mml_L_tick < 0) {
+				mml_L_tick = mmlGT(mml_L);
+			}
+			return mml_L_tick;
+		}
+	}
+
+	private void setMmlL(String mml_L) {
+		this.mml_L = mml_L;
+		mml_L_tick = -1;
+		mml_L_dotTick = -1;
+	}
+
 	/**
 	 * ノートのmin, maxを記録する
 	 * @param note
@@ -219,18 +245,11 @@ public class MelodyParser {
 		switch(note.charAt(0)) {
 		case 'l': 
 		case 'L':
-			mml_L = note.substring(1);
+			setMmlL(note.substring(1));
 			break;
 		case 't':
 		case 'T':
-			int temp = Integer.parseInt( note.substring(1) );
-			tempoList.put(mml_length, temp);
-			if ( (temp <= 255) && (temp >= 32) ) {
-				this.tempo = temp;
-			}
-			if ( (this.playingNote == 'r') || (this.playingNote == 'R') ) {
-				throw new ParserWarn3ML();
-			}
+			tempoOperation( Integer.parseInt( note.substring(1) ) );
 			break;
 		case 'o':
 		case 'O':
@@ -251,6 +270,55 @@ public class MelodyParser {
 		}
 	}
 
+	/**
+	 * カーソル位置のトークンに対する {@link #mmlOperation(String)}
+	 */
+	private void mmlOperation(MMLTokenizer tokenizer) throws ParserWarn3ML {
+		switch(tokenizer.getTokenKind()) {
+		case 'l': 
+			setMmlL(tokenizer.getArgument());
+			break;
+		case 't':
+			tempoOperation( numberArgument(tokenizer) );
+			break;
+		case 'o':
+			mml_oct = numberArgument(tokenizer);
+			break;
+		case '<':
+			if (mml_oct > 0) {
+				mml_oct--;
+			}
+			break;
+		case '>':
+			if (mml_oct < 8) {
+				mml_oct++;
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * 数値引数の取得. 数値のみでない引数は {@code Integer.parseInt()} の結果と同じ扱いにします.
+	 */
+	protected static int numberArgument(MMLTokenizer tokenizer) throws NumberFormatException {
+		if (tokenizer.isNumberOnly()) {
+			return tokenizer.getNumber();
+		}
+		return Integer.parseInt( tokenizer.getArgument() );
+	}
+
+	private void tempoOperation(int temp) throws ParserWarn3ML {
+		tempoList.put(mml_length, temp);
+		if ( (temp <= 255) && (temp >= 32) ) {
+			this.tempo = temp;
+		}
+		if ( (this.playingNote == 'r') || (this.playingNote == 'R') ) {
+			throw new ParserWarn3ML();
+		}
+	}
+
 	public int noteGT(String note) throws UndefinedTickException, ParserWarn3ML {
 		if (!MMLTokenizer.isNote(note.charAt(0))) {
 			mmlOperation(note);
@@ -295,6 +363,46 @@ public class MelodyParser {
 		return mmlGT(gt);
 	}
 
+	/**
+	 * カーソル位置のトークンに対する {@link #noteGT(String)}.
+	 * トークン文字列を生成せずに解析します. ( {@link #getGt()} は更新しません. )
+	 * @param tokenizer {@link MMLTokenizer#nextToken()} で位置づけたtokenizer
+	 * @return ノートのtick長. ノート以外は0.
+	 * @throws UndefinedTickException
+	 * @throws ParserWarn3ML
+	 */
+	public int noteGT(MMLTokenizer tokenizer) throws UndefinedTickException, ParserWarn3ML {
+		if (!tokenizer.isNoteToken()) {
+			mmlOperation(tokenizer);
+			return 0;
+		}
+
+		this.playingNote = tokenizer.getTokenChar();
+		char kind = tokenizer.getTokenKind();
+
+		if (kind == 'n') {
+			noteNumber = numberArgument(tokenizer);
+			noteMinMax( noteNumber );
+			return mmlLGT(false);
+		}
+
+		int noteIndex = noteIndex(this.playingNote, tokenizer.getAccidental());
+		noteNumber = mml_oct * 12 + noteIndex;
+		if (kind != 'r') {
+			noteMinMax( noteNumber );
+		} else {
+			noteNumber = -1;
+		}
+
+		if (tokenizer.getArgumentStart() >= tokenizer.getTokenEnd()) {
+			return mmlLGT(false);
+		} else if ( (tokenizer.getNumber() < 0) && tokenizer.hasDot() ) {
+			return mmlLGT(true);
+		}
+
+		return tokenizer.getLengthTick();
+	}
+
 	protected void reset() {
 		mml_length = 0;
 		warnIndex.removeAll(warnIndex);
@@ -308,15 +416,12 @@ public class MelodyParser {
 		MMLTokenizer mt = new MMLTokenizer(mml_src);
 		reset();
 
-		while (mt.hasNext()) {
-			int parseIndex[] = mt.getIndex();
-			String item = mt.next();
-
+		while (mt.nextToken()) {
 			try {
-				mml_length += noteGT(item);
+				mml_length += noteGT(mt);
 			} catch (ParserWarn3ML warn) {
-				System.err.println(warn.getMessage()+parseIndex[1]);
-				warnIndex.add(parseIndex[1]);
+				System.err.println(warn.getMessage()+mt.getTokenStart());
+				warnIndex.add(mt.getTokenStart());
 			}
 		}
 
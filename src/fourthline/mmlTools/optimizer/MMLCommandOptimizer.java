@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.optimizer;
+
+import java.util.Arrays;
+
+import fourthline.mmlTools.MMLNoteEvent;
+import fourthline.mmlTools.core.MMLTokenizer;
+
+
+/**
+ * オクターブ, 音量コマンドの最適化.
+ * <p>
+ * 相対 ('&lt;', '&gt;') と絶対 ('o') のオクターブ指定のうち短い方を使い, 不要な音量コマンドを取り除きます.
+ * 音長指定のないノートは, 短くなる場合に n&lt;ノート番号&gt; で書きます.
+ * オクターブの状態を (ノート位置, オクターブ) とする動的計画法で, 全体の文字数が最小になるように選びます.
+ * </p>
+ * <p>
+ * {@link MMLStringOptimizer} で音長を最適化したあとのMML文字列に使用します.
+ * </p>
+ */
+public final class MMLCommandOptimizer {
+	private static final int OCTAVE_COUNT = 9;
+	private static final int INITIAL_OCTAVE = 4;
+	private static final int MAX_N_NUMBER = 96;
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** 同じ文字数のときは nノートの少ないものを選ぶため, 文字数にかける重み */
+	private static final long CHAR_WEIGHT = 1L << 32;
+	private static final long INFINITY = Long.MAX_VALUE / 4;
+
+	private static final String noteNameTable[] = {
+		"c", "c+", "d", "d+", "e", "f", "f+", "g", "g+", "a", "a+", "b"
+	};
+
+	// ノートの種類
+	private static final int REST = 0;        // 休符. オクターブに依存しない.
+	private static final int FIXED_N = 1;     // 書き換えないnノート.
+	private static final int NAMED = 2;       // 音名で書くノート.
+	private static final int SELECTABLE = 3;  // 音名, nノートのどちらでも書けるノート.
+
+	private final String originalMML;
+	private String optimizedMML = null;
+
+	// ノートごとの解析結果
+	private int noteCount = 0;
+	private int noteKind[] = new int[INITIAL_CAPACITY];
+	private int noteStart[] = new int[INITIAL_CAPACITY];
+	private int noteArgument[] = new int[INITIAL_CAPACITY];
+	private int noteEnd[] = new int[INITIAL_CAPACITY];
+	private int noteNumber[] = new int[INITIAL_CAPACITY];
+	private int noteOctave[] = new int[INITIAL_CAPACITY];
+	private int noteVolume[] = new int[INITIAL_CAPACITY];
+	private boolean noteFromN[] = new boolean[INITIAL_CAPACITY];
+	private int noteCommand[] = new int[INITIAL_CAPACITY];  // 元のオクターブ, 音量コマンドがあった位置 (残すトークンの番号). なければ -1.
+
+	// 残すトークン (オクターブ, 音量以外) の範囲
+	private int keepCount = 0;
+	private int keepStart[] = new int[INITIAL_CAPACITY];
+	private int keepEnd[] = new int[INITIAL_CAPACITY];
+
+	/**
+	 * @param mml   MML文字列
+	 */
+	public MMLCommandOptimizer(String mml) {
+		originalMML = mml;
+	}
+
+	@Override
+	public String toString() {
+		if (optimizedMML == null) {
+			String s = parse() ? optimize() : null;
+			if ( (s == null) || (s.length() > originalMML.length()) ) {
+				s = originalMML;
+			}
+			optimizedMML = s;
+		}
+
+		return optimizedMML;
+	}
+
+	/**
+	 * @return 最適化で削減した文字数
+	 */
+	public int getSavedLength() {
+		return originalMML.length() - toString().length();
+	}
+
+	/**
+	 * MMLEventParser と同じ規則でオクターブと音量を追跡します.
+	 * @return 最適化できないMML (0~8以外のオクターブのノートがある) の場合は false
+	 */
+	private boolean parse() {
+		MMLTokenizer tokenizer = new MMLTokenizer(originalMML);
+		int octave = INITIAL_OCTAVE;
+		int volume = MMLNoteEvent.INIT_VOL;
+		boolean tie = false;
+		int command = -1;
+
+		while (tokenizer.nextToken()) {
+			char kind = tokenizer.getTokenKind();
+			int start = tokenizer.getTokenStart();
+			int end = tokenizer.getTokenEnd();
+			if ( (command < 0) && ("<>ov".indexOf(kind) >= 0) ) {
+				command = keepCount;
+			}
+			if (kind == '<') {
+				if (octave > 0) {
+					octave--;
+				}
+			} else if (kind == '>') {
+				if (octave < 8) {
+					octave++;
+				}
+			} else if (kind == 'o') {
+				if (!tokenizer.isNumberOnly()) {
+					return false;
+				}
+				octave = tokenizer.getNumber();
+			} else if (kind == 'v') {
+				if (!tokenizer.isNumberOnly()) {
+					return false;
+				}
+				if (tokenizer.getNumber() <= MMLNoteEvent.MAX_VOL) {
+					volume = tokenizer.getNumber();
+				}
+			} else if (tokenizer.isNoteToken()) {
+				int note;
+				if (kind == 'n') {
+					if (!tokenizer.isNumberOnly()) {
+						return false;
+					}
+					note = tokenizer.getNumber();
+				} else if (kind == 'r') {
+					note = -1;
+				} else {
+					if ( (octave < 0) || (octave >= OCTAVE_COUNT) ) {
+						return false;
+					}
+					note = octave * 12 + noteIndex(kind, tokenizer.getAccidental());
+				}
+
+				// タイの前後は書き換えない.
+				if (tie && (noteCount > 0)) {
+					fixNote(noteCount-1);
+				}
+				addNote(kind, start, tokenizer.getArgumentStart(), end, note, octave, volume, tie, command);
+				tie = false;
+				command = -1;
+			} else {
+				if (kind == '&') {
+					tie = true;
+				}
+				addKeep(start, end);
+			}
+		}
+
+		return true;
+	}
+
+	private static int noteIndex(char kind, char accidental) {
+		int index = "c d ef g a b".indexOf(kind);
+		if ( (accidental == '+') || (accidental == '#') ) {
+			index++;
+		} else if (accidental == '-') {
+			index--;
+		}
+		return index;
+	}
+
+	private void addNote(char kind, int start, int argumentStart, int end, int note, int octave, int volume, boolean tie, int command) {
+		if (noteCount >= noteKind.length) {
+			int newLength = noteKind.length * 2;
+			noteKind = Arrays.copyOf(noteKind, newLength);
+			noteStart = Arrays.copyOf(noteStart, newLength);
+			noteArgument = Arrays.copyOf(noteArgument, newLength);
+			noteEnd = Arrays.copyOf(noteEnd, newLength);
+			noteNumber = Arrays.copyOf(noteNumber, newLength);
+			noteOctave = Arrays.copyOf(noteOctave, newLength);
+			noteVolume = Arrays.copyOf(noteVolume, newLength);
+			noteFromN = Arrays.copyOf(noteFromN, newLength);
+			noteCommand = Arrays.copyOf(noteCommand, newLength);
+		}
+
+		int i = noteCount++;
+		noteStart[i] = start;
+		noteArgument[i] = argumentStart;
+		noteEnd[i] = end;
+		noteNumber[i] = note;
+		noteVolume[i] = volume;
+		noteFromN[i] = (kind == 'n');
+		noteCommand[i] = command;
+		if (kind == 'r') {
+			noteKind[i] = REST;
+		} else if (kind == 'n') {
+			boolean named = (note >= 0) && (note < OCTAVE_COUNT * 12);
+			noteKind[i] = (named && !tie) ? SELECTABLE : FIXED_N;
+			noteOctave[i] = named ? (note / 12) : -1;
+		} else {
+			boolean noLength = (argumentStart >= end);
+			noteKind[i] = (noLength && !tie && (note >= 0) && (note <= MAX_N_NUMBER)) ? SELECTABLE : NAMED;
+			noteOctave[i] = octave;
+		}
+	}
+
+	private void fixNote(int i) {
+		if (noteKind[i] == SELECTABLE) {
+			noteKind[i] = noteFromN[i] ? FIXED_N : NAMED;
+		}
+	}
+
+	private void addKeep(int start, int end) {
+		if (keepCount >= keepStart.length) {
+			int newLength = keepStart.length * 2;
+			keepStart = Arrays.copyOf(keepStart, newLength);
+			keepEnd = Arrays.copyOf(keepEnd, newLength);
+		}
+		keepStart[keepCount] = start;
+		keepEnd[keepCount] = end;
+		keepCount++;
+	}
+
+	private static int digitLength(int n) {
+		return Integer.toString(n).length();
+	}
+
+	/**
+	 * @return オクターブ変更の文字数
+	 */
+	private static int octaveCost(int from, int to) {
+		if (from == to) {
+			return 0;
+		}
+		return Math.min(Math.abs(from - to), 1 + digitLength(to));
+	}
+
+	private int nameLength(int i) {
+		if (noteFromN[i]) {
+			return noteNameTable[noteNumber[i] % 12].length();
+		}
+		return noteArgument[i] - noteStart[i];
+	}
+
+	private int nLength(int i) {
+		if (noteFromN[i]) {
+			return noteEnd[i] - noteStart[i];
+		}
+		return 1 + digitLength(noteNumber[i]);
+	}
+
+	private String optimize() {
+		// cost[s]: 直前のノートまでで, オクターブが s のときの最小コスト.
+		long cost[] = new long[OCTAVE_COUNT];
+		long nextCost[] = new long[OCTAVE_COUNT];
+		Arrays.fill(cost, INFINITY);
+		cost[INITIAL_OCTAVE] = 0;
+		byte namedFrom[] = new byte[noteCount];
+		boolean named[] = new boolean[noteCount];
+
+		for (int i = 0; i < noteCount; i++) {
+			int kind = noteKind[i];
+			if ( (kind == REST) || (kind == FIXED_N) ) {
+				continue;
+			}
+
+			// 音名で書く場合: オクターブを合わせる.
+			int octave = noteOctave[i];
+			int from = octave;
+			long best = cost[octave];
+			for (int s = 0; s < OCTAVE_COUNT; s++) {
+				long c = cost[s] + octaveCost(s, octave) * CHAR_WEIGHT;
+				if (c < best) {
+					best = c;
+					from = s;
+				}
+			}
+			namedFrom[i] = (byte) from;
+			long namedCost = best + nameLength(i) * CHAR_WEIGHT;
+
+			if (kind == NAMED) {
+				Arrays.fill(nextCost, INFINITY);
+				nextCost[octave] = namedCost;
+				named[i] = true;
+			} else {
+				// nノートで書く場合: オクターブは変わらない.
+				long nCost = nLength(i) * CHAR_WEIGHT + 1;
+				for (int s = 0; s < OCTAVE_COUNT; s++) {
+					nextCost[s] = Math.min(cost[s] + nCost, INFINITY);
+				}
+				if (namedCost <= nextCost[octave]) {
+					nextCost[octave] = namedCost;
+					named[i] = true;
+				}
+			}
+			long swap[] = cost;
+			cost = nextCost;
+			nextCost = swap;
+		}
+
+		int state = INITIAL_OCTAVE;
+		for (int s = 0; s < OCTAVE_COUNT; s++) {
+			if (cost[s] < cost[state]) {
+				state = s;
+			}
+		}
+
+		// 後ろからたどって, ノートごとに音名で書くかどうかと直前のオクターブを決める.
+		int prevOctave[] = new int[noteCount];
+		for (int i = noteCount-1; i >= 0; i--) {
+			int kind = noteKind[i];
+			if ( (kind == NAMED) || ( (kind == SELECTABLE) && named[i] && (state == noteOctave[i]) ) ) {
+				named[i] = true;
+				state = namedFrom[i];
+			} else {
+				named[i] = false;
+			}
+			prevOctave[i] = state;
+		}
+
+		return buildString(named, prevOctave);
+	}
+
+	private String buildString(boolean named[], int prevOctave[]) {
+		StringBuilder sb = new StringBuilder(originalMML.length());
+		int volume = MMLNoteEvent.INIT_VOL;
+		int keep = 0;
+		for (int i = 0; i < noteCount; i++) {
+			int start = noteStart[i];
+			boolean rest = (noteKind[i] == REST);
+
+			// 前のノートからの間のトークン. オクターブ, 音量は元の位置に置き, '&' より後ろにはしない.
+			int keepEndIndex = keep;
+			int insertIndex = -1;
+			for ( ; (keepEndIndex < keepCount) && (keepStart[keepEndIndex] < start); keepEndIndex++) {
+				if ( (insertIndex < 0) && (originalMML.charAt(keepStart[keepEndIndex]) == '&') ) {
+					insertIndex = keepEndIndex;
+				}
+			}
+			if (insertIndex < 0) {
+				insertIndex = keepEndIndex;
+			}
+			if ( (noteCommand[i] >= 0) && (noteCommand[i] < insertIndex) ) {
+				insertIndex = noteCommand[i];
+			}
+			for ( ; keep < insertIndex; keep++) {
+				sb.append(originalMML, keepStart[keep], keepEnd[keep]);
+			}
+			if (named[i]) {
+				appendOctave(sb, prevOctave[i], noteOctave[i]);
+			}
+			if ( !rest && (noteVolume[i] != volume) ) {
+				volume = noteVolume[i];
+				sb.append('v').append(volume);
+			}
+			for ( ; keep < keepEndIndex; keep++) {
+				sb.append(originalMML, keepStart[keep], keepEnd[keep]);
+			}
+
+			if (rest) {
+				sb.append(originalMML, start, noteEnd[i]);
+			} else if (named[i] && noteFromN[i]) {
+				sb.append(noteNameTable[noteNumber[i] % 12]);
+			} else if (named[i]) {
+				sb.append(originalMML, start, noteEnd[i]);
+			} else if (noteFromN[i]) {
+				sb.append(originalMML, start, noteEnd[i]);
+			} else {
+				sb.append('n').append(noteNumber[i]);
+			}
+		}
+		for ( ; keep < keepCount; keep++) {
+			sb.append(originalMML, keepStart[keep], keepEnd[keep]);
+		}
+
+		return sb.toString();
+	}
+
+	private static void appendOctave(StringBuilder sb, int from, int to) {
+		int diff = to - from;
+		if (diff == 0) {
+			return;
+		}
+		if (Math.abs(diff) <= 1 + digitLength(to)) {
+			char ch = (diff > 0) ? '>' : '<';
+			for (int i = Math.abs(diff); i > 0; i--) {
+				sb.append(ch);
+			}
+		} else {
+			sb.append('o').append(to);
+		}
+	}
+}
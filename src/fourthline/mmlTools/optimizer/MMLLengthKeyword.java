@@ -93,6 +93,9 @@ public final class MMLLengthKeyword {
 	public static void setEnablePrint(boolean b) {
 		enablePrint = b;
 	}
+	public static boolean isEnablePrint() {
+		return enablePrint;
+	}
 	public static void printList(List<MMLLengthKeyword> list) {
 		if (!enablePrint) {
 			return;
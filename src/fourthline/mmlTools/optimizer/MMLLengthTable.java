@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * 音長表記 ("8", "4.", "16" など) を整数コードに対応づけるテーブル.
+ * <p>
+ * 同じ文字列には常に同じコードを割り当てます.
+ * 通常の表記 (先頭0のない数値と付点1つ) は数値と付点の有無から直接引き,
+ * それ以外の表記のみ文字列で管理します.
+ * </p>
+ */
+final class MMLLengthTable {
+	/** 数値と付点から直接引ける音長の上限 */
+	private static final int MAX_FAST_NUMBER = 128;
+
+	private final int fastCode[] = new int[MAX_FAST_NUMBER * 2];
+	private final HashMap<String, Integer> otherCode = new HashMap<>();
+
+	private final ArrayList<String> names = new ArrayList<>();
+	private int nameLength[] = new int[32];
+	private int dotCode[] = new int[32];
+	private int undotCode[] = new int[32];
+	private boolean validLength[] = new boolean[32];
+
+	MMLLengthTable() {
+		Arrays.fill(fastCode, -1);
+	}
+
+	/**
+	 * @return 割り当て済みのコード数
+	 */
+	int size() {
+		return names.size();
+	}
+
+	/**
+	 * @param code
+	 * @return コードに対応する音長表記
+	 */
+	String getName(int code) {
+		return names.get(code);
+	}
+
+	/**
+	 * @param code
+	 * @return 音長表記の文字数
+	 */
+	int getNameLength(int code) {
+		return nameLength[code];
+	}
+
+	/**
+	 * @param code
+	 * @return 数値と付点1つからなる, Lコマンドやノートにそのまま書ける音長表記のとき true
+	 */
+	boolean isValidLength(int code) {
+		return validLength[code];
+	}
+
+	/**
+	 * @param code
+	 * @return 末尾に '.' を加えた音長表記のコード
+	 */
+	int getDotCode(int code) {
+		if (dotCode[code] < 0) {
+			int dot = codeOf(names.get(code) + ".");
+			dotCode[code] = dot;
+		}
+		return dotCode[code];
+	}
+
+	/**
+	 * @param code
+	 * @return 末尾の '.' を除いた音長表記のコード. 末尾が '.' でない場合は -1.
+	 */
+	int getUndotCode(int code) {
+		return undotCode[code];
+	}
+
+	/**
+	 * 文字列の一部を音長表記としてコードを取得します.
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	int codeOf(CharSequence s, int start, int end) {
+		int number = 0;
+		int index = start;
+		for ( ; (index < end) && (index - start < 3); index++) {
+			char ch = s.charAt(index);
+			if ( (ch < '0') || (ch > '9') ) {
+				break;
+			}
+			number = number * 10 + (ch - '0');
+		}
+
+		boolean canonical = (index > start) && ( (s.charAt(start) != '0') || (index - start == 1) );
+		if ( canonical && (number < MAX_FAST_NUMBER) ) {
+			if (index == end) {
+				return fastCodeOf(number, false);
+			} else if ( (index == end-1) && (s.charAt(index) == '.') ) {
+				return fastCodeOf(number, true);
+			}
+		}
+
+		return otherCodeOf(s.subSequence(start, end).toString());
+	}
+
+	/**
+	 * @param name
+	 * @return 音長表記のコード
+	 */
+	int codeOf(String name) {
+		return codeOf(name, 0, name.length());
+	}
+
+	private int fastCodeOf(int number, boolean dot) {
+		int key = (number << 1) | (dot ? 1 : 0);
+		int code = fastCode[key];
+		if (code < 0) {
+			String name = dot ? (number + ".") : Integer.toString(number);
+			code = addName(name);
+			fastCode[key] = code;
+			if (dot) {
+				int undot = fastCodeOf(number, false);
+				undotCode[code] = undot;
+				dotCode[undot] = code;
+			}
+		}
+		return code;
+	}
+
+	private int otherCodeOf(String name) {
+		Integer code = otherCode.get(name);
+		if (code == null) {
+			code = addName(name);
+			otherCode.put(name, code);
+			if (name.endsWith(".")) {
+				int undot = codeOf(name.substring(0, name.length()-1));
+				undotCode[code] = undot;
+			}
+		}
+		return code;
+	}
+
+	private int addName(String name) {
+		int code = names.size();
+		names.add(name);
+		if (code >= nameLength.length) {
+			int newLength = nameLength.length * 2;
+			nameLength = Arrays.copyOf(nameLength, newLength);
+			dotCode = Arrays.copyOf(dotCode, newLength);
+			undotCode = Arrays.copyOf(undotCode, newLength);
+			validLength = Arrays.copyOf(validLength, newLength);
+		}
+		nameLength[code] = name.length();
+		validLength[code] = name.matches("[0-9]+\\.?");
+		dotCode[code] = -1;
+		undotCode[code] = -1;
+		return code;
+	}
+}
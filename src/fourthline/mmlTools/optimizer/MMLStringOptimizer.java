@@ -5,18 +5,23 @@
 package fourthline.mmlTools.optimizer;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 
 import fourthline.mmlTools.core.MMLTokenizer;
 
 
 /**
- * FIXME: 
+ * FIXME:
  * Ln-section merge式
+ * <p>
+ * 音長は {@link MMLLengthTable} の整数コードで扱い, MMLの走査は1回のみ行います.
+ * </p>
  * @author fourthline
  */
 public final class MMLStringOptimizer {
+	private static final int INITIAL_CAPACITY = 64;
+
 	private String originalMML;
 
 	/**
@@ -26,39 +31,204 @@ public final class MMLStringOptimizer {
 		originalMML = mml;
 	}
 
+	/**
+	 * Lコマンドの配置方法
+	 */
+	public enum Mode {
+		/** セクションのマージによる近似. */
+		GREEDY,
+		/** 動的計画法による最短の配置. */
+		OPTIMAL
+	}
+
 	public String toString() {
 		return getOptimizedString();
 	}
 
-	private boolean updateCounter(HashMap<String, Integer> counter, String s) {
-		Integer count = counter.get(s);
-		boolean result = false;
-		if ( (count == null) || (count == 0) ) {
-			count = 0;
-			result = true;
+	/**
+	 * 指定した方法で最適化したMML文字列を取得します.
+	 * @param mode
+	 * @return
+	 */
+	public String optimize(Mode mode) {
+		if (mode == Mode.OPTIMAL) {
+			return getOptimalString();
+		}
+		return getOptimizedString();
+	}
+
+	private final MMLLengthTable lengthTable = new MMLLengthTable();
+
+	// ノートごとの解析結果 (トークン開始index, 引数開始index, トークン終了index, 音長コード)
+	private int noteCount = 0;
+	private int noteStart[] = new int[INITIAL_CAPACITY];
+	private int noteArgument[] = new int[INITIAL_CAPACITY];
+	private int noteEnd[] = new int[INITIAL_CAPACITY];
+	private int noteLength[] = new int[INITIAL_CAPACITY];
+
+	// 入力中のLコマンド (トークン開始index, トークン終了index)
+	private int lCommandCount = 0;
+	private int lCommandStart[] = new int[INITIAL_CAPACITY];
+	private int lCommandEnd[] = new int[INITIAL_CAPACITY];
+
+	// Lセクションのスタック (音長コード, 開始ノートindex, スコア, 削除候補)
+	private int sectionStart = 0;
+	private int sectionCount = 0;
+	private int sectionCode[] = new int[INITIAL_CAPACITY];
+	private int sectionIndex[] = new int[INITIAL_CAPACITY];
+	private int sectionScore[] = new int[INITIAL_CAPACITY];
+	private boolean sectionDelete[];
+
+	/*
+	 * 音長ごとのスコアカウンタ.
+	 * 優先音長のたびに全音長のスコアから一律に減算する (0未満にはしない) ため,
+	 * カウンタには減算の累計 counterOffset を加えた値を保持し, 参照時に
+	 * max(0, counterBase - counterOffset) とします.
+	 * 減算では大小関係が変わらないので, 優先音長以外の上位2つを保持すれば最大値の判定が O(1) になります.
+	 */
+	private int counterBase[];
+	private int counterStamp[];
+	private int countStartIndex[];
+	private int counterKeys[];
+	private int counterKeyCount = 0;
+	private int counterMaxKeyCount = 0;
+	private int counterGeneration = 1;
+	private int counterOffset = 0;
+	private int counterTop1 = -1;
+	private int counterTop2 = -1;
+	private int primaryLength;
+
+	private boolean parsed = false;
+	private void parseLengthArray() {
+		if (parsed) {
+			return;
+		}
+		parsed = true;
+		MMLTokenizer tokenizer = new MMLTokenizer(originalMML);
+		int section = lengthTable.codeOf("4");
+
+		while (tokenizer.nextToken()) {
+			if (tokenizer.isNoteToken()) {
+				int argumentStart = tokenizer.getArgumentStart();
+				int end = tokenizer.getTokenEnd();
+				int length;
+				if (argumentStart >= end) {
+					length = section;
+				} else if (tokenizer.argumentEquals(".")) {
+					length = lengthTable.getDotCode(section);
+				} else {
+					length = lengthTable.codeOf(originalMML, argumentStart, end);
+				}
+				addNote(tokenizer.getTokenStart(), argumentStart, end, length);
+			} else if (tokenizer.getTokenKind() == 'l') {
+				section = lengthTable.codeOf(originalMML, tokenizer.getArgumentStart(), tokenizer.getTokenEnd());
+				addLCommand(tokenizer.getTokenStart(), tokenizer.getTokenEnd());
+			}
 		}
-		count += s.length();
-		counter.put(s, count);
+	}
 
+	private void addNote(int start, int argumentStart, int end, int length) {
+		if (noteCount >= noteStart.length) {
+			int newLength = noteStart.length * 2;
+			noteStart = Arrays.copyOf(noteStart, newLength);
+			noteArgument = Arrays.copyOf(noteArgument, newLength);
+			noteEnd = Arrays.copyOf(noteEnd, newLength);
+			noteLength = Arrays.copyOf(noteLength, newLength);
+		}
+		noteStart[noteCount] = start;
+		noteArgument[noteCount] = argumentStart;
+		noteEnd[noteCount] = end;
+		noteLength[noteCount] = length;
+		noteCount++;
+	}
+
+	private void addLCommand(int start, int end) {
+		if (lCommandCount >= lCommandStart.length) {
+			int newLength = lCommandStart.length * 2;
+			lCommandStart = Arrays.copyOf(lCommandStart, newLength);
+			lCommandEnd = Arrays.copyOf(lCommandEnd, newLength);
+		}
+		lCommandStart[lCommandCount] = start;
+		lCommandEnd[lCommandCount] = end;
+		lCommandCount++;
+	}
+
+	private void addSection(int code, int index, int score) {
+		if (sectionCount >= sectionCode.length) {
+			int newLength = sectionCode.length * 2;
+			sectionCode = Arrays.copyOf(sectionCode, newLength);
+			sectionIndex = Arrays.copyOf(sectionIndex, newLength);
+			sectionScore = Arrays.copyOf(sectionScore, newLength);
+		}
+		sectionCode[sectionCount] = code;
+		sectionIndex[sectionCount] = index;
+		sectionScore[sectionCount] = score;
+		sectionCount++;
+	}
+
+	private boolean hasCounter(int code) {
+		return counterStamp[code] == counterGeneration;
+	}
+
+	private int getCounter(int code) {
+		return Math.max(0, counterBase[code] - counterOffset);
+	}
+
+	private void clearCounter() {
+		counterGeneration++;
+		counterKeyCount = 0;
+		counterOffset = 0;
+		counterTop1 = -1;
+		counterTop2 = -1;
+	}
+
+	/**
+	 * @return 加算前のカウントが0だったとき true
+	 */
+	private boolean updateCounter(int code) {
+		int count = 0;
+		if (hasCounter(code)) {
+			count = getCounter(code);
+		} else {
+			counterStamp[code] = counterGeneration;
+			counterKeys[counterKeyCount++] = code;
+			counterMaxKeyCount = Math.max(counterMaxKeyCount, counterKeyCount);
+		}
+		boolean result = (count == 0);
+		count += lengthTable.getNameLength(code);
+		counterBase[code] = count + counterOffset;
+
+		if (code != primaryLength) {
+			updateCounterTop(code);
+		}
 		return result;
 	}
 
-	private boolean isMaxScore(HashMap<String, Integer> counter, String s) {
-		Collection<String> keys = counter.keySet();
-		int target = counter.get(s) - s.length() - 1;
+	private void updateCounterTop(int code) {
+		if (code == counterTop1) {
+			return;
+		}
+		if ( (counterTop1 < 0) || (counterBase[code] > counterBase[counterTop1]) ) {
+			counterTop2 = counterTop1;
+			counterTop1 = code;
+		} else if ( (code != counterTop2) && ( (counterTop2 < 0) || (counterBase[code] > counterBase[counterTop2]) ) ) {
+			counterTop2 = code;
+		}
+	}
+
+	private boolean isMaxScore(int code) {
+		int target = getCounter(code) - lengthTable.getNameLength(code) - 1;
 
 		if (target < 0) {
 			return false;
 		}
 
-		for (String key : keys) {
-			if (key.equals(s)) {
-				continue;
-			}
-			int score = counter.get(key);
-			if (key.equals(primaryLength)) {
-				score += primaryLength.length() + 1;
-			}
+		int other = (code == counterTop1) ? counterTop2 : counterTop1;
+		if ( (other >= 0) && (target <= getCounter(other)) ) {
+			return false;
+		}
+		if ( (code != primaryLength) && hasCounter(primaryLength) ) {
+			int score = getCounter(primaryLength) + lengthTable.getNameLength(primaryLength) + 1;
 			if (target <= score) {
 				return false;
 			}
@@ -67,270 +237,445 @@ public final class MMLStringOptimizer {
 		return true;
 	}
 
-	private boolean updateScore(String s, int index) {
-		if (updateCounter(counter, s)) {
-			countStartIndex.put(s, index);
+	private boolean updateScore(int code, int index) {
+		if (updateCounter(code)) {
+			countStartIndex[code] = index;
 		}
-		if (isMaxScore(counter, s)) {
-			primaryLength = s;
-			int score = counter.get(s);
-			stack.add(new MMLLengthKeyword(s, countStartIndex.get(s), score));
-			counter.clear();
+		if (isMaxScore(code)) {
+			primaryLength = code;
+			addSection(code, countStartIndex[code], getCounter(code));
+			clearCounter();
 			return true;
 		}
 
 		return false;
 	}
 
+	/**
+	 * 残っているカウンタのうち最大スコアの音長をセクションにします.
+	 * 同点の場合は, 以前の HashMap による実装と出力を一致させるため, 同じ走査順 (ハッシュのバケット順) で先のものを選びます.
+	 */
 	private void endScore() {
-		Collection<String> keys = counter.keySet();
+		int capacity = 16;
+		while (counterMaxKeyCount > capacity * 3 / 4) {
+			capacity <<= 1;
+		}
+
 		int maxScore = 0;
-		String s = null;
-		for (String key : keys) {
-			int score = counter.get(key);
-			if (maxScore < score) {
+		int s = -1;
+		int sBucket = 0;
+		for (int i = 0; i < counterKeyCount; i++) {
+			int key = counterKeys[i];
+			int score = getCounter(key);
+			int h = lengthTable.getName(key).hashCode();
+			int bucket = (h ^ (h >>> 16)) & (capacity - 1);
+			if ( (maxScore < score) || ( (s >= 0) && (maxScore == score) && (bucket < sBucket) ) ) {
 				maxScore = score;
 				s = key;
+				sBucket = bucket;
 			}
 		}
 
-		if (s != null) {
-			stack.add(new MMLLengthKeyword(s, countStartIndex.get(s), maxScore));
+		if (s >= 0) {
+			addSection(s, countStartIndex[s], maxScore);
 		}
 	}
 
-	private void primaryLengthScore() {
-		Collection<String> keys = counter.keySet();
-		int primaryScore = primaryLength.length();
-		for (String key : keys) {
-			int score = counter.get(key).intValue() - primaryScore;
-			if (score < 0) {
-				score = 0;
+	private void optimizedLengthArray() {
+		parseLengthArray();
+		int codeCount = lengthTable.size();
+		counterBase = new int[codeCount];
+		counterStamp = new int[codeCount];
+		countStartIndex = new int[codeCount];
+		counterKeys = new int[codeCount];
+
+		primaryLength = lengthTable.codeOf("4");
+		addSection(primaryLength, 0, 0);
+		for (int i = 0; i < noteCount; i++) {
+			int s = noteLength[i];
+			if (s == primaryLength) {
+				sectionScore[sectionCount-1] += lengthTable.getNameLength(primaryLength);
+				counterOffset += lengthTable.getNameLength(primaryLength);
+			} else {
+				if (!updateScore(s, i)) {
+					int undot = lengthTable.getUndotCode(s);
+					if (undot >= 0) {
+						updateScore(undot, i);
+					}
+				}
 			}
-			counter.put(key, score);
 		}
+
+		endScore();
 	}
 
-	private String primaryLength;
-	private HashMap<String, Integer> counter = new HashMap<>();
-	private HashMap<String, Integer> countStartIndex = new HashMap<>();
-	private ArrayList<MMLLengthKeyword> stack = new ArrayList<>();
+	/**
+	 * 次の同じ音長のセクションとの間にあるセクションのスコアが, L指定の削減量以下であれば削除候補にします.
+	 */
+	private void sectionForwardMerge() {
+		int count = sectionCount;
+		int nextIndex[] = new int[count];
+		int lastIndex[] = new int[lengthTable.size()];
+		Arrays.fill(lastIndex, -1);
+		int scoreSum[] = new int[count+1];
+		int costSum[] = new int[count+1];
+		for (int i = 0; i < count; i++) {
+			scoreSum[i+1] = scoreSum[i] + sectionScore[i];
+			costSum[i+1] = costSum[i] + lengthTable.getNameLength(sectionCode[i]) + 1;
+		}
+		for (int i = count-1; i >= 0; i--) {
+			nextIndex[i] = lastIndex[sectionCode[i]];
+			lastIndex[sectionCode[i]] = i;
+		}
 
+		int mark[] = new int[count+1];
+		for (int i = count-2; i >= 0; i--) {
+			int next = nextIndex[i];
+			if (next < 0) {
+				continue;
+			}
 
-	private String[] parseLengthArray() {
-		MMLTokenizer tokenizer = new MMLTokenizer(originalMML);
-		String section = "4";
-		ArrayList<String> list = new ArrayList<>();
-
-		while (tokenizer.hasNext()) {
-			String token = tokenizer.next();
-			char firstC = token.charAt(0);
-			if (MMLTokenizer.isNote(token.charAt(0))) {
-				String s[] = MMLTokenizer.noteNames(token);
-				String noteLength = s[1];
-				if (noteLength.equals("")) {
-					noteLength = section;
-				} else if (noteLength.equals(".")) {
-					noteLength = section + ".";
-				}
-				list.add(noteLength);
-			} else if ( (firstC == 'l') || (firstC == 'L') ) {
-				section = MMLTokenizer.noteNames(token)[1];
+			int score = scoreSum[next] - scoreSum[i+1];
+			int cost = costSum[next+1] - costSum[i+1];
+			if (score <= cost) {
+				mark[i+1]++;
+				mark[next]--;
 			}
 		}
 
-		String resultArray[] = new String[list.size()];
-		return list.toArray(resultArray);
+		sectionDelete = new boolean[count];
+		int depth = 0;
+		for (int i = 0; i < count; i++) {
+			depth += mark[i];
+			sectionDelete[i] = (depth > 0);
+		}
 	}
 
-	private void optimizedLengthArray() {
-		String originalList[] = parseLengthArray();
-		if (originalList == null) {
+	/**
+	 * 後ろから順に, 次の同じ音長のセクションまでをマージします.
+	 * マージで削除されるのは常に処理位置の直後から続く範囲なので, 処理済みの部分をスタック (先頭が処理位置側) で保持し,
+	 * 区間のスコアとL指定のコストは累積和, 区間の最大スコアはスパーステーブルで求めます.
+	 */
+	private void sectionForwardMerge2() {
+		int count = sectionCount;
+		if (count < 2) {
 			return;
 		}
-		primaryLength = "4";
-		stack.add(new MMLLengthKeyword("4", 0, 0));
-		for (int i = 0; i < originalList.length; i++) {
-			String s = originalList[i];
-			if (s.equals(primaryLength)) {
-				if (stack.size() > 0) {
-					stack.get(stack.size()-1).incrScore();
-				}
-				primaryLengthScore();
-			} else {
-				if (!updateScore(s, i)) {
-					if (s.endsWith(".")) {
-						updateScore(s.substring(0, s.length()-1), i);
+
+		int level = 32 - Integer.numberOfLeadingZeros(count);
+		int element[] = new int[count];
+		int score[] = new int[count];
+		int scoreSum[] = new int[count+1];
+		int costSum[] = new int[count+1];
+		int prevSame[] = new int[count];
+		int maxScore[][] = new int[level][count];
+		int lastPosition[] = new int[lengthTable.size()];
+		Arrays.fill(lastPosition, -1);
+
+		int top = -1;
+		for (int i = count-1; i >= 0; i--) {
+			int code = sectionCode[i];
+			int lScore = sectionScore[i];
+			int next = lastPosition[code];
+			if (next >= 0) {
+				int blockScore = scoreSum[top+1] - scoreSum[next+1];
+				int lCost = costSum[top+1] - costSum[next];
+				if (blockScore <= lCost) {
+					boolean merge = true;
+					if ( sectionDelete[i] && (next < top) ) {
+						// クロスセクションのスコア判定.
+						int k = 31 - Integer.numberOfLeadingZeros(top - next);
+						int max = Math.max(maxScore[k][top], maxScore[k][next + (1 << k)]);
+						merge = (max <= lScore);
+					}
+					if (merge) {
+						// セクションマージ.
+						lScore += score[next];
+						for ( ; top >= next; top--) {
+							lastPosition[sectionCode[element[top]]] = prevSame[top];
+						}
 					}
 				}
 			}
-		}
-
-		endScore();
-	}
 
-	private int searchNextSectionIndex(int startIndex) {
-		int count = stack.size();
-		String searchName = stack.get(startIndex).getSectionName();
-		for (int i = startIndex+1; i < count; i++) {
-			String sectionName = stack.get(i).getSectionName();
-			if (searchName.equals(sectionName)) {
-				return i;
+			top++;
+			element[top] = i;
+			score[top] = lScore;
+			scoreSum[top+1] = scoreSum[top] + lScore;
+			costSum[top+1] = costSum[top] + lengthTable.getNameLength(code) + 1;
+			prevSame[top] = lastPosition[code];
+			lastPosition[code] = top;
+			maxScore[0][top] = lScore;
+			for (int k = 1; (1 << k) <= top+1; k++) {
+				maxScore[k][top] = Math.max(maxScore[k-1][top], maxScore[k-1][top - (1 << (k-1))]);
 			}
 		}
 
-		return -1;
-	}
-
-	private int blockScore(int startIndex, int endIndex) {
-		int score = 0;
-		for (int i = startIndex+1; i < endIndex; i++) {
-			score += stack.get(i).getScore();
+		sectionCount = 0;
+		for (int p = top; p >= 0; p--) {
+			int i = element[p];
+			sectionCode[sectionCount] = sectionCode[i];
+			sectionIndex[sectionCount] = sectionIndex[i];
+			sectionScore[sectionCount] = score[p];
+			sectionDelete[sectionCount] = sectionDelete[i];
+			sectionCount++;
 		}
-
-		return score;
 	}
 
-	private int lCost(int startIndex, int endIndex) {
-		int lCost = 0;
-		for (int i = startIndex+1; i <= endIndex; i++) {
-			lCost += stack.get(i).getSectionName().length();
-			lCost += "L".length();
+	private void trimSection() {
+		if (sectionCount <= 0) {
+			return;
+		}
+		sectionStart = 1;
+		int index = sectionCount - 1;
+		if (index < sectionStart) {
+			return;
+		}
+		if (sectionScore[index] <= lengthTable.getNameLength(sectionCode[index])+1) {
+			sectionCount--;
 		}
-
-		return lCost;
 	}
 
-	private void mergeSection(int startIndex, int endIndex) {
-		for (int i = startIndex+1; i < endIndex; i++) {
-			stack.get(i).setDeleteCandidate(true);
+	private boolean argumentEquals(int note, String s, boolean dot) {
+		int start = noteArgument[note];
+		int length = s.length();
+		if (noteEnd[note] - start != (dot ? length+1 : length)) {
+			return false;
 		}
+		return originalMML.regionMatches(start, s, 0, length)
+				&& ( !dot || (originalMML.charAt(noteEnd[note]-1) == '.') );
 	}
 
-	private void mergeSection2(int startIndex, int endIndex) {
-		MMLLengthKeyword lKey = stack.get(startIndex);
-		if (lKey.getDeleteCandidate()) {
-			// クロスセクションのスコア判定.
-			int score = lKey.getScore();
-			for (int i = startIndex+1; i < endIndex; i++) {
-				if (score < stack.get(i).getScore()) {
-					return;
+	private String optimizeMMLString() {
+		StringBuilder sb = new StringBuilder(originalMML.length());
+		String section = "4";
+		int sectionPos = sectionStart;
+		int prevEnd = 0;
+
+		for (int i = 0; i < noteCount; i++) {
+			int start = noteStart[i];
+			sb.append(originalMML, prevEnd, start);
+			if ( (sectionPos < sectionCount) && (sectionIndex[sectionPos] <= i) ) {
+				section = lengthTable.getName(sectionCode[sectionPos]);
+				sectionPos++;
+				if ( (start > 0) && (originalMML.charAt(start-1) == '&') ) {
+					/* Lの直前に '&' があると、効かなくなるため. */
+					sb.setLength(sb.length()-1);
+					sb.append('l').append(section).append('&');
+				} else {
+					sb.append('l').append(section);
 				}
 			}
-		}
 
-		// セクションマージ.
-		lKey.addScore(stack.get(endIndex));
-		for (int i = startIndex+1; i <= endIndex; i++) {
-			stack.remove(startIndex+1);
+			sb.append(originalMML, start, noteArgument[i]);
+			if (argumentEquals(i, section, false)) {
+			} else if (argumentEquals(i, section, true)) {
+				sb.append(".");
+			} else {
+				sb.append(originalMML, noteArgument[i], noteEnd[i]);
+			}
+			prevEnd = noteEnd[i];
 		}
-	}
+		sb.append(originalMML, prevEnd, originalMML.length());
 
-	private boolean sectionForwardMerge() {
-		boolean result = false;
-		for (int i = stack.size()-2; i >= 0; i--) {
-			int nextIndex = searchNextSectionIndex(i);
-			if (nextIndex < 0) {
-				continue;
-			}
+		return sb.toString();
+	}
 
-			int score = blockScore(i, nextIndex);
-			int cost = lCost(i, nextIndex);
+	/** 最短配置で候補にするL音長の上限 (状態をlongのビットで保持するため) */
+	private static final int MAX_OPTIMAL_SECTION = 64;
+	private static final int INFINITY = Integer.MAX_VALUE / 4;
 
-			if (score <= cost) {
-				mergeSection(i, nextIndex);
-				result = true;
+	/**
+	 * ノートごとに (ノート位置, 現在のL音長) を状態とする動的計画法で, 文字数が最小になるLコマンドの配置を求めます.
+	 * 計算量は ノート数 x 候補音長数 で, 候補音長は {@value #MAX_OPTIMAL_SECTION} 個までに制限します.
+	 * 入力中のLコマンドは取り除き, すべてのノートの音長を配置したLコマンドに対して書き直します.
+	 * 音長として書けない表記がある場合は, 近似の結果を返します.
+	 */
+	private String optimalMMLString() {
+		parseLengthArray();
+		int codeCount = lengthTable.size();
+		int initialCode = lengthTable.codeOf("4");
+
+		// ノートごとの実際の音長. nノートは音長を持たないので, その時点のLの音長.
+		int length[] = new int[noteCount];
+		boolean fixed[] = new boolean[noteCount];
+		int usage[] = new int[codeCount];
+		int section = initialCode;
+		int lPos = 0;
+		for (int i = 0; i < noteCount; i++) {
+			for ( ; (lPos < lCommandCount) && (lCommandStart[lPos] < noteStart[i]); lPos++) {
+				section = lengthTable.codeOf(originalMML, lCommandStart[lPos]+1, lCommandEnd[lPos]);
+			}
+			char ch = originalMML.charAt(noteStart[i]);
+			fixed[i] = (ch == 'n') || (ch == 'N');
+			length[i] = fixed[i] ? section : noteLength[i];
+			if (!lengthTable.isValidLength(length[i])) {
+				return getOptimizedString();
+			}
+			usage[length[i]] += fixed[i] ? noteCount : 1;
+			int undot = lengthTable.getUndotCode(length[i]);
+			if (undot >= 0) {
+				usage[undot]++;
 			}
 		}
 
-		return result;
-	}
-
-	private void sectionForwardMerge2() {
-		for (int i = stack.size()-2; i >= 0; i--) {
-			int nextIndex = searchNextSectionIndex(i);
-			if (nextIndex < 0) {
-				continue;
+		// 候補のL音長: 初期値の "4" と, 使用回数の多いものから.
+		int stateOf[] = new int[codeCount];
+		Arrays.fill(stateOf, -1);
+		int stateCode[] = new int[Math.min(codeCount, MAX_OPTIMAL_SECTION)];
+		int stateCount = 0;
+		stateOf[initialCode] = stateCount;
+		stateCode[stateCount++] = initialCode;
+		while (stateCount < stateCode.length) {
+			int best = -1;
+			for (int code = 0; code < codeCount; code++) {
+				if ( (stateOf[code] < 0) && (usage[code] > 0) && ( (best < 0) || (usage[code] > usage[best]) ) ) {
+					best = code;
+				}
+			}
+			if (best < 0) {
+				break;
 			}
+			stateOf[best] = stateCount;
+			stateCode[stateCount++] = best;
+		}
 
-			int score = blockScore(i, nextIndex);
-			int cost = lCost(i, nextIndex);
+		int switchCost[] = new int[stateCount];
+		for (int j = 0; j < stateCount; j++) {
+			switchCost[j] = 1 + lengthTable.getNameLength(stateCode[j]);
+		}
 
-			if (score <= cost) {
-				mergeSection2(i, nextIndex);
+		// switchMask[i]: ノートiの直前でLコマンドを置いて到達した状態, prevState[i]: そのときの直前の状態.
+		long switchMask[] = new long[noteCount];
+		int prevState[] = new int[noteCount];
+		int cost[] = new int[stateCount];
+		Arrays.fill(cost, INFINITY);
+		cost[stateOf[initialCode]] = 0;
+		for (int i = 0; i < noteCount; i++) {
+			int minState = 0;
+			for (int j = 1; j < stateCount; j++) {
+				if (cost[j] < cost[minState]) {
+					minState = j;
+				}
+			}
+			prevState[i] = minState;
+
+			int exact = stateOf[length[i]];
+			int undot = lengthTable.getUndotCode(length[i]);
+			// nノートは音長を書き足せないので, 同じLの状態でしか置けない.
+			int dotted = ( !fixed[i] && (undot >= 0) ) ? stateOf[undot] : -1;
+			int explicit = fixed[i] ? INFINITY : lengthTable.getNameLength(length[i]);
+			long mask = 0;
+			int minCost = cost[minState];
+			for (int j = 0; j < stateCount; j++) {
+				int c = cost[j];
+				if (minCost + switchCost[j] < c) {
+					c = minCost + switchCost[j];
+					mask |= (1L << j);
+				}
+				if (j == exact) {
+				} else if (j == dotted) {
+					c += 1;
+				} else {
+					c += explicit;
+				}
+				cost[j] = Math.min(c, INFINITY);
 			}
+			switchMask[i] = mask;
 		}
-	}
 
-	private void trimSection() {
-		if (stack.size() <= 0) {
-			return;
-		}
-		stack.remove(0);
-		int index = stack.size() - 1;
-		if (index < 0) {
-			return;
+		int state = 0;
+		for (int j = 1; j < stateCount; j++) {
+			if (cost[j] < cost[state]) {
+				state = j;
+			}
 		}
-		MMLLengthKeyword lKey = stack.get(index);
-		String section = lKey.getSectionName();
-		if (lKey.getScore() <= section.length()+1) {
-			stack.remove(index);
+		if (cost[state] >= INFINITY) {
+			return getOptimizedString();
 		}
-	}
 
-	private String optimizeMMLString() {
-		StringBuilder sb = new StringBuilder();
-		MMLTokenizer tokenizer = new MMLTokenizer(originalMML);
-		String section = "4";
-		int noteCount = 0;
-		String prevToken = "";
-		String token = "";
-
-		while (tokenizer.hasNext()) {
-			prevToken = token;
-			token = tokenizer.next();
-			if (MMLTokenizer.isNote(token.charAt(0))) {
-				String s[] = MMLTokenizer.noteNames(token);
-				String noteName = s[0];
-				String noteLength = s[1];
-
-				if ( (stack.size() > 0) && 
-						(stack.get(0).getIndex()) <= noteCount) {
-					section = stack.get(0).getSectionName();
-					stack.remove(0);
-					sb.append("l" + section);
-					if (prevToken.equals("&")) {
-						/* Lの直前に '&' があると、効かなくなるため. */
-						sb.deleteCharAt(sb.length()-section.length()-2);
-						sb.append('&');
-					}
-				}
+		// 後ろからたどって, ノートごとの状態と置くLコマンドを決める.
+		int noteState[] = new int[noteCount];
+		boolean insertL[] = new boolean[noteCount];
+		for (int i = noteCount-1; i >= 0; i--) {
+			noteState[i] = state;
+			if ( (switchMask[i] & (1L << state)) != 0 ) {
+				insertL[i] = true;
+				state = prevState[i];
+			}
+		}
 
-				sb.append(noteName);
-				if (noteLength.equals(section)) {
-				} else if (noteLength.equals(section+".")) {
-					sb.append(".");
-				} else {
-					sb.append(noteLength);
+		StringBuilder sb = new StringBuilder(originalMML.length());
+		int prevEnd = 0;
+		lPos = 0;
+		for (int i = 0; i < noteCount; i++) {
+			int start = noteStart[i];
+			if (insertL[i]) {
+				/* Lの直前に '&' があると、効かなくなるため, '&' の前に置く. */
+				int lIndex = prevEnd;
+				while ( (lIndex < start) && (originalMML.charAt(lIndex) != '&') ) {
+					lIndex++;
 				}
-				noteCount++;
+				lPos = appendWithoutLCommand(sb, prevEnd, lIndex, lPos);
+				sb.append('l').append(lengthTable.getName(stateCode[noteState[i]]));
+				prevEnd = lIndex;
+			}
+			lPos = appendWithoutLCommand(sb, prevEnd, start, lPos);
+
+			int code = stateCode[noteState[i]];
+			sb.append(originalMML, start, noteArgument[i]);
+			if (fixed[i]) {
+				sb.append(originalMML, noteArgument[i], noteEnd[i]);
+			} else if (length[i] == code) {
+			} else if (length[i] == lengthTable.getDotCode(code)) {
+				sb.append('.');
 			} else {
-				sb.append(token);
+				sb.append(lengthTable.getName(length[i]));
 			}
+			prevEnd = noteEnd[i];
 		}
+		appendWithoutLCommand(sb, prevEnd, originalMML.length(), lPos);
 
 		return sb.toString();
 	}
 
+	/**
+	 * 入力中のLコマンドを除いて, 指定範囲の文字列を追加します.
+	 * @return 次に参照するLコマンドのindex
+	 */
+	private int appendWithoutLCommand(StringBuilder sb, int start, int end, int lPos) {
+		for ( ; (lPos < lCommandCount) && (lCommandStart[lPos] < end); lPos++) {
+			if (lCommandStart[lPos] >= start) {
+				sb.append(originalMML, start, lCommandStart[lPos]);
+				start = lCommandEnd[lPos];
+			}
+		}
+		sb.append(originalMML, start, end);
+		return lPos;
+	}
+
+	private void printSection() {
+		if (!MMLLengthKeyword.isEnablePrint()) {
+			return;
+		}
+		List<MMLLengthKeyword> list = new ArrayList<>(sectionCount);
+		for (int i = 0; i < sectionCount; i++) {
+			MMLLengthKeyword lKey = new MMLLengthKeyword(lengthTable.getName(sectionCode[i]), sectionIndex[i], sectionScore[i]);
+			lKey.setDeleteCandidate( (sectionDelete != null) && sectionDelete[i] );
+			list.add(lKey);
+		}
+		MMLLengthKeyword.printList(list);
+	}
+
 	private String optimizedString = null;
 	private String getOptimizedString() {
 		if (optimizedString == null) {
 			optimizedLengthArray();
-			MMLLengthKeyword.printList(stack);
+			printSection();
 			sectionForwardMerge();
-			MMLLengthKeyword.printList(stack);
+			printSection();
 			sectionForwardMerge2();
-			MMLLengthKeyword.printList(stack);
+			printSection();
 			trimSection();
 			optimizedString = optimizeMMLString();
 		}
@@ -338,6 +683,15 @@ public final class MMLStringOptimizer {
 		return optimizedString;
 	}
 
+	private String optimalString = null;
+	private String getOptimalString() {
+		if (optimalString == null) {
+			optimalString = optimalMMLString();
+		}
+
+		return optimalString;
+	}
+
 	public static void main(String args[]) {
 		String mml = "c8c8c8c8";
 		MMLStringOptimizer optimizer = new MMLStringOptimizer(mml);
@@ -4,7 +4,7 @@
 
 package fourthline.mmlTools.parser;
 
-import fourthline.mabiicco.midi.InstClass;
+import fourthline.mabiicco.midi.InstType;
 
 
 /**
@@ -19,7 +19,15 @@ public final class Extension3mleTrack {
 	private int group;
 	private String trackName;
 
-	public Extension3mleTrack(int instrument, int group, int panpot, String trackName, int startMarker) {
+	/**
+	 * @param instrument 3MLEの楽器番号 (1がスタート)
+	 * @param group
+	 * @param panpot
+	 * @param trackName
+	 * @param startMarker
+	 * @param instType 楽器の種類. 1トラックにまとめられるチャンネル数を決めます.
+	 */
+	public Extension3mleTrack(int instrument, int group, int panpot, String trackName, int startMarker, InstType instType) {
 		this.instrument = instrument;
 		this.group = group;
 		this.panpot = panpot;
@@ -27,7 +35,7 @@ public final class Extension3mleTrack {
 		this.trackName = trackName;
 		this.trackCount = 1;
 		this.trackLimit = 0;
-		for (boolean b : InstClass.getEnablePartByProgram(instrument-1)) {
+		for (boolean b : instType.getEnablePart()) {
 			if (b) trackLimit++;
 		}
 	}
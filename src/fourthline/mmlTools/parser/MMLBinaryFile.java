@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import fourthline.mmlTools.MMLEventList;
+import fourthline.mmlTools.MMLNoteEvent;
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLTempoEvent;
+import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.Marker;
+import fourthline.mmlTools.core.TuningBase;
+
+/**
+ * イベントリストをそのまま保存するバイナリ形式のスコアファイル (.mmb).
+ * <p>
+ * MMLを保持しないため, 読み込み時にMMLのパースや generate() を行いません.
+ * 読み込んだトラックは未生成の状態になるので, MMLが必要な場合は MMLScore.generateAll() を呼び出してください.
+ * .mmi との相互変換では, イベントリスト, テンポ, マーカー, トラックの設定を失いません.
+ * </p>
+ * <pre>
+ * "MMLB" version
+ * title author baseTime
+ * tempoCount { deltaTick tempo }
+ * markerCount { deltaTick name }
+ * trackCount { name program songProgram panpot partCount { noteCount { note } } }
+ * </pre>
+ * 数値はすべて可変長 (7bit単位) で, 負になりうる値はジグザグ符号化します.
+ * テンポ, マーカーの tickOffset は直前のイベントとの差分です.
+ * <p>
+ * ノートは直前のノートとの差分で, 先頭1バイトに以下をまとめます.
+ * 多くのノートは1バイトになります.
+ * </p>
+ * <pre>
+ * bit0    : 直前のノートの終端から始まる (なければ tickOffset の差分が続く)
+ * bit1    : 音長が同じ (なければ音長が続く)
+ * bit2    : velocity, 調律が同じ (なければ velocity | 調律 << 4 が続く)
+ * bit3-7  : ノート番号の差分 (ジグザグ符号化). 31 のときは差分が続く.
+ * </pre>
+ */
+public final class MMLBinaryFile implements IMMLFileParser {
+	private static final byte MAGIC[] = { 'M', 'M', 'L', 'B' };
+	public static final int VERSION = 1;
+
+	private static final int NOTE_CONTINUOUS = 0x01;
+	private static final int NOTE_SAME_TICK = 0x02;
+	private static final int NOTE_SAME_VALUE = 0x04;
+	private static final int NOTE_DELTA_SHIFT = 3;
+	private static final int NOTE_DELTA_ESCAPE = 31;
+
+	// velocity と調律の基準音長をまとめて保存する.
+	private static final int VELOCITY_BITS = 4;
+	private static final int VELOCITY_MASK = (1 << VELOCITY_BITS) - 1;
+	private static final TuningBase tuningTable[] = TuningBase.values();
+	/** 文字列の最大長 (byte). 壊れたファイルの長さで配列を確保しないようにする. */
+	private static final int MAX_STRING_LENGTH = 1 << 20;
+	/** テンポ, マーカー, 1パートのノートの最大数 */
+	private static final int MAX_COUNT = 1 << 20;
+
+	private InputStream istream;
+
+	@Override
+	public MMLScore parse(InputStream istream) throws MMLParseException {
+		this.istream = new BufferedInputStream(istream);
+		try {
+			for (byte b : MAGIC) {
+				if (read() != (b & 0xff)) {
+					throw new MMLParseException("invalid format");
+				}
+			}
+			int version = readInt();
+			if ( (version < 1) || (version > VERSION) ) {
+				throw new MMLParseException("unsupported version "+version);
+			}
+			return readScore();
+		} catch (IOException | IllegalArgumentException e) {
+			throw new MMLParseException(e.getMessage());
+		} finally {
+			this.istream = null;
+		}
+	}
+
+	private MMLScore readScore() throws IOException {
+		MMLScore score = new MMLScore();
+		score.setTitle(readString());
+		score.setAuthor(readString());
+		String baseTime = readString();
+		if (baseTime != null) {
+			score.setBaseTime(baseTime);
+		}
+
+		int tempoCount = readCount("tempo");
+		int tick = 0;
+		List<MMLTempoEvent> tempoList = score.getTempoEventList();
+		for (int i = 0; i < tempoCount; i++) {
+			tick += readSignedInt();
+			tempoList.add(new MMLTempoEvent(readInt(), tick));
+		}
+
+		int markerCount = readCount("marker");
+		tick = 0;
+		List<Marker> markerList = score.getMarkerList();
+		for (int i = 0; i < markerCount; i++) {
+			tick += readSignedInt();
+			markerList.add(new Marker(readString(), tick));
+		}
+
+		int trackCount = readInt();
+		for (int i = 0; i < trackCount; i++) {
+			MMLTrack track = new MMLTrack();
+			track.setTrackName(readString());
+			track.setProgram(readSignedInt());
+			track.setSongProgram(readSignedInt());
+			track.setPanpot(readInt());
+
+			int partCount = readInt();
+			if (partCount > track.getMMLEventListSize()) {
+				throw new IOException("part count "+partCount);
+			}
+			for (int j = 0; j < partCount; j++) {
+				readNoteList(track.getMMLEventAtIndex(j));
+			}
+			if (score.addTrack(track) < 0) {
+				throw new IOException("track count "+trackCount);
+			}
+		}
+
+		return score;
+	}
+
+	private void readNoteList(MMLEventList eventList) throws IOException {
+		List<MMLNoteEvent> noteList = eventList.getMMLNoteEventList();
+		int noteCount = readCount("note");
+		int tickOffset = 0;
+		int note = 0;
+		int tick = 0;
+		int value = MMLNoteEvent.INIT_VOL;
+		for (int i = 0; i < noteCount; i++) {
+			int head = read();
+			int delta = head >> NOTE_DELTA_SHIFT;
+			note += (delta == NOTE_DELTA_ESCAPE) ? readSignedInt() : unzigzag(delta);
+			tickOffset += tick;
+			if ((head & NOTE_CONTINUOUS) == 0) {
+				tickOffset += readSignedInt();
+			}
+			if ((head & NOTE_SAME_TICK) == 0) {
+				tick = readInt();
+			}
+			if ((head & NOTE_SAME_VALUE) == 0) {
+				value = readInt();
+			}
+			MMLNoteEvent noteEvent = new MMLNoteEvent(note, tick, tickOffset, value & VELOCITY_MASK);
+			int tuning = value >> VELOCITY_BITS;
+			if (tuning > 0) {
+				if (tuning > tuningTable.length) {
+					throw new IOException("tuning "+tuning);
+				}
+				noteEvent.setTuningNote(tuningTable[tuning-1]);
+			}
+			noteList.add(noteEvent);
+		}
+	}
+
+	private int read() throws IOException {
+		int b = istream.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	private int readInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = read();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("invalid number");
+	}
+
+	private int readCount(String name) throws IOException {
+		int count = readInt();
+		if ( (count < 0) || (count > MAX_COUNT) ) {
+			throw new IOException("invalid " + name + " count " + count);
+		}
+		return count;
+	}
+
+	private int readSignedInt() throws IOException {
+		return unzigzag(readInt());
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private String readString() throws IOException {
+		int length = readInt();
+		if (length == 0) {
+			return null;
+		} else if ( (length < 0) || (length - 1 > MAX_STRING_LENGTH) ) {
+			throw new IOException("invalid length " + length);
+		}
+		byte b[] = new byte[length-1];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) read();
+		}
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * スコアをバイナリ形式で出力します. MMLの生成は行いません.
+	 * @param score
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	public static void write(MMLScore score, OutputStream outputStream) throws IOException {
+		Writer writer = new Writer(new BufferedOutputStream(outputStream));
+		writer.write(score);
+		writer.ostream.flush();
+	}
+
+	private static final class Writer {
+		private final OutputStream ostream;
+
+		private Writer(OutputStream ostream) {
+			this.ostream = ostream;
+		}
+
+		private void write(MMLScore score) throws IOException {
+			ostream.write(MAGIC);
+			writeInt(VERSION);
+			writeString(score.getTitle());
+			writeString(score.getAuthor());
+			writeString(score.getBaseTime());
+
+			List<MMLTempoEvent> tempoList = score.getTempoEventList();
+			writeInt(tempoList.size());
+			int tick = 0;
+			for (MMLTempoEvent tempoEvent : tempoList) {
+				writeSignedInt(tempoEvent.getTickOffset() - tick);
+				writeInt(tempoEvent.getTempo());
+				tick = tempoEvent.getTickOffset();
+			}
+
+			List<Marker> markerList = score.getMarkerList();
+			writeInt(markerList.size());
+			tick = 0;
+			for (Marker marker : markerList) {
+				writeSignedInt(marker.getTickOffset() - tick);
+				writeString(marker.getName());
+				tick = marker.getTickOffset();
+			}
+
+			writeInt(score.getTrackCount());
+			for (MMLTrack track : score.getTrackList()) {
+				writeString(track.getTrackName());
+				writeSignedInt(track.getProgram());
+				writeSignedInt(track.getSongProgram());
+				writeInt(track.getPanpot());
+				writeInt(track.getMMLEventListSize());
+				for (MMLEventList eventList : track.getMMLEventList()) {
+					writeNoteList(eventList.getMMLNoteEventList());
+				}
+			}
+		}
+
+		private void writeNoteList(List<MMLNoteEvent> noteList) throws IOException {
+			writeInt(noteList.size());
+			int endTick = 0;
+			int note = 0;
+			int tick = 0;
+			int value = MMLNoteEvent.INIT_VOL;
+			for (MMLNoteEvent noteEvent : noteList) {
+				int tuning = noteEvent.isTuningNote() ? (noteEvent.getTuningBase().ordinal() + 1) : 0;
+				int noteValue = (tuning << VELOCITY_BITS) | noteEvent.getVelocity();
+				int gap = noteEvent.getTickOffset() - endTick;
+				int delta = zigzag(noteEvent.getNote() - note);
+				boolean escape = (delta < 0) || (delta >= NOTE_DELTA_ESCAPE);
+
+				int head = (escape ? NOTE_DELTA_ESCAPE : delta) << NOTE_DELTA_SHIFT;
+				if (gap == 0) {
+					head |= NOTE_CONTINUOUS;
+				}
+				if (noteEvent.getTick() == tick) {
+					head |= NOTE_SAME_TICK;
+				}
+				if (noteValue == value) {
+					head |= NOTE_SAME_VALUE;
+				}
+				ostream.write(head);
+				if (escape) {
+					writeInt(delta);
+				}
+				if (gap != 0) {
+					writeSignedInt(gap);
+				}
+				if (noteEvent.getTick() != tick) {
+					writeInt(noteEvent.getTick());
+				}
+				if (noteValue != value) {
+					writeInt(noteValue);
+				}
+
+				note = noteEvent.getNote();
+				tick = noteEvent.getTick();
+				value = noteValue;
+				endTick = noteEvent.getTickOffset() + tick;
+			}
+		}
+
+		private void writeInt(int value) throws IOException {
+			while ((value & ~0x7f) != 0) {
+				ostream.write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			ostream.write(value);
+		}
+
+		private void writeSignedInt(int value) throws IOException {
+			writeInt(zigzag(value));
+		}
+
+		private static int zigzag(int value) {
+			return (value << 1) ^ (value >> 31);
+		}
+
+		private void writeString(String s) throws IOException {
+			if (s == null) {
+				writeInt(0);
+				return;
+			}
+			byte b[] = s.getBytes(StandardCharsets.UTF_8);
+			writeInt(b.length + 1);
+			ostream.write(b);
+		}
+	}
+}
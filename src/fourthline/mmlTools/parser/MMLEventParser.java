@@ -47,16 +47,15 @@ public final class MMLEventParser extends MelodyParser implements Iterator<MMLEv
 	 * @return すべてMMLパースが終っているときは、nullを返す.
 	 */
 	private MMLEvent parseNextEvent() {
-		while (tokenizer.hasNext()) {
-			String token = tokenizer.next();
-			char firstC = token.charAt(0);
-			if ( firstC == '&' ) {
+		while (tokenizer.nextToken()) {
+			char kind = tokenizer.getTokenKind();
+			if ( kind == '&' ) {
 				hasTie = true;
 				continue;
 			}
-			if ( (firstC == 'v') || (firstC == 'V') ) {
+			if ( kind == 'v' ) {
 				try {
-					int nextVolumn = Integer.parseInt( token.substring(1) );
+					int nextVolumn = numberArgument(tokenizer);
 					if ( (nextVolumn >= 0) && (nextVolumn <= MMLNoteEvent.MAX_VOL) ) {
 						volumn = nextVolumn;
 					}
@@ -65,9 +64,9 @@ public final class MMLEventParser extends MelodyParser implements Iterator<MMLEv
 					e.printStackTrace();
 				}
 			}
-			if ( (firstC == 't') || (firstC == 'T') ) {
+			if ( kind == 't' ) {
 				try {
-					int tempo = Integer.parseInt( token.substring(1) );
+					int tempo = numberArgument(tokenizer);
 					nextItem = new MMLTempoEvent(tempo, totalTick);
 				} catch (NumberFormatException e) {
 					e.printStackTrace();
@@ -78,8 +77,8 @@ public final class MMLEventParser extends MelodyParser implements Iterator<MMLEv
 				return nextItem;
 			}
 			try {
-				int tick = this.noteGT(token);
-				if (MMLTokenizer.isNote(firstC)) {
+				int tick = this.noteGT(tokenizer);
+				if (tokenizer.isNoteToken()) {
 					/* tie でかつ、同じノートであれば、前のNoteEventにTickを加算する */
 					if ( (hasTie) && (prevNoteEvent != null) && (prevNoteEvent.getNote() == this.noteNumber)) {
 						int prevTick = prevNoteEvent.getTick();
@@ -87,7 +86,7 @@ public final class MMLEventParser extends MelodyParser implements Iterator<MMLEv
 							prevNoteEvent.setTuningNote(TuningBase.getInstance(tick));
 						}
 						prevNoteEvent.setTick( prevTick + tick);
-						prevNoteEvent.getIndexOfMMLString()[1] = tokenizer.getIndex()[1];
+						prevNoteEvent.getIndexOfMMLString()[1] = tokenizer.getTokenEnd();
 					} else if (this.noteNumber >= 0) {
 						nextItem = prevNoteEvent;
 						prevNoteEvent = new MMLNoteEvent(this.noteNumber, tick, totalTick, volumn);
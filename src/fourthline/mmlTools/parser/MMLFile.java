@@ -5,21 +5,24 @@
 package fourthline.mmlTools.parser;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Base64.Decoder;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.zip.CRC32;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 
 import fourthline.mabiicco.midi.InstType;
+import fourthline.mabiicco.midi.InstTypeTable;
 import fourthline.mabiicco.midi.MabiDLS;
 import fourthline.mmlTools.MMLEvent;
 import fourthline.mmlTools.MMLEventList;
@@ -29,251 +32,418 @@ import fourthline.mmlTools.Marker;
 
 public final class MMLFile implements IMMLFileParser {
 	private final MMLScore score = new MMLScore();
+	private final InstTypeTable instTypeTable;
 	private String encoding = "Shift_JIS";
+	private Consumer<String> trace = null;
 
 	// channel sections
 	private LinkedList<String> mmlParts = new LinkedList<>();
 	private List<Extension3mleTrack> trackList = null;
 
+	/**
+	 * 読み込んだDLSの楽器で, 歌パートや1トラックのチャンネル数を判定します.
+	 * 作成時点の楽器のテーブルを使用するので, パース中にDLSが追加されても影響しません.
+	 */
+	public MMLFile() {
+		this(MabiDLS.getInstance().getInstRegistry());
+	}
+
+	/**
+	 * @param instTypeTable 歌パートや1トラックのチャンネル数の判定に使う, 楽器の種類のテーブル
+	 */
+	public MMLFile(InstTypeTable instTypeTable) {
+		this.instTypeTable = instTypeTable;
+	}
+
 	@Override
 	public MMLScore parse(InputStream istream) throws MMLParseException {
-		List<SectionContents> contentsList = SectionContents.makeSectionContentsByInputStream(istream, "Shift_JIS");
-		if (contentsList.isEmpty()) {
+		int sectionCount = SectionReader.read(istream, "Shift_JIS", new SectionHandler());
+		if (sectionCount == 0) {
 			throw(new MMLParseException("no contents"));
 		}
-		parseSection(contentsList);
 		if ( (trackList == null) || (trackList.size() == 0) ) {
 			throw new MMLParseException("no track");
 		}
 		createTrack();
-		setStartPosition();
 		return score;
 	}
 
-	private void parseSection(List<SectionContents> contentsList) throws MMLParseException {
-		for (SectionContents contents : contentsList) {
-			if (contents.getName().equals("[3MLE EXTENSION]")) {
-				trackList = parse3mleExtension(contents.getContents());
-			} else if (contents.getName().matches("\\[Channel[0-9]*\\]")) {
-				mmlParts.add( contents.getContents()
-						.replaceAll("//.*\n", "\n")
-						.replaceAll("/\\*/?([^/]|[^*]/)*\\*/", "")
-						.replaceAll("[ \t\n]", "") );
-			} else if (contents.getName().equals("[Settings]")) {
-				parseSettings(contents.getContents());
+	/**
+	 * セクションごとに, 行をパーサーへ振り分けます.
+	 */
+	private final class SectionHandler implements SectionReader.Handler {
+		private Consumer<String> lineParser = null;
+		private ChannelText channel = null;
+		private Extension3mleData extension = null;
+
+		@Override
+		public void startSection(String name) {
+			lineParser = null;
+			if (name.equals("[3MLE EXTENSION]")) {
+				extension = new Extension3mleData();
+				lineParser = extension::parseLine;
+			} else if (name.matches("\\[Channel[0-9]*\\]")) {
+				channel = new ChannelText();
+				lineParser = channel::appendLine;
+			} else if (name.equals("[Settings]")) {
+				lineParser = MMLFile.this::parseSettingsLine;
+			}
+		}
+
+		@Override
+		public void sectionLine(String line) {
+			if (lineParser != null) {
+				lineParser.accept(line);
+			}
+		}
+
+		@Override
+		public void endSection() throws MMLParseException {
+			if (extension != null) {
+				byte data[] = extension.decode();
+				trace(() -> "3MLE EXTENSION "+data.length+" bytes");
+				trackList = parse(data);
+				extension = null;
+			}
+			if (channel != null) {
+				mmlParts.add(channel.toString());
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * [ChannelN] のテキストから, コメントと空白を除いたMMLを作ります.
+	 * <p>
+	 * 行コメントを先に除き, そのあとでブロックコメントを除きます.
+	 * 閉じていないブロックコメントは除きません.
+	 * </p>
+	 */
+	static final class ChannelText {
+		private final StringBuilder mml = new StringBuilder();
+		private final StringBuilder comment = new StringBuilder(); // 閉じていないブロックコメント
+		private boolean inComment = false;
+
+		void appendLine(String line) {
+			int end = line.indexOf("//");
+			if (end < 0) {
+				end = line.length();
+			}
+
+			int index = 0;
+			while (index < end) {
+				if (inComment) {
+					int close = line.indexOf("*/", index);
+					if ( (close < 0) || (close + 2 > end) ) {
+						appendText(comment, line, index, end);
+						index = end;
+					} else {
+						comment.setLength(0);
+						inComment = false;
+						index = close + 2;
+					}
+				} else {
+					int open = line.indexOf("/*", index);
+					if ( (open < 0) || (open + 2 > end) ) {
+						appendText(mml, line, index, end);
+						index = end;
+					} else {
+						appendText(mml, line, index, open);
+						comment.append("/*");
+						inComment = true;
+						index = open + 2;
+					}
+				}
 			}
 		}
 
+		private static void appendText(StringBuilder sb, String line, int start, int end) {
+			for (int i = start; i < end; i++) {
+				char ch = line.charAt(i);
+				if ( (ch != ' ') && (ch != '\t') ) {
+					sb.append(ch);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			if (inComment) {
+				return mml.toString() + comment.toString();
+			}
+			return mml.toString();
+		}
 	}
 
 	private void createTrack() {
 		for (Extension3mleTrack track : trackList) {
-			int program = track.getInstrument() - 1; // 3MLEのInstruments番号は1がスタート.
 			String text[] = new String[] { "", "", "" };
 			for (int i = 0; i < track.getTrackCount(); i++) {
 				text[i] = mmlParts.pop();
 			}
-			InstType instType = MabiDLS.getInstance().getInstByProgram(program).getType();
-			MMLTrack mmlTrack;
-			if ( (instType == InstType.VOICE) || (instType == InstType.CHORUS) ) {
-				// 歌パート
-				mmlTrack = new MMLTrack().setMML("", "", "", text[0]);
-			} else {
-				mmlTrack = new MMLTrack().setMML(text[0], text[1], text[2], "");
-			}
-			score.addTrack(mmlTrack);
-			mmlTrack.setProgram(program);
-			mmlTrack.setPanpot(track.getPanpot());
-			mmlTrack.setTrackName(track.getTrackName());
+			score.addTrack(createTrack(track, text));
 		}
 	}
 
 	/**
-	 * 再生開始位置を設定します.
+	 * [3MLE EXTENSION] のトラック構成情報とチャンネルのMMLからトラックを作成します.
+	 * 再生開始位置のマーカーが指定されている場合は, ノートをその位置へ移動します.
+	 * @param track
+	 * @param text トラックに含まれるチャンネルのMML
+	 * @return
 	 */
-	private void setStartPosition() {
-		if (score.getMarkerList().size() == 0) {
-			return;
+	MMLTrack createTrack(Extension3mleTrack track, String text[]) {
+		int program = track.getInstrument() - 1; // 3MLEのInstruments番号は1がスタート.
+		InstType instType = instTypeTable.getInstType(program);
+		MMLTrack mmlTrack;
+		if ( (instType == InstType.VOICE) || (instType == InstType.CHORUS) ) {
+			// 歌パート
+			mmlTrack = new MMLTrack().setMML("", "", "", text[0]);
+		} else {
+			mmlTrack = new MMLTrack().setMML(text[0], text[1], text[2], "");
 		}
-		for (int i = 0; i < trackList.size(); i++) {
-			Extension3mleTrack track = trackList.get(i);
-			MMLTrack mmlTrack = score.getTrack(i);
-			int markerId = track.getStartMarker();
-			if (markerId > 0) {
-				Marker marker = score.getMarkerList().get(markerId-1);
-				int tickOffset = marker.getTickOffset();
-				for (MMLEventList eventList : mmlTrack.getMMLEventList()) {
-					MMLEvent.insertTick(eventList.getMMLNoteEventList(), 0, tickOffset);
-				}
+		mmlTrack.setProgram(program);
+		mmlTrack.setPanpot(track.getPanpot());
+		mmlTrack.setTrackName(track.getTrackName());
+
+		// 再生開始位置を設定します.
+		List<Marker> markerList = score.getMarkerList();
+		int markerId = track.getStartMarker();
+		if ( (markerId > 0) && (markerId <= markerList.size()) ) {
+			int tickOffset = markerList.get(markerId-1).getTickOffset();
+			for (MMLEventList eventList : mmlTrack.getMMLEventList()) {
+				MMLEvent.insertTick(eventList.getMMLNoteEventList(), 0, tickOffset);
 			}
 		}
+		return mmlTrack;
 	}
 
 	/**
-	 * parse [Settings] contents
-	 * @param contents
+	 * @return [Settings], [3MLE EXTENSION] の内容 (タイトル, 作者, マーカー) を設定したスコア
 	 */
-	private void parseSettings(String contents) {
-		Pattern.compile("\n").splitAsStream(contents).forEachOrdered((s) -> {
-			TextParser textParser = TextParser.text(s);
-			if ( textParser.startsWith("Title=", score::setTitle) ) {
-			} else if ( textParser.startsWith("Source=", score::setAuthor) ) {
-			} else if ( textParser.startsWith("Encoding=", (t) -> this.encoding = t) ) {
-			}
-		});
+	MMLScore getScore() {
+		return score;
 	}
 
 	/**
-	 * [3MLE EXTENSION] をパースし, トラック構成情報を取得します.
-	 * @param [IN]  str [3MLE EXTENSION] セクションのコンテンツ
-	 * @param [OUT] markerList マーカーリスト 
-	 * @return トラック構成情報
+	 * parse [Settings] line
+	 * @param s
 	 */
-	private List<Extension3mleTrack> parse3mleExtension(String str) throws MMLParseException {
-		StringBuilder sb = new StringBuilder();
-		long c = 0;
-		for (String s : str.split("\n")) {
+	void parseSettingsLine(String s) {
+		TextParser textParser = TextParser.text(s);
+		if ( textParser.startsWith("Title=", score::setTitle) ) {
+		} else if ( textParser.startsWith("Source=", score::setAuthor) ) {
+		} else if ( textParser.startsWith("Encoding=", (t) -> this.encoding = t) ) {
+		}
+	}
+
+	/**
+	 * [3MLE EXTENSION] の d=, c= を集めます.
+	 */
+	static final class Extension3mleData {
+		private final StringBuilder dSection = new StringBuilder();
+		private long c = 0;
+
+		void parseLine(String s) {
 			if (s.startsWith("d=")) {
-				sb.append(s.substring(2));
+				dSection.append(s, 2, s.length());
 			} else if (s.startsWith("c=")) {
 				c = Long.parseLong(s.substring(2));
 			}
 		}
 
-		byte data[] = decode(sb.toString(), c);
-		return parse(data);
+		byte[] decode() throws MMLParseException {
+			return MMLFile.decode(dSection.toString(), c);
+		}
 	}
 
+	/** 展開後のデータの上限 */
+	private static final int MAX_DATA_LENGTH = 16 * 1024 * 1024;
+	/** d= のヘッダ (展開後のサイズ, 圧縮データのCRC, バージョン) */
+	private static final int DATA_HEADER_LENGTH = 12;
+
+	/**
+	 * d= のデータをデコードします.
+	 * <pre>
+	 * Base64( dataLength(4) crc32(4) version(4) bzip2(data) )
+	 * </pre>
+	 * c= は Base64 テキストのCRC, ヘッダの crc32 は圧縮データのCRCです.
+	 */
 	private static byte[] decode(String dSection, long c) throws MMLParseException {
 		CRC32 crc = new CRC32();
-		crc.update(dSection.getBytes());
+		crc.update(dSection.getBytes(StandardCharsets.US_ASCII));
 		if (c != crc.getValue()) {
 			throw new MMLParseException("invalid c="+c+" <> "+crc.getValue());
 		}
-		Decoder decoder = Base64.getDecoder();
-		byte b[] = decoder.decode(dSection);
-
-		int dataLength = ByteBuffer.wrap(b, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
-		byte data[] = new byte[dataLength];
 
+		byte b[];
 		try {
-			BZip2CompressorInputStream bz2istream = new BZip2CompressorInputStream(new ByteArrayInputStream(b, 12, b.length-12));
-			bz2istream.read(data);
-			bz2istream.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+			b = Base64.getDecoder().decode(dSection);
+		} catch (IllegalArgumentException e) {
+			throw new MMLParseException("invalid d= "+e.getMessage());
+		}
+		if (b.length < DATA_HEADER_LENGTH) {
+			throw new MMLParseException("invalid d= length "+b.length);
+		}
+		ByteBuffer header = ByteBuffer.wrap(b, 0, DATA_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		int dataLength = header.getInt();
+		long dataCRC = header.getInt() & 0xffffffffL;
+		if ( (dataLength < 0) || (dataLength > MAX_DATA_LENGTH) ) {
+			throw new MMLParseException("invalid data length "+dataLength);
+		}
+		crc.reset();
+		crc.update(b, DATA_HEADER_LENGTH, b.length-DATA_HEADER_LENGTH);
+		if (dataCRC != crc.getValue()) {
+			throw new MMLParseException("invalid data crc="+dataCRC+" <> "+crc.getValue());
 		}
 
-		for (int i = 0; i < dataLength; i++) {
-			System.out.printf("%02x ", data[i]);
+		// read() は途中までしか読まない場合があるので, 指定サイズまで読み切る.
+		byte data[] = new byte[dataLength];
+		try (DataInputStream istream = new DataInputStream(new BZip2CompressorInputStream(
+				new ByteArrayInputStream(b, DATA_HEADER_LENGTH, b.length-DATA_HEADER_LENGTH)))) {
+			istream.readFully(data);
+		} catch (IOException e) {
+			throw new MMLParseException("invalid data "+e.getMessage());
 		}
-		System.out.println();
 		return data;
 	}
 
+	// 3MLE EXTENSION のレコード種別
+	private static final int RECORD_TRACK = 0x02;
+	private static final int RECORD_TRACK_NAME = 0x03;
+	private static final int RECORD_MARKER = 0x09;
+	private static final int RECORD_TRACK_LENGTH = 24;
+	private static final int RECORD_MARKER_LENGTH = 12;
+
 	/**
-	 * @param [IN]  data decompress済みのバイト列
-	 * @param [OUT] markerList マーカーリスト 
-	 * @return トラック構成情報
+	 * デコード済みのデータからトラック構成とマーカーを取得します.
+	 * <p>
+	 * データは レコード種別(1) 長さ(4) 内容(長さ分) の並びで, 数値はリトルエンディアンです.
+	 * トラック (0x02) の直後にトラック名 (0x03) が続きます.
+	 * ヘッダ (0x12), 拍子 (0x04), トラック順 (0x01), グループ (0x0a) など他のレコードは読み飛ばします.
+	 * </p>
+	 * <pre>
+	 * 0x02: trackNo(1) volume(1) panpot(1) ?(5) startMarker(4) ?(4) instrument(4) group(4) ...
+	 * 0x03: trackNo(1) name
+	 * 0x09: id(4) tickOffset(4) color(4) name
+	 * </pre>
+	 * @param data decode済みのバイト列
+	 * @return トラック構成情報. マーカーはスコアに追加します.
+	 * @throws MMLParseException レコードの長さが不正な場合
 	 */
-	private List<Extension3mleTrack> parse(byte data[]) {
+	List<Extension3mleTrack> parse(byte data[]) throws MMLParseException {
 		LinkedList<Extension3mleTrack> trackList = new LinkedList<>();
-		trackList.add(new Extension3mleTrack(-1, -1, -1, null, 0)); // dummy
-
-		ByteArrayInputStream istream = new ByteArrayInputStream(data);
-		int b = 0;
-		int hb = 0;
-		while ( (b = istream.read()) != -1) {
-			if ( (hb == 0x12) && (b == 0x10) ) {
-				parseHeader(istream);
-			} else if ( (hb == 0x02) && (b == 0x1c) ) {
-				parseTrack(trackList, istream);
-			} else if ( (hb == 0x09) && ( (b > 0x00) && (b < 0x20) )) {
-				parseMarker(istream);
+		trackList.add(new Extension3mleTrack(-1, -1, -1, null, 0, InstType.NONE)); // dummy
+
+		ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer trackRecord = null;
+		while (buffer.hasRemaining()) {
+			if (buffer.remaining() < 5) {
+				throw new MMLParseException("invalid 3MLE record at "+buffer.position());
+			}
+			int type = buffer.get() & 0xff;
+			int length = buffer.getInt();
+			if ( (length < 0) || (length > buffer.remaining()) ) {
+				throw new MMLParseException("invalid 3MLE record length "+length+" at "+buffer.position());
 			}
+			ByteBuffer record = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+			record.limit(length);
+			buffer.position(buffer.position() + length);
 
-			hb = b;
+			if (type == RECORD_TRACK) {
+				if (length < RECORD_TRACK_LENGTH) {
+					throw new MMLParseException("invalid 3MLE track length "+length);
+				}
+				if (trackRecord != null) {
+					parseTrack(trackList, trackRecord, null);
+				}
+				trackRecord = record;
+			} else if ( (type == RECORD_TRACK_NAME) && (trackRecord != null) ) {
+				parseTrack(trackList, trackRecord, readString(record, 1));
+				trackRecord = null;
+			} else if (type == RECORD_MARKER) {
+				if (length < RECORD_MARKER_LENGTH) {
+					throw new MMLParseException("invalid 3MLE marker length "+length);
+				}
+				parseMarker(record);
+			}
+		}
+		if (trackRecord != null) {
+			parseTrack(trackList, trackRecord, null);
 		}
 
 		trackList.removeFirst();
 		return trackList;
 	}
 
-	private void parseHeader(ByteArrayInputStream istream) {
-		istream.skip(37);
-		int len = readLEIntValue(istream);
-		istream.skip(len);
-	}
-
-	private void parseTrack(LinkedList<Extension3mleTrack> trackList, ByteArrayInputStream istream) {
-		// parse Track
-		istream.skip(3);
-		int trackNo = istream.read();
-		istream.skip(1); // volumn
-		int panpot = istream.read();
-		istream.skip(5);
-		int startMarker = istream.read();
-		istream.skip(7);
-		int instrument = istream.read();
-		istream.skip(3);
-		int group = istream.read();
-		istream.skip(13);
-		String trackName = readString(istream);
-		System.out.println(trackNo+" "+instrument+" "+trackName);
+	private void parseTrack(LinkedList<Extension3mleTrack> trackList, ByteBuffer record, String trackName) {
+		int trackNo = record.get(0) & 0xff;
+		int panpot = record.get(2) & 0xff;
+		int startMarker = record.getInt(8);
+		int instrument = record.getInt(16);
+		int group = record.getInt(20);
+		trace(() -> "track "+trackNo+" "+instrument+" "+trackName);
 
 		Extension3mleTrack lastTrack = trackList.getLast();
 		if ( (lastTrack.getGroup() != group) || (lastTrack.getInstrument() != instrument) || (lastTrack.getPanpot() != panpot) || (lastTrack.isLimit())) {
 			// new Track
-			trackList.add(new Extension3mleTrack(instrument, group, panpot, trackName, startMarker));
+			trackList.add(new Extension3mleTrack(instrument, group, panpot, trackName, startMarker, instTypeTable.getInstType(instrument-1)));
 		} else {
 			lastTrack.addTrack();
 		}
 	}
 
-	private int readLEIntValue(InputStream istream) {
-		byte b[] = new byte[4];
+	private void parseMarker(ByteBuffer record) {
+		int tickOffset = record.getInt(4);
+		String name = readString(record, 12);
+		trace(() -> "marker " + name + "=" + tickOffset);
+		score.getMarkerList().add(new Marker(name, tickOffset));
+	}
+
+	/**
+	 * 0終端の文字列を読みます. 終端がない場合はレコードの終わりまでを文字列とします.
+	 */
+	private String readString(ByteBuffer record, int offset) {
+		int end = offset;
+		while ( (end < record.limit()) && (record.get(end) != 0) ) {
+			end++;
+		}
+		byte b[] = new byte[Math.max(0, end - offset)];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = record.get(offset + i);
+		}
 		try {
-			istream.read(b);
-		} catch (IOException e) {
-			e.printStackTrace();
+			return new String(b, encoding);
+		} catch (UnsupportedEncodingException e) {
+			return new String(b, StandardCharsets.ISO_8859_1);
 		}
-		return ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).getInt();
 	}
 
-	private void parseMarker(ByteArrayInputStream istream) {
-		List<Marker> markerList = score.getMarkerList();
-
-		// parse Marker
-		istream.skip(7);
-		int tickOffset = readLEIntValue(istream);
-		istream.skip(4);
-		String name = readString(istream);
-		System.out.println("Marker " + name + "=" + tickOffset);
-		if (markerList != null) {
-			markerList.add(new Marker(name, tickOffset));
-		}
+	/**
+	 * [3MLE EXTENSION] の解析結果 (トラック, マーカー, データサイズ) を受け取る出力先を設定します.
+	 * 設定しない場合は何も出力しません.
+	 * @param trace
+	 * @return
+	 */
+	public MMLFile setTrace(Consumer<String> trace) {
+		this.trace = trace;
+		return this;
 	}
 
-	private String readString(InputStream istream) {
-		ByteArrayOutputStream ostream = new ByteArrayOutputStream();
-		int b;
-		try {
-			while ( (b = istream.read()) != 0 ) {
-				ostream.write(b);
-			}
-			return new String(ostream.toByteArray(), encoding);
-		} catch (IOException e) {
-			e.printStackTrace();
+	private void trace(Supplier<String> message) {
+		if (trace != null) {
+			trace.accept(message.get());
 		}
-		return "";
 	}
 
 	public static void main(String[] args) {
 		try {
-			String str = "c=3902331007\nd=4wAAAJvYl0oBAAAAQlpoOTFBWSZTWReDTXYAAEH/i/7U0AQCAHgAQAAEAGwIEABAAECAAAoABKAAcivUCaZGmRiAyNqDEgnqRpkPTUZGh5S6QfOGHRg+AfSJE3ebNDxInstECT3owI1yYiuIY5IwTCLAQz1oZyAogJFOhVYmv39cWsLxsbh0MkELhClECHm5wCBjLYz8XckU4UJAXg012A==";
+			Extension3mleData extension = new Extension3mleData();
+			extension.parseLine("c=3902331007");
+			extension.parseLine("d=4wAAAJvYl0oBAAAAQlpoOTFBWSZTWReDTXYAAEH/i/7U0AQCAHgAQAAEAGwIEABAAECAAAoABKAAcivUCaZGmRiAyNqDEgnqRpkPTUZGh5S6QfOGHRg+AfSJE3ebNDxInstECT3owI1yYiuIY5IwTCLAQz1oZyAogJFOhVYmv39cWsLxsbh0MkELhClECHm5wCBjLYz8XckU4UJAXg012A==");
 
-			MMLFile mmlFile = new MMLFile();
-			List<Extension3mleTrack> trackList = mmlFile.parse3mleExtension(str);
+			MMLFile mmlFile = new MMLFile().setTrace(System.out::println);
+			List<Extension3mleTrack> trackList = mmlFile.parse(extension.decode());
 			for (Extension3mleTrack track : trackList) {
 				System.out.println(track);
 			}
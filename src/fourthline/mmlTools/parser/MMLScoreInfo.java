@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import fourthline.mabiicco.midi.InstTypeTable;
+import fourthline.mmlTools.MMLTrack;
+
+/**
+ * スコアファイル (.mmi, .mms, .mml) のヘッダ情報のみを読み込みます.
+ * <p>
+ * ファイルはメモリマップで参照し, タイトル, 作者, 拍子とトラック構成だけを読み取ります.
+ * パートのMMLは getTrack() でトラックを取得したときに初めてデコード, パースします.
+ * 多数のファイルを一覧するなど, スコア全体を必要としない場合に使用します.
+ * </p>
+ */
+public final class MMLScoreInfo {
+	private static final String MMS_PART_SECTION = "\\[part[0-9]+\\]";
+	private static final String MML_CHANNEL_SECTION = "\\[Channel[0-9]*\\]";
+
+	private enum Format { MMI, MMS, MML }
+
+	private final ByteBuffer buffer;
+	private final Format format;
+	private final Charset charset;
+	private final InstTypeTable instTypeTable;
+
+	private String title = "";
+	private String author = "";
+	private int numTime = 4;
+	private int baseTime = 4;
+	private final List<TrackInfo> trackList = new ArrayList<>();
+
+	// .mml
+	private MMLFile mmlFile = null;
+	private MMLFile.Extension3mleData extension = null;
+	private final List<int[]> channelList = new ArrayList<>();
+
+	/**
+	 * トラック1つ分の情報と, パートのMMLの位置.
+	 */
+	private static final class TrackInfo {
+		private String name = null;
+		private int program = 0;
+		private int songProgram = -1;
+		private int panpot = 64;
+		private final int partStart[] = { -1, -1, -1 };
+		private final int partEnd[] = { -1, -1, -1 };
+		private Extension3mleTrack extensionTrack = null;
+		private int channelIndex = 0;
+		private MMLTrack track = null;
+	}
+
+	private MMLScoreInfo(ByteBuffer buffer, Format format, InstTypeTable instTypeTable) {
+		this.buffer = buffer;
+		this.format = format;
+		this.instTypeTable = instTypeTable;
+		this.charset = (format == Format.MMI) ? StandardCharsets.UTF_8 : Charset.forName("Shift_JIS");
+	}
+
+	/**
+	 * ファイルのヘッダ情報を読み込みます. 形式は拡張子で判定し, .mms, .mml 以外は .mmi として扱います.
+	 * @param file
+	 * @param instTypeTable .mml のトラック構成の判定に使う, 楽器の種類のテーブル
+	 * @return
+	 * @throws IOException
+	 * @throws MMLParseException
+	 */
+	public static MMLScoreInfo read(File file, InstTypeTable instTypeTable) throws IOException, MMLParseException {
+		Format format = Format.MMI;
+		if (file.getName().endsWith(".mms")) {
+			format = Format.MMS;
+		} else if (file.getName().endsWith(".mml")) {
+			format = Format.MML;
+		}
+
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		MMLScoreInfo info = new MMLScoreInfo(buffer, format, instTypeTable);
+		info.scan();
+		return info;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getAuthor() {
+		return author;
+	}
+
+	public String getBaseTime() {
+		return numTime + "/" + baseTime;
+	}
+
+	public int getTrackCount() {
+		return trackList.size();
+	}
+
+	public String getTrackName(int index) {
+		return trackList.get(index).name;
+	}
+
+	public int getProgram(int index) {
+		return trackList.get(index).program;
+	}
+
+	/**
+	 * トラックを取得します. 初めて取得したときにパートのMMLをデコード, パースします.
+	 * 取得したトラックは generate() されていません.
+	 * @param index
+	 * @return
+	 */
+	public MMLTrack getTrack(int index) {
+		TrackInfo info = trackList.get(index);
+		if (info.track == null) {
+			info.track = createTrack(info);
+		}
+		return info.track;
+	}
+
+	private MMLTrack createTrack(TrackInfo info) {
+		if (format == Format.MML) {
+			String text[] = { "", "", "" };
+			for (int i = 0; i < info.extensionTrack.getTrackCount(); i++) {
+				int channel[] = channelList.get(info.channelIndex + i);
+				text[i] = decodeChannel(channel[0], channel[1]);
+			}
+			return mmlFile.createTrack(info.extensionTrack, text);
+		}
+
+		MMLTrack track;
+		if (format == Format.MMI) {
+			track = new MMLTrack().setMML(decodePart(info, 0));
+		} else {
+			track = new MMLTrack().setMML(decodePart(info, 0), decodePart(info, 1), decodePart(info, 2), "");
+		}
+		track.setTrackName(info.name);
+		track.setProgram(info.program);
+		track.setSongProgram(info.songProgram);
+		track.setPanpot(info.panpot);
+		return track;
+	}
+
+	private String decodePart(TrackInfo info, int part) {
+		if (info.partStart[part] < 0) {
+			return "";
+		}
+		return decode(info.partStart[part], info.partEnd[part]);
+	}
+
+	private String decodeChannel(int start, int end) {
+		MMLFile.ChannelText channel = new MMLFile.ChannelText();
+		int lineStart = start;
+		while (lineStart < end) {
+			int lineEnd = lineEnd(lineStart, end);
+			channel.appendLine(decode(lineStart, lineEnd));
+			lineStart = nextLine(lineEnd, end);
+		}
+		return channel.toString();
+	}
+
+	/**
+	 * 行単位で読み, セクションごとにヘッダ情報を取得します.
+	 */
+	private void scan() throws MMLParseException {
+		if (format == Format.MML) {
+			mmlFile = new MMLFile(instTypeTable);
+		}
+
+		String section = null;
+		int sectionCount = 0;
+		int limit = buffer.limit();
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int lineEnd = lineEnd(lineStart, limit);
+			if ( (lineEnd > lineStart) && (buffer.get(lineStart) == '[') ) {
+				section = decode(lineStart, lineEnd);
+				sectionCount++;
+				startSection(section, lineStart);
+			} else if (section != null) {
+				parseLine(section, lineStart, lineEnd);
+			}
+			lineStart = nextLine(lineEnd, limit);
+		}
+		endSection(limit);
+
+		if (sectionCount == 0) {
+			throw new MMLParseException("no contents");
+		}
+		if (format == Format.MML) {
+			createExtensionTrackList();
+		}
+	}
+
+	private void startSection(String section, int position) {
+		endSection(position);
+		if ( (format == Format.MMS) && section.matches(MMS_PART_SECTION) ) {
+			TrackInfo info = new TrackInfo();
+			info.panpot = 0;
+			trackList.add(info);
+		} else if (format == Format.MML) {
+			if (section.equals("[3MLE EXTENSION]")) {
+				extension = new MMLFile.Extension3mleData();
+			} else if (section.matches(MML_CHANNEL_SECTION)) {
+				channelList.add(new int[] { nextLine(lineEnd(position, buffer.limit()), buffer.limit()), -1 });
+			}
+		}
+	}
+
+	private void endSection(int position) {
+		if (!channelList.isEmpty()) {
+			int channel[] = channelList.get(channelList.size()-1);
+			if (channel[1] < 0) {
+				channel[1] = Math.max(channel[0], position);
+			}
+		}
+	}
+
+	private void parseLine(String section, int start, int end) {
+		switch (format) {
+		case MMI:
+			if (section.equals("[mml-score]")) {
+				parseMMIScoreLine(start, end);
+			}
+			break;
+		case MMS:
+			if (section.equals("[infomation]")) {
+				parseMMSInfomationLine(start, end);
+			} else if (section.matches(MMS_PART_SECTION)) {
+				parseMMSPartLine(start, end);
+			}
+			break;
+		case MML:
+			if (section.equals("[Settings]")) {
+				mmlFile.parseSettingsLine(decode(start, end));
+			} else if (section.equals("[3MLE EXTENSION]")) {
+				extension.parseLine(decode(start, end));
+			}
+			break;
+		}
+	}
+
+	private void parseMMIScoreLine(int start, int end) {
+		TrackInfo last = trackList.isEmpty() ? null : trackList.get(trackList.size()-1);
+		if (startsWith(start, end, "mml-track=")) {
+			TrackInfo info = new TrackInfo();
+			info.partStart[0] = start + "mml-track=".length();
+			info.partEnd[0] = end;
+			trackList.add(info);
+		} else if (startsWith(start, end, "title=")) {
+			title = decode(start + "title=".length(), end);
+		} else if (startsWith(start, end, "author=")) {
+			author = decode(start + "author=".length(), end);
+		} else if (startsWith(start, end, "time=")) {
+			String s[] = decode(start + "time=".length(), end).split("/");
+			numTime = Integer.parseInt(s[0]);
+			baseTime = Integer.parseInt(s[1]);
+		} else if (last == null) {
+		} else if (startsWith(start, end, "name=")) {
+			last.name = decode(start + "name=".length(), end);
+		} else if (startsWith(start, end, "program=")) {
+			last.program = Integer.parseInt(decode(start + "program=".length(), end));
+		} else if (startsWith(start, end, "songProgram=")) {
+			last.songProgram = Integer.parseInt(decode(start + "songProgram=".length(), end));
+		} else if (startsWith(start, end, "panpot=")) {
+			last.panpot = Integer.parseInt(decode(start + "panpot=".length(), end));
+		}
+	}
+
+	private void parseMMSInfomationLine(int start, int end) {
+		if (startsWith(start, end, "title=")) {
+			title = decode(start + "title=".length(), end);
+		} else if (startsWith(start, end, "auther=")) {
+			author = decode(start + "auther=".length(), end);
+		} else if (startsWith(start, end, "rythmNum=")) {
+			numTime = Integer.parseInt(decode(start + "rythmNum=".length(), end));
+		} else if (startsWith(start, end, "rythmBase=")) {
+			baseTime = Integer.parseInt(decode(start + "rythmBase=".length(), end));
+		}
+	}
+
+	private void parseMMSPartLine(int start, int end) {
+		TrackInfo info = trackList.get(trackList.size()-1);
+		if (startsWith(start, end, "instrument=")) {
+			info.program = MMSFile.convertInstProgram(Integer.parseInt(decode(start + "instrument=".length(), end)));
+		} else if (startsWith(start, end, "panpot=")) {
+			info.panpot = Integer.parseInt(decode(start + "panpot=".length(), end)) + 64;
+		} else if (startsWith(start, end, "name=")) {
+			info.name = decode(start + "name=".length(), end);
+		} else {
+			for (int i = 0; i < info.partStart.length; i++) {
+				String key = "ch" + i + "_mml=";
+				if (startsWith(start, end, key)) {
+					info.partStart[i] = start + key.length();
+					info.partEnd[i] = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * [3MLE EXTENSION] からトラック構成を作成します.
+	 */
+	private void createExtensionTrackList() throws MMLParseException {
+		if (extension == null) {
+			throw new MMLParseException("no track");
+		}
+		int channelIndex = 0;
+		for (Extension3mleTrack extensionTrack : mmlFile.parse(extension.decode())) {
+			if (channelIndex + extensionTrack.getTrackCount() > channelList.size()) {
+				throw new MMLParseException("no channel");
+			}
+			TrackInfo info = new TrackInfo();
+			info.name = extensionTrack.getTrackName();
+			info.program = extensionTrack.getInstrument() - 1;
+			info.panpot = extensionTrack.getPanpot();
+			info.extensionTrack = extensionTrack;
+			info.channelIndex = channelIndex;
+			channelIndex += extensionTrack.getTrackCount();
+			trackList.add(info);
+		}
+		title = mmlFile.getScore().getTitle();
+		author = mmlFile.getScore().getAuthor();
+	}
+
+	private int lineEnd(int start, int limit) {
+		int index = start;
+		while ( (index < limit) && (buffer.get(index) != '\n') && (buffer.get(index) != '\r') ) {
+			index++;
+		}
+		return index;
+	}
+
+	private int nextLine(int lineEnd, int limit) {
+		if ( (lineEnd < limit) && (buffer.get(lineEnd) == '\r') ) {
+			lineEnd++;
+			if ( (lineEnd < limit) && (buffer.get(lineEnd) == '\n') ) {
+				lineEnd++;
+			}
+			return lineEnd;
+		}
+		return Math.min(lineEnd + 1, limit);
+	}
+
+	private boolean startsWith(int start, int end, String key) {
+		if (end - start < key.length()) {
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			if (buffer.get(start + i) != key.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String decode(int start, int end) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(end);
+		slice.position(start);
+		return charset.decode(slice).toString();
+	}
+}
@@ -5,11 +5,10 @@
 package fourthline.mmlTools.parser;
 
 import java.io.InputStream;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 import fourthline.mmlTools.MMLScore;
 import fourthline.mmlTools.MMLTrack;
@@ -53,26 +52,45 @@ public final class MMSFile implements IMMLFileParser {
 
 	@Override
 	public MMLScore parse(InputStream istream) throws MMLParseException {
-		List<SectionContents> contentsList = SectionContents.makeSectionContentsByInputStream(istream, "Shift_JIS");
-		if (contentsList.isEmpty()) {
-			throw(new MMLParseException());
-		}
+		int sectionCount = SectionReader.read(istream, "Shift_JIS", new SectionReader.Handler() {
+			private Consumer<String> lineParser = null;
+			private MMSPart part = null;
+
+			@Override
+			public void startSection(String name) {
+				lineParser = null;
+				if ( name.matches("\\[part[0-9]+\\]") ) {
+					/* MMLパート */
+					System.out.println("part");
+					part = new MMSPart();
+					lineParser = part::parseLine;
+				} else if (name.equals("[infomation]")) {
+					lineParser = MMSFile.this::parseInfomationLine;
+				} else if (name.equals("[marker]")) {
+					lineParser = MMSFile.this::parseMarkerLine;
+				}
+			}
 
-		for (SectionContents section : contentsList) {
-			String sectionName = section.getName();
-
-			if ( sectionName.matches("\\[part[0-9]+\\]") ) {
-				/* MMLパート */
-				System.out.println("part");
-				MMLTrack track = parseMMSPart(section.getContents());
-				System.out.println(track.getOriginalMML());
-				System.out.println(track.getProgram());
-				score.addTrack(track);
-			} else if (sectionName.equals("[infomation]")) {
-				parseInfomation(section.getContents());
-			} else if (sectionName.equals("[marker]")) {
-				parseMarker(section.getContents());
+			@Override
+			public void sectionLine(String line) {
+				if (lineParser != null) {
+					lineParser.accept(line);
+				}
 			}
+
+			@Override
+			public void endSection() {
+				if (part != null) {
+					MMLTrack track = part.createTrack();
+					System.out.println(track.getOriginalMML());
+					System.out.println(track.getProgram());
+					score.addTrack(track);
+					part = null;
+				}
+			}
+		});
+		if (sectionCount == 0) {
+			throw(new MMLParseException());
 		}
 
 		return score;
@@ -83,70 +101,70 @@ public final class MMSFile implements IMMLFileParser {
 	 * @param mmsInst
 	 * @return DLSのprogram値
 	 */
-	private int convertInstProgram(int mmsInst) {
+	static int convertInstProgram(int mmsInst) {
 		return mmsInstTable[mmsInst];
 	}
 
 	/**
-	 * parse [information] contents
-	 * @param contents
+	 * parse [information] line
+	 * @param s
 	 */
-	private void parseInfomation(String contents) {
-		Pattern.compile("\n").splitAsStream(contents).forEachOrdered((s) -> {
-			TextParser textParser = TextParser.text(s);
-			if ( textParser.startsWith("title=", score::setTitle) ) {
-			} else if ( textParser.startsWith("auther=", score::setAuthor) ) {
-			} else if ( textParser.startsWith("rythmNum=",  t -> score.setTimeCountOnly(Integer.valueOf(t)) )) {
-			} else if ( textParser.startsWith("rythmBase=", t -> score.setBaseOnly(Integer.valueOf(t)) )) {
-			}
-		});
+	private void parseInfomationLine(String s) {
+		TextParser textParser = TextParser.text(s);
+		if ( textParser.startsWith("title=", score::setTitle) ) {
+		} else if ( textParser.startsWith("auther=", score::setAuthor) ) {
+		} else if ( textParser.startsWith("rythmNum=",  t -> score.setTimeCountOnly(Integer.valueOf(t)) )) {
+		} else if ( textParser.startsWith("rythmBase=", t -> score.setBaseOnly(Integer.valueOf(t)) )) {
+		}
 	}
 
 	/**
-	 * parse [marker] contents
-	 * @param contens
+	 * parse [marker] line
+	 * @param s
 	 */
-	private void parseMarker(String contents) {
-		LinkedList<Marker> markerList = new LinkedList<>();
-		Pattern.compile("\n").splitAsStream(contents).forEachOrdered((s) -> {
-			TextParser textParser = TextParser.text(s);
-			if ( textParser.startsWith("label", t -> markerList.add(new Marker(t.substring(5), 0))) ) {
-			} else if ( textParser.startsWith("position", t -> {
-				int tickOffset = Integer.parseInt(t.substring(5));
-				markerList.getLast().setTickOffset( tickOffset );
-			})) {
-			}
-		});
-		score.getMarkerList().addAll(markerList);
+	private void parseMarkerLine(String s) {
+		List<Marker> markerList = score.getMarkerList();
+		TextParser textParser = TextParser.text(s);
+		if ( textParser.startsWith("label", t -> markerList.add(new Marker(t.substring(5), 0))) ) {
+		} else if ( textParser.startsWith("position", t -> {
+			int tickOffset = Integer.parseInt(t.substring(5));
+			markerList.get(markerList.size()-1).setTickOffset( tickOffset );
+		})) {
+		}
 	}
 
 	/**
-	 * parse [part*] contents
-	 * @param contents
-	 * @return
+	 * [part*] セクションの内容.
 	 */
-	private MMLTrack parseMMSPart(String contents) {
-		final int intValue[] = { 0, 0 };
-		final String stringValue[] = { "", "", "", "" };
-
-		Pattern.compile("\n").splitAsStream(contents).forEachOrdered((s) -> {
+	private final class MMSPart {
+		private int program = 0;
+		private int panpot = 0;
+		private String name = "";
+		private final String mml[] = { "", "", "" };
+
+		/**
+		 * parse [part*] line
+		 * @param s
+		 */
+		private void parseLine(String s) {
 			TextParser textParser = TextParser.text(s);
 			if ( textParser.startsWith("instrument=",
-					t -> intValue[0] = convertInstProgram(Integer.parseInt(t)) )) {
+					t -> program = convertInstProgram(Integer.parseInt(t)) )) {
 			} else if ( textParser.startsWith("panpot=",
-					t -> intValue[1] = Integer.parseInt(t) + 64 )) {
-			} else if ( textParser.startsWith("name=",    t -> stringValue[0] = t) ) {
-			} else if ( textParser.startsWith("ch0_mml=", t -> stringValue[1] = t) ) {
-			} else if ( textParser.startsWith("ch1_mml=", t -> stringValue[2] = t) ) {
-			} else if ( textParser.startsWith("ch2_mml=", t -> stringValue[3] = t) ) {
-				return;
+					t -> panpot = Integer.parseInt(t) + 64 )) {
+			} else if ( textParser.startsWith("name=",    t -> name = t) ) {
+			} else if ( textParser.startsWith("ch0_mml=", t -> mml[0] = t) ) {
+			} else if ( textParser.startsWith("ch1_mml=", t -> mml[1] = t) ) {
+			} else if ( textParser.startsWith("ch2_mml=", t -> mml[2] = t) ) {
 			}
-		});
+		}
 
-		MMLTrack track = new MMLTrack().setMML(stringValue[1], stringValue[2], stringValue[3], "");
-		track.setTrackName(stringValue[0]);
-		track.setProgram(intValue[0]);
-		track.setPanpot(intValue[1]);
-		return track;
+		private MMLTrack createTrack() {
+			MMLTrack track = new MMLTrack().setMML(mml[0], mml[1], mml[2], "");
+			track.setTrackName(name);
+			track.setProgram(program);
+			track.setPanpot(panpot);
+			return track;
+		}
 	}
 }
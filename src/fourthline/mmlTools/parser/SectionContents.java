@@ -4,10 +4,7 @@
 
 package fourthline.mmlTools.parser;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -15,6 +12,7 @@ import java.util.List;
  * テキストをセクションに区切って扱います.
  * [section-name]
  * text...
+ * セクション全体を保持するため, ファイルを読み込む場合は {@link SectionReader} で1行ずつ処理してください.
  */
 public final class SectionContents {
 	private final String name;
@@ -58,17 +56,19 @@ public final class SectionContents {
 	public static List<SectionContents> makeSectionContentsByInputStream(InputStream istream, String charsetName) {
 		LinkedList<SectionContents> contentsList = new LinkedList<>();
 		try {
-			InputStreamReader reader = new InputStreamReader(istream, charsetName);
-			new BufferedReader(reader).lines().forEach(s -> {
-				if (s.startsWith("[")) {
-					contentsList.add( new SectionContents(s) );
-				} else if (contentsList.size() > 0) {
-					SectionContents section = contentsList.getLast();
-					section.buffer.append(s).append('\n');
+			SectionReader.read(istream, charsetName, new SectionReader.Handler() {
+				@Override
+				public void startSection(String name) {
+					contentsList.add( new SectionContents(name) );
+				}
+
+				@Override
+				public void sectionLine(String line) {
+					contentsList.getLast().buffer.append(line).append('\n');
 				}
 			});
-		} catch (UnsupportedEncodingException e) {}
+		} catch (MMLParseException e) {}
 
 		return contentsList;
 	}
-}
\ No newline at end of file
+}
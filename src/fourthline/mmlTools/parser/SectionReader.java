@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * セクションに区切られたテキストを1行ずつ読み, ハンドラに渡します.
+ * <pre>
+ * [section-name]
+ * text...
+ * </pre>
+ * セクション全体を文字列にまとめないため, 大きなファイルでも1行分のバッファで読み込めます.
+ * 最初のセクションより前の行は無視します.
+ */
+public final class SectionReader {
+
+	/**
+	 * セクションの読み込みイベントを受け取ります.
+	 */
+	public interface Handler {
+		/**
+		 * セクションの開始.
+		 * @param name セクション名 ("[section-name]" の行全体)
+		 * @throws MMLParseException
+		 */
+		void startSection(String name) throws MMLParseException;
+
+		/**
+		 * セクション内の1行.
+		 * @param line 改行を含まない行
+		 * @throws MMLParseException
+		 */
+		void sectionLine(String line) throws MMLParseException;
+
+		/**
+		 * セクションの終了. 次のセクションの開始前, またはファイルの終端で呼ばれます.
+		 * @throws MMLParseException
+		 */
+		default void endSection() throws MMLParseException {}
+	}
+
+	private SectionReader() {}
+
+	/**
+	 * InputStreamからセクションを読み込みます.
+	 * @param istream
+	 * @param charsetName
+	 * @param handler
+	 * @return 読み込んだセクション数
+	 * @throws MMLParseException 読み込みエラー, またはハンドラで発生した例外
+	 */
+	public static int read(InputStream istream, String charsetName, Handler handler) throws MMLParseException {
+		int sectionCount = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(istream, charsetName));
+			String s;
+			while ( (s = reader.readLine()) != null ) {
+				if (s.startsWith("[")) {
+					if (sectionCount > 0) {
+						handler.endSection();
+					}
+					sectionCount++;
+					handler.startSection(s);
+				} else if (sectionCount > 0) {
+					handler.sectionLine(s);
+				}
+			}
+		} catch (IOException e) {
+			throw new MMLParseException(e.getMessage());
+		}
+
+		if (sectionCount > 0) {
+			handler.endSection();
+		}
+		return sectionCount;
+	}
+}
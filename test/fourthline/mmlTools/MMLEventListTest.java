@@ -221,6 +221,43 @@ public class MMLEventListTest {
 		assertEquals(58, noteEvent3.getNote());
 	}
 
+	/**
+	 * まとめて追加した場合と, 1つずつ追加した場合の結果が同じであること.
+	 */
+	@Test
+	public void testAddMMLNoteEventList() throws UndefinedTickException {
+		MMLEventList eventList1 = new MMLEventList("c1d4e4f4g8a8b2");
+		MMLEventList eventList2 = new MMLEventList("c1d4e4f4g8a8b2");
+		int noteParam[][] = { {40, 96, -48}, {60, 48, 96}, {61, 48, 96}, {62, 240, 120}, {63, 24, 576+96*3} };
+
+		List<MMLNoteEvent> addList = new ArrayList<>();
+		for (int param[] : noteParam) {
+			eventList1.addMMLNoteEvent(new MMLNoteEvent(param[0], param[1], param[2]));
+			addList.add(new MMLNoteEvent(param[0], param[1], param[2]));
+		}
+		eventList2.addMMLNoteEventList(addList);
+
+		assertEquals(eventList1.getMMLNoteEventList(), eventList2.getMMLNoteEventList());
+		assertEquals(eventList1.toMMLString(), eventList2.toMMLString());
+	}
+
+	@Test
+	public void testGetNoteListInRange() throws UndefinedTickException {
+		int t4 = MMLTicks.getTick("4");
+		MMLEventList eventList = new MMLEventList("cdr4e");
+		List<MMLNoteEvent> noteList = eventList.getMMLNoteEventList();
+
+		assertEquals(noteList.subList(0, 2), eventList.getNoteListInRange(0, t4+1));
+		assertEquals(noteList.subList(1, 2), eventList.getNoteListInRange(t4, t4*3));
+		assertEquals(noteList.subList(1, 3), eventList.getNoteListInRange(t4*2-1, t4*3+1));
+		assertTrue(eventList.getNoteListInRange(t4*2, t4*3).isEmpty());
+		assertTrue(eventList.getNoteListInRange(t4*4, t4*5).isEmpty());
+
+		assertEquals(1, eventList.searchFirstIndexInRange(t4, t4*4));
+		assertEquals(2, eventList.searchFirstIndexInRange(t4*2, t4*4));
+		assertEquals(-1, eventList.searchFirstIndexInRange(t4*2, t4*3));
+	}
+
 	@Test
 	public void testToMMLString_0() throws UndefinedTickException {
 		MMLEventList eventList = new MMLEventList("ara");
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MMLScoreSnapshotTest {
+
+	private MMLScore createScore() {
+		MMLScore score = new MMLScore();
+		score.addTrack(new MMLTrack().setMML("MML@t150cdef,gab,;"));
+		score.addTrack(new MMLTrack().setMML("MML@aaa,bbb,ccc;"));
+		return score;
+	}
+
+	/**
+	 * スナップショットは編集の影響を受けず, 変更のないパートは共有されること.
+	 */
+	@Test
+	public void testSnapshot() {
+		MMLScore score = createScore();
+		MMLScoreSnapshot snapshot1 = score.snapshot();
+
+		score.getTrack(1).getMMLEventAtIndex(0).getMMLNoteEventList().get(0).setNote(60);
+		MMLScoreSnapshot snapshot2 = score.snapshot();
+
+		assertEquals(57, snapshot1.getTrack(1).getPart(0).get(0).getNote());
+		assertEquals(60, snapshot2.getTrack(1).getPart(0).get(0).getNote());
+		assertSame(snapshot1.getTrack(0), snapshot2.getTrack(0));
+		assertSame(snapshot1.getTrack(1).getPart(1).get(0), snapshot2.getTrack(1).getPart(1).get(0));
+		assertEquals(150, snapshot2.getTempoEventList().get(0).getTempo());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testSnapshot_unmodifiable() {
+		MMLScoreSnapshot snapshot = createScore().snapshot();
+		snapshot.getTrack(0).getPart(0).clear();
+	}
+
+	/**
+	 * 差分の適用で前後のスナップショットを復元できること.
+	 */
+	@Test
+	public void testDelta() throws UndefinedTickException {
+		MMLScore score = createScore().generateAll();
+		String expect1 = new String(score.getObjectState());
+		MMLScoreSnapshot snapshot1 = score.snapshot();
+
+		score.getTrack(0).getMMLEventAtIndex(1).addMMLNoteEvent(new MMLNoteEvent(40, 48, 24));
+		score.getTrack(1).setTrackName("track2");
+		score.getTempoEventList().add(new MMLTempoEvent(90, 96));
+		score.addTrack(new MMLTrack().setMML("MML@d1;"));
+		String expect2 = new String(score.generateAll().getObjectState());
+		MMLScoreSnapshot snapshot2 = score.snapshot();
+
+		MMLScoreDelta delta = MMLScoreDelta.diff(snapshot1, snapshot2);
+		assertNull(MMLScoreDelta.diff(snapshot2, score.snapshot()));
+
+		delta.apply(snapshot2, true).restore(score);
+		assertEquals(expect1, new String(score.generateAll().getObjectState()));
+		delta.apply(snapshot1, false).restore(score);
+		assertEquals(expect2, new String(score.generateAll().getObjectState()));
+	}
+}
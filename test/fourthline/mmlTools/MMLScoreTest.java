@@ -127,4 +127,52 @@ public class MMLScoreTest extends FileSelect {
 
 		checkMMLFileOutput(score.generateAll(), "format_r1.mmi", mml);
 	}
+
+	private MMLScore createGenerateTestScore(String mml[]) {
+		MMLScore score = new MMLScore();
+		for (String s : mml) {
+			score.addTrack(new MMLTrack().setMML(s));
+		}
+		return score;
+	}
+
+	private String generateAllResult(String mml[], boolean parallel) {
+		boolean prev = MMLScore.isParallelGenerate();
+		MMLScore.setParallelGenerate(parallel);
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (MMLTrack track : createGenerateTestScore(mml).generateAll().getTrackList()) {
+				sb.append(track.getMabiMML());
+			}
+			return sb.toString();
+		} catch (UndefinedTickException e) {
+			return e.getMessage();
+		} finally {
+			MMLScore.setParallelGenerate(prev);
+		}
+	}
+
+	/**
+	 * 並列生成と逐次生成の結果が同じであること.
+	 */
+	@Test
+	public void testGenerateAll_parallel() {
+		String mml[] = { "MML@aaa,bbb,ccc;", "MML@t150cdef,gab;", "MML@r1>f+1t120&f+1;", "MML@d1;" };
+		String expect = generateAllResult(mml, false);
+		assertEquals(expect, generateAllResult(mml, true));
+		assertTrue(expect.startsWith("MML@"));
+	}
+
+	/**
+	 * 生成できないトラックが複数ある場合は, 若いトラックの例外を返すこと.
+	 */
+	@Test
+	public void testGenerateAll_parallelException() {
+		String mml[] = { "MML@aaa;", "MML@ggt150gg,rr8r16.a24aa;", "MML@d1;", "MML@ggt150gg,r8r16.a24aa;" };
+		String expect = generateAllResult(mml, false);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(expect, generateAllResult(mml, true));
+		}
+		assertFalse(expect.startsWith("MML@"));
+	}
 }
@@ -150,7 +150,7 @@ public class MMLTrackTest {
 	public void testTempo_all0() throws Exception {
 		String mml =        "MML@,t150c1c1t120c1c1t130c1c1;";
 		String expectMML1 = "MML@t150l1rrt120rrt130,l1cccccc,;";
-		String expectMML2 = "MML@t150v0l1cct120cct130rrv0c64t150,l1cccccc,;";
+		String expectMML2 = "MML@t150v0l1cct120cct130rrc64t150,l1cccccc,;";
 
 		MMLTrack track = new MMLTrack().setMML(mml);
 		assertEquals(expectMML1, track.generate().getOriginalMML());
@@ -174,4 +174,26 @@ public class MMLTrackTest {
 		assertFalse( track1.equals(track6) );
 		assertFalse( track1.equals(track7) );
 	}
+
+	/**
+	 * 変更のないトラックは再生成しない.
+	 */
+	@Test
+	public void testGenerate_dirty() throws UndefinedTickException {
+		MMLTrack track = new MMLTrack().setMML("MML@aaa,bbb,;");
+		assertTrue( track.isDirty() );
+		track.generate();
+		assertFalse( track.isDirty() );
+
+		track.getMMLEventAtIndex(1).getMMLNoteEventList().get(0).setNote(60);
+		assertTrue( track.isDirty() );
+		assertEquals("MML@aaa,>c<bb,;", track.generate().getOriginalMML());
+		assertFalse( track.isDirty() );
+
+		track.getGlobalTempoList().add(new MMLTempoEvent(150, 0));
+		assertTrue( track.isDirty() );
+		track.generate();
+		track.getGlobalTempoList().get(0).setTempo(140);
+		assertTrue( track.isDirty() );
+	}
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author fourthline
+ *
+ */
+public class TempoMapTest {
+
+	private List<MMLTempoEvent> tempoList(int... tickAndTempo) {
+		List<MMLTempoEvent> list = new ArrayList<>();
+		for (int i = 0; i < tickAndTempo.length; i += 2) {
+			list.add(new MMLTempoEvent(tickAndTempo[i+1], tickAndTempo[i]));
+		}
+		return list;
+	}
+
+	/**
+	 * テンポ区間ごとに切り捨てない.
+	 */
+	@Test
+	public void testTimeOnTickOffset() {
+		// t150 で 12拍, t90 で 4拍
+		TempoMap tempoMap = new TempoMap(tempoList(0, 150, 1152, 90));
+		assertEquals(4800000, tempoMap.getMicrosecondOnTickOffset(1152));
+		assertEquals(7466666, tempoMap.getMicrosecondOnTickOffset(1536));
+		assertEquals(7466, tempoMap.getTimeOnTickOffset(1536));
+
+		assertEquals(0, new TempoMap(tempoList()).getTimeOnTickOffset(0));
+		assertEquals(500, new TempoMap(tempoList()).getTimeOnTickOffset(96));
+	}
+
+	@Test
+	public void testTickOffsetOnTime() {
+		TempoMap tempoMap = new TempoMap(tempoList(96, 60, 192, 240));
+		assertEquals(0, tempoMap.getTickOffsetOnTime(0));
+		assertEquals(96, tempoMap.getTickOffsetOnTime(500));
+		assertEquals(192, tempoMap.getTickOffsetOnTime(1500));
+		assertEquals(288, tempoMap.getTickOffsetOnTime(1750));
+	}
+
+	@Test
+	public void testSearchOnTick() {
+		TempoMap tempoMap = new TempoMap(tempoList(0, 90, 96, 60, 96, 200, 192, 240));
+		assertEquals(90, tempoMap.searchOnTick(0));
+		assertEquals(90, tempoMap.searchOnTick(95));
+		assertEquals(200, tempoMap.searchOnTick(96));
+		assertEquals(240, tempoMap.searchOnTick(10000));
+		assertEquals(240, tempoMap.getLastTempo());
+		assertEquals(120, new TempoMap(tempoList()).searchOnTick(10));
+	}
+
+	/**
+	 * 先頭からテンポ区間を順に足した時間と比較する.
+	 */
+	@Test
+	public void testRandom() {
+		Random random = new Random(1);
+		for (int n = 0; n < 100; n++) {
+			List<MMLTempoEvent> list = new ArrayList<>();
+			int tick = 0;
+			for (int i = random.nextInt(20); i > 0; i--) {
+				tick += random.nextInt(400);
+				new MMLTempoEvent(32 + random.nextInt(224), tick).appendToListElement(list);
+			}
+			TempoMap tempoMap = new TempoMap(list);
+
+			for (int i = 0; i < 20; i++) {
+				int target = random.nextInt(tick + 400);
+				double expect = 0.0;
+				int tempo = MMLTempoEvent.INITIAL_TEMPO;
+				int current = 0;
+				for (MMLTempoEvent tempoEvent : list) {
+					if (tempoEvent.getTickOffset() > target) {
+						break;
+					}
+					expect += (tempoEvent.getTickOffset() - current) * 60000000.0 / 96 / tempo;
+					current = tempoEvent.getTickOffset();
+					tempo = tempoEvent.getTempo();
+				}
+				expect += (target - current) * 60000000.0 / 96 / tempo;
+
+				long time = tempoMap.getMicrosecondOnTickOffset(target);
+				assertEquals(expect, time, list.size() + 1);
+				assertEquals(tempo, tempoMap.searchOnTick(target));
+				assertEquals(MMLTempoEvent.searchOnTick(list, target), tempoMap.searchOnTick(target));
+				long tickOnTime = tempoMap.getTickOffsetOnMicrosecond(time);
+				assertTrue( (tickOnTime == target) || (tickOnTime == target - 1) );
+			}
+		}
+	}
+
+	/**
+	 * テンポリストを変更していなければ, 同じ変換表を使う.
+	 */
+	@Test
+	public void testOf() {
+		List<MMLTempoEvent> list = tempoList(0, 150, 96, 90);
+		TempoMap tempoMap = TempoMap.of(null, list);
+		assertSame(tempoMap, TempoMap.of(tempoMap, list));
+
+		list.get(1).setTempo(100);
+		TempoMap tempoMap2 = TempoMap.of(tempoMap, list);
+		assertTrue(tempoMap != tempoMap2);
+		assertEquals(100, tempoMap2.searchOnTick(96));
+
+		MMLEvent.insertTick(list, 0, 96);
+		assertEquals(150, TempoMap.of(tempoMap2, list).searchOnTick(96));
+
+		MMLScore score = new MMLScore();
+		score.getTempoEventList().add(new MMLTempoEvent(60, 0));
+		assertEquals(1000, score.getTempoMap().getTimeOnTickOffset(96));
+		score.getTempoEventList().get(0).setTempo(240);
+		assertEquals(250, score.getTempoMap().getTimeOnTickOffset(96));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import fourthline.mmlTools.UndefinedTickException;
+
+
+public class MMLTicksTest {
+
+	@Test
+	public void testGetTick() throws UndefinedTickException {
+		assertEquals(384, MMLTicks.getTick("1"));
+		assertEquals(576, MMLTicks.getTick("1."));
+		assertEquals(96, MMLTicks.getTick("4"));
+		assertEquals(6, MMLTicks.getTick("64"));
+		assertEquals(9, MMLTicks.getTick("64."));
+		assertEquals(MMLTicks.getTick(8, true), MMLTicks.getTick("8."));
+		assertEquals(MMLTicks.getTick(32, false), MMLTicks.getTick("32"));
+	}
+
+	/**
+	 * 末尾の解釈できない文字は無視する.
+	 */
+	@Test
+	public void testGetTick_trailing() throws UndefinedTickException {
+		assertEquals(MMLTicks.getTick("8."), MMLTicks.getTick("8.."));
+		assertEquals(MMLTicks.getTick("8"), MMLTicks.getTick("8 ."));
+		assertEquals(MMLTicks.getTick("12"), MMLTicks.getTick("123"));
+		assertEquals(MMLTicks.getTick("6"), MMLTicks.getTick("65."));
+		assertEquals(MMLTicks.getTick("4"), MMLTicks.getTick("c4d", 1, 3));
+	}
+
+	@Test(expected=UndefinedTickException.class)
+	public void testGetTick_undefined0() throws UndefinedTickException {
+		MMLTicks.getTick("08");
+	}
+
+	@Test(expected=UndefinedTickException.class)
+	public void testGetTick_undefined1() throws UndefinedTickException {
+		MMLTicks.getTick(".");
+	}
+
+	@Test(expected=UndefinedTickException.class)
+	public void testGetTick_undefined2() throws UndefinedTickException {
+		MMLTicks.getTick(65, false);
+	}
+
+	@Test
+	public void testMinimumTick() {
+		assertEquals(6, MMLTicks.minimumTick());
+	}
+
+	@Test
+	public void testToMMLText() throws UndefinedTickException {
+		assertEquals("c4", new MMLTicks("c", 96).toMMLText());
+		assertEquals("c1.&c1&c2&c8", new MMLTicks("c", 576*2+48).toMMLText());
+		assertEquals("r2r8", new MMLTicks("r", 240, false).toMMLText());
+	}
+
+	@Test
+	public void testToMMLText_cache() throws UndefinedTickException {
+		new MMLTicks("c", 96*3).toMMLText();
+		long hit = MMLTicks.getCacheHitCount();
+		long miss = MMLTicks.getCacheMissCount();
+
+		assertEquals("c2.", new MMLTicks("c", 96*3).toMMLText());
+		assertEquals("d2.", new MMLTicks("d", 96*3).toMMLText());
+		assertEquals("r1.r1.r2.", new MMLTicks("r", 576*2+96*3, false).toMMLText());
+		assertEquals(hit+3, MMLTicks.getCacheHitCount());
+		assertEquals(miss, MMLTicks.getCacheMissCount());
+	}
+}
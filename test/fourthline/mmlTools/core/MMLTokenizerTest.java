@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class MMLTokenizerTest {
+
+	/**
+	 * カーソル方式と文字列方式の分割結果が同じであること.
+	 */
+	@Test
+	public void testNextToken() {
+		String mml = "t120l8c+16.d&dr4.n60v12<o3>";
+		MMLTokenizer tokenizer1 = new MMLTokenizer(mml);
+		MMLTokenizer tokenizer2 = new MMLTokenizer(mml);
+
+		while (tokenizer1.hasNext()) {
+			String token = tokenizer1.next();
+			assertTrue(tokenizer2.nextToken());
+			assertEquals(token, tokenizer2.appendToken(new StringBuilder()).toString());
+			assertEquals(Character.toLowerCase(token.charAt(0)), tokenizer2.getTokenKind());
+		}
+		assertFalse(tokenizer2.nextToken());
+	}
+
+	@Test
+	public void testArgument() {
+		MMLTokenizer tokenizer = new MMLTokenizer("c+16.dT150r.n60&");
+
+		assertTrue(tokenizer.nextToken());
+		assertEquals('c', tokenizer.getTokenKind());
+		assertEquals('+', tokenizer.getAccidental());
+		assertEquals(16, tokenizer.getNumber());
+		assertTrue(tokenizer.hasDot());
+		assertEquals("16.", tokenizer.getArgument());
+
+		assertTrue(tokenizer.nextToken());
+		assertEquals('d', tokenizer.getTokenKind());
+		assertEquals(-1, tokenizer.getNumber());
+		assertFalse(tokenizer.hasDot());
+
+		assertTrue(tokenizer.nextToken());
+		assertEquals('t', tokenizer.getTokenKind());
+		assertEquals('T', tokenizer.getTokenChar());
+		assertEquals(150, tokenizer.getNumber());
+		assertTrue(tokenizer.isNumberOnly());
+
+		assertTrue(tokenizer.nextToken());
+		assertEquals('r', tokenizer.getTokenKind());
+		assertEquals(-1, tokenizer.getNumber());
+		assertTrue(tokenizer.hasDot());
+
+		assertTrue(tokenizer.nextToken());
+		assertEquals('n', tokenizer.getTokenKind());
+		assertEquals(60, tokenizer.getNumber());
+		assertArrayEquals(new int[] { 12, 15 }, tokenizer.getIndex());
+
+		assertTrue(tokenizer.nextToken());
+		assertEquals('&', tokenizer.getTokenKind());
+		assertFalse(tokenizer.isNoteToken());
+		assertFalse(tokenizer.nextToken());
+	}
+}
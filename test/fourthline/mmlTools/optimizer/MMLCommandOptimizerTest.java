@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.optimizer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import fourthline.mmlTools.MMLEventList;
+
+/**
+ * @author fourthline
+ *
+ */
+public class MMLCommandOptimizerTest {
+
+	private void checkCommandOptimize(String input, String expect) {
+		MMLCommandOptimizer optimizer = new MMLCommandOptimizer(input);
+		String mml = optimizer.toString();
+		assertEquals(expect, mml);
+		assertEquals(input.length() - mml.length(), optimizer.getSavedLength());
+
+		MMLEventList eventList1 = new MMLEventList(input);
+		MMLEventList eventList2 = new MMLEventList(mml);
+		assertEquals(eventList1.getMMLNoteEventList().toString(), eventList2.getMMLNoteEventList().toString());
+	}
+
+	@Test
+	public void test0() {
+		checkCommandOptimize("", "");
+		checkCommandOptimize("c8d8e8", "c8d8e8");
+	}
+
+	/**
+	 * 大きなオクターブ変更は 'o' で書く.
+	 */
+	@Test
+	public void testOctave() {
+		checkCommandOptimize("c8>>>>c8<<<<c8", "c8o8c8o4c8");
+		checkCommandOptimize("c8o4d8", "c8d8");
+		checkCommandOptimize("o1c8o7c8o1c8", "o1c8o7c8o1c8");
+	}
+
+	/**
+	 * 変化のない音量指定は削除する.
+	 */
+	@Test
+	public void testVolume() {
+		checkCommandOptimize("v10cv10dv10e", "v10cde");
+		checkCommandOptimize("v12r8v12c", "r8v12c");
+		checkCommandOptimize("v0rv0c64", "rv0c64");
+	}
+
+	/**
+	 * 短くなる場合は nノートで書く.
+	 */
+	@Test
+	public void testNoteNumber() {
+		checkCommandOptimize("c>>>>c<<<<c", "cn96c");
+		checkCommandOptimize("o0co8c", "n0o8c");
+	}
+
+	/**
+	 * タイの前後のノートは書き換えない.
+	 */
+	@Test
+	public void testTie() {
+		checkCommandOptimize("c&c>>>>c&c", "c&co8c&c");
+	}
+}
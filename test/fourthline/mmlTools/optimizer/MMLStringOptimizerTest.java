@@ -135,6 +135,81 @@ public class MMLStringOptimizerTest {
 		checkMMLStringOptimize(input, expect);
 	}
 
+	/**
+	 * 入力にL指定, 付点の省略があるもの.
+	 */
+	@Test(timeout=TIMEOUT)
+	public void testOptimize_lengthSection() {
+		String input  = "l8.ccc16c16c16c16c8.c8.";
+		String expect = "l8.ccl16ccccl8.cc";
+		checkMMLStringOptimize(input, expect);
+		assertEquals(expect, new MMLStringOptimizer(input).toString());
+	}
+
+	private void checkOptimalMode(String input, String expect) {
+		MMLStringOptimizer optimizer = new MMLStringOptimizer(input);
+		String mml = optimizer.optimize(MMLStringOptimizer.Mode.OPTIMAL);
+		System.out.println(mml);
+		assertTrue(mml.length() <= expect.length());
+		assertTrue(mml.length() <= optimizer.toString().length());
+
+		MMLEventList eventList1 = new MMLEventList(input);
+		MMLEventList eventList2 = new MMLEventList(mml);
+		assertEquals(eventList1.getMMLNoteEventList().toString(), eventList2.getMMLNoteEventList().toString());
+	}
+
+	@Test(timeout=TIMEOUT)
+	public void testOptimal_0() {
+		checkOptimalMode("c8c8c16c16c8c8c16", "l8ccl16ccc8c8c");
+		checkOptimalMode("c4c4c16c4c4c4c16c16c8c8c4c4c16c16c4c4c4", "ccc16cccl16ccc8c8c4c4ccl4ccc");
+		checkOptimalMode("c16c16c16c8c8c8c16c8c16c4.c8c16c8.c16c8c16c16c16", "l16cccc8c8c8cc8cc4.c8cc8.cc8ccc");
+	}
+
+	/**
+	 * 近似では短くならないもの.
+	 */
+	@Test(timeout=TIMEOUT)
+	public void testOptimal_1() {
+		String input  = "r1.r1.r1.r1.r1.r1.r1.c4a2c4a2c4a2c4a2c4a2c4a2c4a2r1.r1.r1.r1.r1.r1.r1.r1.r1.";
+		String expect = "l1.rrrrrrrl4ca2ca2ca2ca2ca2ca2ca2l1.rrrrrrrrr";
+		checkOptimalMode(input, expect);
+	}
+
+	/**
+	 * Lコマンドは '&' の前に置く.
+	 */
+	@Test(timeout=TIMEOUT)
+	public void testOptimal_amp_L() {
+		String input  = "c2&c8d8d8d8d8d8d8";
+		String expect = "l8c2&cdddddd";
+		checkOptimalMode(input, expect);
+		assertEquals(expect, new MMLStringOptimizer(input).optimize(MMLStringOptimizer.Mode.OPTIMAL));
+	}
+
+	/**
+	 * nノートは音長を書けないので, その位置のLの音長 (付点を含む) を変えない.
+	 */
+	@Test(timeout=TIMEOUT)
+	public void testOptimal_nNote() {
+		checkOptimalRoundTrip("l8.c8n45");
+		checkOptimalRoundTrip("l8.r8n45c");
+		checkOptimalRoundTrip("l8.c8n45c8.c8.c8c8c8");
+		checkOptimalRoundTrip("l16n40c16c16l8.n50c8c8.n52l4c8.n60");
+		checkOptimalRoundTrip("c8c8n30c8c8l2.n20c2c2c2.r8n70");
+		checkOptimalRoundTrip("l4.c8.c8.n45l8c8.c8.n46l1.r4n47");
+	}
+
+	/**
+	 * 最短配置の結果が, 入力と同じ音長, 位置のノートになることを確認する.
+	 */
+	private void checkOptimalRoundTrip(String input) {
+		String mml = new MMLStringOptimizer(input).optimize(MMLStringOptimizer.Mode.OPTIMAL);
+		System.out.println(mml);
+		MMLEventList eventList1 = new MMLEventList(input);
+		MMLEventList eventList2 = new MMLEventList(mml);
+		assertEquals(input + " -> " + mml, eventList1.getMMLNoteEventList().toString(), eventList2.getMMLNoteEventList().toString());
+	}
+
 	// next fix
 	public void testOptimize_x1_1() {
 		String input  = "r1.r1.r1.r1.r1.r1.r1.c4a2c4a2c4a2c4a2c4a2c4a2c4a2r1.r1.r1.r1.r1.r1.r1.r1.r1.";
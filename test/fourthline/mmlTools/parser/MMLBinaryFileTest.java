@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import fourthline.FileSelect;
+import fourthline.mmlTools.MMLNoteEvent;
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLScoreTest;
+import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.UndefinedTickException;
+import fourthline.mmlTools.core.TuningBase;
+
+public class MMLBinaryFileTest extends FileSelect {
+
+	private MMLScore writeAndRead(MMLScore score) throws IOException, MMLParseException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		MMLBinaryFile.write(score, outputStream);
+		return new MMLBinaryFile().parse(new ByteArrayInputStream(outputStream.toByteArray()));
+	}
+
+	/**
+	 * mmi -> mmb -> mmi
+	 */
+	private void checkConvert(String mmiFileName) throws IOException, MMLParseException, UndefinedTickException {
+		MMLScore score = new MMLScore().parse(fileSelect(mmiFileName));
+		MMLScore binaryScore = writeAndRead(score);
+
+		assertEquals(score.getTrackCount(), binaryScore.getTrackCount());
+		for (int i = 0; i < score.getTrackCount(); i++) {
+			assertEquals(score.getTrack(i), binaryScore.getTrack(i));
+		}
+		assertEquals(score.getTempoEventList(), binaryScore.getTempoEventList());
+
+		InputStream inputStream = fileSelect(mmiFileName);
+		MMLScoreTest.checkMMLScoreWriteToOutputStream(binaryScore.generateAll(), inputStream);
+	}
+
+	@Test
+	public final void testConvert() throws IOException, MMLParseException, UndefinedTickException {
+		checkConvert("sample1.mmi");
+		checkConvert("sample2.mmi");
+		checkConvert("sample3.mmi");
+	}
+
+	/**
+	 * 読み込み時には generateしない.
+	 */
+	@Test
+	public final void testNoGenerate() throws IOException, MMLParseException {
+		MMLScore score = new MMLScore();
+		score.addTrack(new MMLTrack().setMML("MML@t150v10c8d4&d16,e2,;"));
+		score.getTrack(0).getMMLEventAtIndex(1).getMMLNoteEventList().get(0).setTuningNote(TuningBase.L32);
+
+		MMLScore binaryScore = writeAndRead(score);
+		MMLTrack track = binaryScore.getTrack(0);
+		assertTrue(track.isDirty());
+		assertEquals(score.getTrack(0), track);
+
+		MMLNoteEvent noteEvent = track.getMMLEventAtIndex(1).getMMLNoteEventList().get(0);
+		assertEquals(TuningBase.L32, noteEvent.getTuningBase());
+		assertEquals(150, binaryScore.getTempoOnTick(0));
+	}
+
+	@Test(expected=MMLParseException.class)
+	public final void testInvalidFormat() throws MMLParseException {
+		new MMLBinaryFile().parse(new ByteArrayInputStream("[mml-score]".getBytes()));
+	}
+
+	@Test(expected=MMLParseException.class)
+	public final void testTruncated() throws IOException, MMLParseException {
+		MMLScore score = new MMLScore();
+		score.addTrack(new MMLTrack().setMML("MML@cde,,;"));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		MMLBinaryFile.write(score, outputStream);
+		byte b[] = outputStream.toByteArray();
+		new MMLBinaryFile().parse(new ByteArrayInputStream(b, 0, b.length-1));
+	}
+
+	/**
+	 * 壊れた長さで配列を確保せず, パースエラーにする.
+	 */
+	@Test
+	public final void testInvalidLength() throws IOException {
+		// MAGIC, version 1, 文字列長 0x7fffffff
+		byte string[] = { 'M', 'M', 'L', 'B', 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 };
+		// MAGIC, version 1, title/author/baseTime なし, tempo 0, marker 0, track 1 (名前なし, 0, 0, 0), part 1, note数 0x7fffffff
+		byte noteCount[] = { 'M', 'M', 'L', 'B', 1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 };
+		String expect[] = { "invalid length", "invalid note count" };
+		byte data[][] = { string, noteCount };
+		for (int i = 0; i < data.length; i++) {
+			try {
+				new MMLBinaryFile().parse(new ByteArrayInputStream(data[i]));
+				fail();
+			} catch (MMLParseException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith(expect[i]));
+			}
+		}
+	}
+}
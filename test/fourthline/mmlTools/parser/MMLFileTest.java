@@ -6,37 +6,39 @@ package fourthline.mmlTools.parser;
 
 import static org.junit.Assert.*;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-
-import javax.sound.midi.InvalidMidiDataException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import fourthline.FileSelect;
-import fourthline.mabiicco.midi.MabiDLS;
+import fourthline.mabiicco.midi.InstRegistry;
 import fourthline.mmlTools.MMLScore;
 import fourthline.mmlTools.MMLScoreTest;
 import fourthline.mmlTools.UndefinedTickException;
+import fourthline.mmlTools.core.ResourceLoader;
 
 public class MMLFileTest extends FileSelect {
 
+	private static InstRegistry instRegistry;
+
 	@BeforeClass
 	public static void setup() {
-		MabiDLS midi = MabiDLS.getInstance();
-		try {
-			midi.loadingDLSFile(new File(MabiDLS.DEFALUT_DLS_PATH));
-		} catch (InvalidMidiDataException | IOException e) {
-			e.printStackTrace();
-		}
+		// DLSを読み込まずに, 楽器定義から種類を判定する.
+		instRegistry = InstRegistry.load(ResourceBundle.getBundle("instrument", new ResourceLoader()));
 	}
 
 	@Test
 	public final void testParse() {
 		try {
-			MMLScore score = new MMLFile().parse(fileSelect("sample2.mml"));
+			MMLScore score = new MMLFile(instRegistry).parse(fileSelect("sample2.mml"));
 			assertEquals(2, score.getTrackCount());
 
 			// Track1 & Track2
@@ -59,7 +61,7 @@ public class MMLFileTest extends FileSelect {
 	@Test
 	public final void testParse_v1() {
 		try {
-			MMLScore score = new MMLFile().parse(fileSelect("sample3.mml"));
+			MMLScore score = new MMLFile(instRegistry).parse(fileSelect("sample3.mml"));
 			assertEquals(5, score.getTrackCount());
 
 			// Track1
@@ -93,4 +95,81 @@ public class MMLFileTest extends FileSelect {
 			fail(e.getMessage());
 		}
 	}
+
+	private String parseToString(String name) throws MMLParseException, IOException {
+		ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+		new MMLFile(instRegistry).parse(fileSelect(name)).writeToOutputStream(ostream);
+		return ostream.toString("UTF-8");
+	}
+
+	/**
+	 * DLSを読み込んでいない場合や, 複数スレッドで同時にパースする場合.
+	 */
+	@Test
+	public final void testParse_registry() throws Exception {
+		MMLScore score = new MMLFile(InstRegistry.EMPTY).parse(fileSelect("sample2.mml"));
+		assertTrue(score.getTrackCount() > 0);
+
+		String expect = parseToString("sample3.mml");
+		List<String> list = IntStream.range(0, 8).parallel().mapToObj(i -> {
+			try {
+				return parseToString("sample3.mml");
+			} catch (MMLParseException | IOException e) {
+				return e.getMessage();
+			}
+		}).collect(Collectors.toList());
+		for (String s : list) {
+			assertEquals(expect, s);
+		}
+	}
+
+	/**
+	 * [3MLE EXTENSION] の不正なデータ.
+	 */
+	@Test
+	public final void testExtensionInvalid() {
+		MMLFile.Extension3mleData extension = new MMLFile.Extension3mleData();
+		extension.parseLine("c=1");
+		extension.parseLine("d=AAAA");
+		try {
+			extension.decode();
+			fail();
+		} catch (MMLParseException e) {}
+
+		// レコードの長さがデータを超える.
+		try {
+			new MMLFile(instRegistry).parse(new byte[] { 0x02, 0x30, 0, 0, 0, 0 });
+			fail();
+		} catch (MMLParseException e) {}
+	}
+
+	/**
+	 * [3MLE EXTENSION] のレコードとトレース出力.
+	 */
+	@Test
+	public final void testExtensionRecord() throws MMLParseException, IOException {
+		List<String> trace = new ArrayList<>();
+		new MMLFile(instRegistry).setTrace(trace::add).parse(fileSelect("sample2.mml"));
+		assertTrue(trace.contains("marker marker1=384"));
+		assertTrue(trace.contains("track 2 2 Track3"));
+
+		// 0終端のないマーカー名
+		MMLFile mmlFile = new MMLFile(instRegistry);
+		byte data[] = { 0x09, 14, 0, 0, 0,  0, 0, 0, 0,  (byte)0x80, 1, 0, 0,  0, 0, 0, 0,  'a', 'b' };
+		assertEquals(0, mmlFile.parse(data).size());
+		assertEquals("[384=ab]", mmlFile.getScore().getMarkerList().toString());
+	}
+
+	/**
+	 * [ChannelN] のコメント, 空白の除去.
+	 */
+	@Test
+	public final void testChannelText() {
+		MMLFile.ChannelText channel = new MMLFile.ChannelText();
+		channel.appendLine("c d\te // comment */");
+		channel.appendLine("f/* block");
+		channel.appendLine("comment */g /*");
+		channel.appendLine("a");
+		assertEquals("cdefg/*a", channel.toString());
+	}
 }
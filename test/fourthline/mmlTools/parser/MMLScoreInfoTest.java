@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 たんらる
+ */
+
+package fourthline.mmlTools.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ResourceBundle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fourthline.FileSelect;
+import fourthline.mabiicco.midi.InstRegistry;
+import fourthline.mmlTools.MMLScore;
+import fourthline.mmlTools.MMLTrack;
+import fourthline.mmlTools.core.ResourceLoader;
+
+public class MMLScoreInfoTest extends FileSelect {
+
+	private static InstRegistry instRegistry;
+
+	@BeforeClass
+	public static void setup() {
+		// DLSを読み込まずに, 楽器定義から種類を判定する.
+		instRegistry = InstRegistry.load(ResourceBundle.getBundle("instrument", new ResourceLoader()));
+	}
+
+	private MMLScoreInfo readInfo(String name) throws IOException, MMLParseException, URISyntaxException {
+		return MMLScoreInfo.read(new File(getClass().getResource(name).toURI()), instRegistry);
+	}
+
+	private void checkInfo(MMLScore score, MMLScoreInfo info) {
+		assertEquals(score.getTitle(), info.getTitle());
+		assertEquals(score.getAuthor(), info.getAuthor());
+		assertEquals(score.getBaseTime(), info.getBaseTime());
+		assertEquals(score.getTrackCount(), info.getTrackCount());
+		for (int i = 0; i < score.getTrackCount(); i++) {
+			MMLTrack track = score.getTrack(i);
+			assertEquals(track.getTrackName(), info.getTrackName(i));
+			assertEquals(track.getProgram(), info.getProgram(i));
+
+			MMLTrack infoTrack = info.getTrack(i);
+			assertEquals(track, infoTrack);
+			assertEquals(track.getSongProgram(), infoTrack.getSongProgram());
+			assertEquals(track.getPanpot(), infoTrack.getPanpot());
+			assertSame(infoTrack, info.getTrack(i));
+		}
+	}
+
+	@Test
+	public final void testMMI() throws IOException, MMLParseException, URISyntaxException {
+		for (String name : new String[] { "sample1.mmi", "sample2.mmi", "sample3.mmi" }) {
+			MMLScore score = new MMLScore().parse(fileSelect(name));
+			checkInfo(score, readInfo(name));
+		}
+	}
+
+	@Test
+	public final void testMMS() throws IOException, MMLParseException, URISyntaxException {
+		MMLScore score = new MMSFile().parse(fileSelect("sample1.mms"));
+		MMLScoreInfo info = readInfo("sample1.mms");
+		assertEquals("3/4", info.getBaseTime());
+		checkInfo(score, info);
+	}
+
+	@Test
+	public final void testMML() throws IOException, MMLParseException, URISyntaxException {
+		String names[] = { "sample2.mml", "sample3.mml" };
+		int trackCount[] = { 2, 5 };
+		for (int i = 0; i < names.length; i++) {
+			MMLScore score = new MMLFile(instRegistry).parse(fileSelect(names[i]));
+			MMLScoreInfo info = readInfo(names[i]);
+			assertEquals(trackCount[i], info.getTrackCount());
+			// 各トラックのMMLは, トラックに対応するチャンネルの範囲から作る.
+			for (int j = 0; j < score.getTrackCount(); j++) {
+				assertEquals(score.getTrack(j).getOriginalMML(), info.getTrack(j).getOriginalMML());
+			}
+			checkInfo(score, info);
+		}
+	}
+}